@@ -0,0 +1,466 @@
+/**
+ * Stable natural merge sort of a String[] in compareTo order, in the manner of TimSort, for input
+ * that is already partly in order.
+ *
+ * The array is scanned for runs that are already ascending, or strictly descending (those are
+ * reversed). Runs shorter than a minimum length are extended with binary insertion sort, and the
+ * runs are merged as they are found, keeping run lengths on the stack balanced so the merges cost
+ * O(n log n) at worst. A merge first skips the parts of each run that are already in place, and
+ * when one run keeps winning it switches to galloping: exponential search for how many elements
+ * can be moved in one copy. Sorted or reverse-sorted input takes n - 1 comparisons, and a sorted
+ * array with a small unsorted tail costs little more than sorting the tail.
+ */
+public class AdaptiveMergeSort {
+    // Arrays shorter than this are binary insertion sorted; the minimum run length is between half this and this
+    static final int MIN_MERGE = 32;
+    // Consecutive wins of one run before a merge starts galloping
+    static final int MIN_GALLOP = 7;
+
+    private final String[] a;
+    private String[] tmp = new String[0];
+    // Adjusted per merge: lowered while galloping pays off, raised when it does not
+    private int minGallop = MIN_GALLOP;
+    // Pending runs; the length invariants keep the stack within 49 runs for any int length
+    private final int[] runBase = new int[49];
+    private final int[] runLength = new int[49];
+    private int stackSize = 0;
+    // Comparisons are only counted on request, so that sorts being timed do not pay for it
+    private final boolean counting;
+    private long comparisons = 0;
+
+    private AdaptiveMergeSort(String[] a, boolean counting) {
+        this.a = a;
+        this.counting = counting;
+    }
+
+    /**
+     * Sort an array
+     * @param a array to sort
+     */
+    public static void sort(String[] a) {
+        new AdaptiveMergeSort(a, false).sort();
+    }
+
+    /**
+     * Sort an array, counting the comparisons made
+     * @param a array to sort
+     * @return number of comparisons made
+     */
+    public static long sortCounting(String[] a) {
+        AdaptiveMergeSort sorter = new AdaptiveMergeSort(a, true);
+        sorter.sort();
+        return sorter.comparisons;
+    }
+
+    private void sort() {
+        int n = a.length;
+        if (n < 2) {
+            return;
+        }
+        if (n < MIN_MERGE) {
+            binaryInsertionSort(0, n, countRunAndMakeAscending(0, n));
+            return;
+        }
+        int minRun = minRunLength(n);
+        int lo = 0;
+        while (lo < n) {
+            int run = countRunAndMakeAscending(lo, n);
+            if (run < minRun) {
+                int forced = Math.min(n - lo, minRun);
+                binaryInsertionSort(lo, lo + forced, lo + run);
+                run = forced;
+            }
+            runBase[stackSize] = lo;
+            runLength[stackSize] = run;
+            stackSize++;
+            mergeCollapse();
+            lo += run;
+        }
+        while (stackSize > 1) {
+            int i = stackSize - 2;
+            if (i > 0 && runLength[i - 1] < runLength[i + 1]) {
+                i--;
+            }
+            mergeAt(i);
+        }
+    }
+
+    private int compare(String x, String y) {
+        if (counting) {
+            comparisons++;
+        }
+        return x.compareTo(y);
+    }
+
+    // Length of the run starting at lo; a strictly descending run is reversed, so ties keep their order
+    private int countRunAndMakeAscending(int lo, int hi) {
+        int runHi = lo + 1;
+        if (runHi == hi) {
+            return 1;
+        }
+        if (compare(a[runHi++], a[lo]) < 0) {
+            while (runHi < hi && compare(a[runHi], a[runHi - 1]) < 0) {
+                runHi++;
+            }
+            for (int i = lo, j = runHi - 1; i < j; i++, j--) {
+                String t = a[i];
+                a[i] = a[j];
+                a[j] = t;
+            }
+        } else {
+            while (runHi < hi && compare(a[runHi], a[runHi - 1]) >= 0) {
+                runHi++;
+            }
+        }
+        return runHi - lo;
+    }
+
+    // Sort a[lo, hi), of which a[lo, start) is already sorted, placing each element by binary search
+    private void binaryInsertionSort(int lo, int hi, int start) {
+        for (; start < hi; start++) {
+            String pivot = a[start];
+            int left = lo;
+            int right = start;
+            while (left < right) {
+                int mid = (left + right) >>> 1;
+                if (compare(pivot, a[mid]) < 0) {
+                    right = mid;
+                } else {
+                    left = mid + 1;
+                }
+            }
+            System.arraycopy(a, left, a, left + 1, start - left);
+            a[left] = pivot;
+        }
+    }
+
+    // n itself if small, else a length between MIN_MERGE / 2 and MIN_MERGE such that n / length is
+    // close to, and no more than, a power of two, so the final merges are balanced
+    private static int minRunLength(int n) {
+        int r = 0;
+        while (n >= MIN_MERGE) {
+            r |= n & 1;
+            n >>= 1;
+        }
+        return n + r;
+    }
+
+    // Merge runs until each run on the stack is longer than the next two together, and longer than the next one
+    private void mergeCollapse() {
+        while (stackSize > 1) {
+            int i = stackSize - 2;
+            if (i > 0 && runLength[i - 1] <= runLength[i] + runLength[i + 1]
+                    || i > 1 && runLength[i - 2] <= runLength[i] + runLength[i - 1]) {
+                if (runLength[i - 1] < runLength[i + 1]) {
+                    i--;
+                }
+            } else if (runLength[i] > runLength[i + 1]) {
+                break;
+            }
+            mergeAt(i);
+        }
+    }
+
+    // Merge stack runs i and i + 1
+    private void mergeAt(int i) {
+        int base1 = runBase[i];
+        int length1 = runLength[i];
+        int base2 = runBase[i + 1];
+        int length2 = runLength[i + 1];
+        runLength[i] = length1 + length2;
+        if (i == stackSize - 3) {
+            runBase[i + 1] = runBase[i + 2];
+            runLength[i + 1] = runLength[i + 2];
+        }
+        stackSize--;
+
+        // Elements of the first run before the second run's first element, and of the second run after
+        // the first run's last element, are already in place
+        int k = gallopRight(a[base2], a, base1, length1, 0);
+        base1 += k;
+        length1 -= k;
+        if (length1 == 0) {
+            return;
+        }
+        length2 = gallopLeft(a[base1 + length1 - 1], a, base2, length2, length2 - 1);
+        if (length2 == 0) {
+            return;
+        }
+        if (length1 <= length2) {
+            mergeLow(base1, length1, base2, length2);
+        } else {
+            mergeHigh(base1, length1, base2, length2);
+        }
+    }
+
+    // Position in sorted x[base, base + length) before the first element >= key, searching out from hint
+    private int gallopLeft(String key, String[] x, int base, int length, int hint) {
+        int lastOffset = 0;
+        int offset = 1;
+        if (compare(key, x[base + hint]) > 0) {
+            int maxOffset = length - hint;
+            while (offset < maxOffset && compare(key, x[base + hint + offset]) > 0) {
+                lastOffset = offset;
+                offset = (offset << 1) + 1;
+                if (offset <= 0) {
+                    offset = maxOffset;
+                }
+            }
+            offset = Math.min(offset, maxOffset);
+            lastOffset += hint;
+            offset += hint;
+        } else {
+            int maxOffset = hint + 1;
+            while (offset < maxOffset && compare(key, x[base + hint - offset]) <= 0) {
+                lastOffset = offset;
+                offset = (offset << 1) + 1;
+                if (offset <= 0) {
+                    offset = maxOffset;
+                }
+            }
+            offset = Math.min(offset, maxOffset);
+            int t = lastOffset;
+            lastOffset = hint - offset;
+            offset = hint - t;
+        }
+        // Now x[base + lastOffset] < key <= x[base + offset]; binary search in between
+        lastOffset++;
+        while (lastOffset < offset) {
+            int mid = lastOffset + ((offset - lastOffset) >>> 1);
+            if (compare(key, x[base + mid]) > 0) {
+                lastOffset = mid + 1;
+            } else {
+                offset = mid;
+            }
+        }
+        return offset;
+    }
+
+    // Position in sorted x[base, base + length) after the last element <= key, searching out from hint
+    private int gallopRight(String key, String[] x, int base, int length, int hint) {
+        int lastOffset = 0;
+        int offset = 1;
+        if (compare(key, x[base + hint]) < 0) {
+            int maxOffset = hint + 1;
+            while (offset < maxOffset && compare(key, x[base + hint - offset]) < 0) {
+                lastOffset = offset;
+                offset = (offset << 1) + 1;
+                if (offset <= 0) {
+                    offset = maxOffset;
+                }
+            }
+            offset = Math.min(offset, maxOffset);
+            int t = lastOffset;
+            lastOffset = hint - offset;
+            offset = hint - t;
+        } else {
+            int maxOffset = length - hint;
+            while (offset < maxOffset && compare(key, x[base + hint + offset]) >= 0) {
+                lastOffset = offset;
+                offset = (offset << 1) + 1;
+                if (offset <= 0) {
+                    offset = maxOffset;
+                }
+            }
+            offset = Math.min(offset, maxOffset);
+            lastOffset += hint;
+            offset += hint;
+        }
+        // Now x[base + lastOffset] <= key < x[base + offset]; binary search in between
+        lastOffset++;
+        while (lastOffset < offset) {
+            int mid = lastOffset + ((offset - lastOffset) >>> 1);
+            if (compare(key, x[base + mid]) < 0) {
+                offset = mid;
+            } else {
+                lastOffset = mid + 1;
+            }
+        }
+        return offset;
+    }
+
+    // Merge adjacent runs front to back, the first (shorter) run copied out to tmp.
+    // On entry a[base2] belongs before the first run's first element, and the first run's last
+    // element belongs after every element of the second run.
+    private void mergeLow(int base1, int length1, int base2, int length2) {
+        String[] tmp = ensureCapacity(length1);
+        System.arraycopy(a, base1, tmp, 0, length1);
+        int cursor1 = 0;
+        int cursor2 = base2;
+        int dest = base1;
+        a[dest++] = a[cursor2++];
+        if (--length2 == 0) {
+            System.arraycopy(tmp, cursor1, a, dest, length1);
+            return;
+        }
+        if (length1 == 1) {
+            System.arraycopy(a, cursor2, a, dest, length2);
+            a[dest + length2] = tmp[cursor1];
+            return;
+        }
+
+        int minGallop = this.minGallop;
+        outer:
+        while (true) {
+            // One element at a time until a run wins minGallop times in a row
+            int count1 = 0;
+            int count2 = 0;
+            do {
+                if (compare(a[cursor2], tmp[cursor1]) < 0) {
+                    a[dest++] = a[cursor2++];
+                    count2++;
+                    count1 = 0;
+                    if (--length2 == 0) {
+                        break outer;
+                    }
+                } else {
+                    a[dest++] = tmp[cursor1++];
+                    count1++;
+                    count2 = 0;
+                    if (--length1 == 1) {
+                        break outer;
+                    }
+                }
+            } while ((count1 | count2) < minGallop);
+
+            // Gallop while either run moves at least MIN_GALLOP elements at a time
+            do {
+                count1 = gallopRight(a[cursor2], tmp, cursor1, length1, 0);
+                if (count1 != 0) {
+                    System.arraycopy(tmp, cursor1, a, dest, count1);
+                    dest += count1;
+                    cursor1 += count1;
+                    length1 -= count1;
+                    if (length1 <= 1) {
+                        break outer;
+                    }
+                }
+                a[dest++] = a[cursor2++];
+                if (--length2 == 0) {
+                    break outer;
+                }
+                count2 = gallopLeft(tmp[cursor1], a, cursor2, length2, 0);
+                if (count2 != 0) {
+                    System.arraycopy(a, cursor2, a, dest, count2);
+                    dest += count2;
+                    cursor2 += count2;
+                    length2 -= count2;
+                    if (length2 == 0) {
+                        break outer;
+                    }
+                }
+                a[dest++] = tmp[cursor1++];
+                if (--length1 == 1) {
+                    break outer;
+                }
+                minGallop--;
+            } while (count1 >= MIN_GALLOP || count2 >= MIN_GALLOP);
+            minGallop = Math.max(minGallop, 0) + 2;
+        }
+        this.minGallop = Math.max(minGallop, 1);
+
+        if (length1 == 1) {
+            System.arraycopy(a, cursor2, a, dest, length2);
+            a[dest + length2] = tmp[cursor1];
+        } else {
+            System.arraycopy(tmp, cursor1, a, dest, length1);
+        }
+    }
+
+    // Merge adjacent runs back to front, the second (shorter) run copied out to tmp; see mergeLow
+    private void mergeHigh(int base1, int length1, int base2, int length2) {
+        String[] tmp = ensureCapacity(length2);
+        System.arraycopy(a, base2, tmp, 0, length2);
+        int cursor1 = base1 + length1 - 1;
+        int cursor2 = length2 - 1;
+        int dest = base2 + length2 - 1;
+        a[dest--] = a[cursor1--];
+        if (--length1 == 0) {
+            System.arraycopy(tmp, 0, a, dest - (length2 - 1), length2);
+            return;
+        }
+        if (length2 == 1) {
+            dest -= length1;
+            cursor1 -= length1;
+            System.arraycopy(a, cursor1 + 1, a, dest + 1, length1);
+            a[dest] = tmp[cursor2];
+            return;
+        }
+
+        int minGallop = this.minGallop;
+        outer:
+        while (true) {
+            int count1 = 0;
+            int count2 = 0;
+            do {
+                if (compare(tmp[cursor2], a[cursor1]) < 0) {
+                    a[dest--] = a[cursor1--];
+                    count1++;
+                    count2 = 0;
+                    if (--length1 == 0) {
+                        break outer;
+                    }
+                } else {
+                    a[dest--] = tmp[cursor2--];
+                    count2++;
+                    count1 = 0;
+                    if (--length2 == 1) {
+                        break outer;
+                    }
+                }
+            } while ((count1 | count2) < minGallop);
+
+            do {
+                count1 = length1 - gallopRight(tmp[cursor2], a, base1, length1, length1 - 1);
+                if (count1 != 0) {
+                    dest -= count1;
+                    cursor1 -= count1;
+                    length1 -= count1;
+                    System.arraycopy(a, cursor1 + 1, a, dest + 1, count1);
+                    if (length1 == 0) {
+                        break outer;
+                    }
+                }
+                a[dest--] = tmp[cursor2--];
+                if (--length2 == 1) {
+                    break outer;
+                }
+                count2 = length2 - gallopLeft(a[cursor1], tmp, 0, length2, length2 - 1);
+                if (count2 != 0) {
+                    dest -= count2;
+                    cursor2 -= count2;
+                    length2 -= count2;
+                    System.arraycopy(tmp, cursor2 + 1, a, dest + 1, count2);
+                    if (length2 <= 1) {
+                        break outer;
+                    }
+                }
+                a[dest--] = a[cursor1--];
+                if (--length1 == 0) {
+                    break outer;
+                }
+                minGallop--;
+            } while (count1 >= MIN_GALLOP || count2 >= MIN_GALLOP);
+            minGallop = Math.max(minGallop, 0) + 2;
+        }
+        this.minGallop = Math.max(minGallop, 1);
+
+        if (length2 == 1) {
+            dest -= length1;
+            cursor1 -= length1;
+            System.arraycopy(a, cursor1 + 1, a, dest + 1, length1);
+            a[dest] = tmp[cursor2];
+        } else {
+            System.arraycopy(tmp, 0, a, dest - (length2 - 1), length2);
+        }
+    }
+
+    // Merge buffer of at least the given length, grown by doubling up to half the array
+    private String[] ensureCapacity(int length) {
+        if (tmp.length < length) {
+            int size = Math.max(length, Math.min(Math.max(256, tmp.length * 2), a.length >>> 1));
+            tmp = new String[size];
+        }
+        return tmp;
+    }
+}
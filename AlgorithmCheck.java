@@ -0,0 +1,342 @@
+import java.util.*;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Checks the exactness guarantees of the sorting, route ordering and search algorithms against
+ * brute force or a plain reference implementation:
+ *
+ * java AlgorithmCheck [--seed 42] [--rounds 20]
+ *
+ * - every String sort gives exactly String.compareTo order (KeySort: code point order), including
+ *   empty strings, long shared prefixes, surrogate pairs and unpaired surrogates
+ * - HeldKarpSolver finds an optimal order, and the same order on pools of 1, 2 and N threads
+ * - every SearchMode finds paths as short as Dijkstra's, on a map with several components
+ *
+ * Prints one line per check and throws IllegalStateException at the first failure.
+ */
+public class AlgorithmCheck {
+    // Pieces the generated strings are made of: ASCII and NUL, chars whose high bytes differ (the radix
+    // sort's first digit), the private use area and U+FFFF that compareTo puts after surrogates,
+    // surrogate pairs up to U+10FFFF, and unpaired surrogates
+    private static final String[] PIECES = {"a", "b", "z", "A", " ", "\u0000", "\u00e9", "\u0100", "\u01ff",
+            "\ue000", "\uffff", "\ud83d\ude00", "\ud800\udc00", "\udbff\udfff", "\ud83d", "\ude00"};
+    // Sizes around the cutoffs of the sorts: insertion ranges, runs, and parallel splitting
+    private static final int[] SIZES = {0, 1, 2, 15, 16, 17, 33, 100, 1000, 20000};
+    // Largest input for the quadratic insertion sort
+    private static final int MAX_INSERTION_SIZE = 1000;
+
+    public static void main(String[] args) {
+        long seed = Long.parseLong(option(args, "--seed", "42"));
+        int rounds = Integer.parseInt(option(args, "--rounds", "20"));
+        Random random = new Random(seed);
+        int threads = Math.max(4, Runtime.getRuntime().availableProcessors());
+        List<ForkJoinPool> pools = Arrays.asList(new ForkJoinPool(1), new ForkJoinPool(2), new ForkJoinPool(threads));
+        try {
+            checkSorts(random, pools);
+            checkHeldKarp(random, rounds, pools);
+            checkSearchModes(random, rounds);
+        } finally {
+            for (ForkJoinPool pool : pools) {
+                pool.shutdown();
+            }
+        }
+        System.out.println("All checks passed");
+    }
+
+    // Every sort against Arrays.sort (or code point order for KeySort) on generated inputs
+    private static void checkSorts(Random random, List<ForkJoinPool> pools) {
+        int inputs = 0;
+        for (int size : SIZES) {
+            List<String[]> cases = new ArrayList<>();
+            cases.add(randomStrings(random, size, ""));
+            cases.add(randomStrings(random, size, "Saint-Jean-Baptiste-de-la-Vallee "));
+            cases.add(Sorting.generateInput("random", size, random.nextLong()));
+            cases.add(Sorting.generateInput("nearly-sorted", size, random.nextLong()));
+            cases.add(Sorting.generateInput("few-unique", size, random.nextLong()));
+            String[] sorted = randomStrings(random, size, "");
+            Arrays.sort(sorted);
+            cases.add(sorted);
+            String[] reversed = sorted.clone();
+            Collections.reverse(Arrays.asList(reversed));
+            cases.add(reversed);
+
+            for (String[] input : cases) {
+                String[] expected = input.clone();
+                Arrays.sort(expected);
+
+                String[] a = input.clone();
+                StringSorts.msdRadixSort(a);
+                expectSorted("msd-radix", input, expected, a);
+                a = input.clone();
+                StringSorts.threeWayRadixQuickSort(a);
+                expectSorted("radix-quick", input, expected, a);
+                a = input.clone();
+                AdaptiveMergeSort.sort(a);
+                expectSorted("adaptive-merge", input, expected, a);
+                a = input.clone();
+                SortSelector.sort(a);
+                expectSorted("auto", input, expected, a);
+                for (ForkJoinPool pool : pools) {
+                    a = input.clone();
+                    ParallelMergeSort.sort(a, pool);
+                    expectSorted("parallel-merge on " + pool.getParallelism() + " threads", input, expected, a);
+                }
+
+                List<String> list = new ArrayList<>(Arrays.asList(input));
+                Sorting.quickSort(list);
+                expectSorted("quick", input, expected, list.toArray(new String[0]));
+                list = new ArrayList<>(Arrays.asList(input));
+                Sorting.mergeSort(list);
+                expectSorted("merge", input, expected, list.toArray(new String[0]));
+                if (input.length <= MAX_INSERTION_SIZE) {
+                    list = new ArrayList<>(Arrays.asList(input));
+                    Sorting.insertionSort(list);
+                    expectSorted("insertion", input, expected, list.toArray(new String[0]));
+                }
+
+                // KeySort orders by UTF-8 bytes, i.e. by code point; unpaired surrogates become '?'
+                // in UTF-8, so only inputs without them have a defined order to check
+                if (!hasUnpairedSurrogate(input)) {
+                    String[] byCodePoint = input.clone();
+                    Arrays.sort(byCodePoint, AlgorithmCheck::compareCodePoints);
+                    expectSorted("utf8-key", input, byCodePoint, KeySort.sort(input));
+                }
+                inputs++;
+            }
+        }
+        System.out.println("Sorts: compareTo order on " + inputs + " inputs");
+    }
+
+    // Held-Karp against every permutation for small inputs, and the same order on every pool
+    private static void checkHeldKarp(Random random, int rounds, List<ForkJoinPool> pools) {
+        for (int round = 0; round < rounds; round++) {
+            int n = 2 + random.nextInt(8);
+            // Few distinct distances, so that many orders tie and the tie-breaking is exercised
+            int[][] distances = randomMatrix(random, n, 1 + random.nextInt(5));
+            int start = random.nextInt(n);
+            int end = random.nextInt(n);
+            int[] order = sameOrderOnEveryPool(distances, start, end, pools);
+            long best = bruteForce(distances, start, end);
+            if (cost(distances, order) != best) {
+                throw new IllegalStateException("Held-Karp cost " + cost(distances, order) + " instead of " + best
+                        + " for " + n + " cities");
+            }
+        }
+        // Large enough that the layers are split across the pool
+        for (int round = 0; round < 2; round++) {
+            sameOrderOnEveryPool(randomMatrix(random, 16, 4), 0, 15, pools);
+        }
+        System.out.println("Held-Karp: optimal on " + rounds + " inputs, same order on 1, 2 and "
+                + pools.get(pools.size() - 1).getParallelism() + " threads");
+    }
+
+    private static int[] sameOrderOnEveryPool(int[][] distances, int start, int end, List<ForkJoinPool> pools) {
+        int[] first = null;
+        for (ForkJoinPool pool : pools) {
+            int[] order = new HeldKarpSolver(pool).solve(distances, start, end);
+            if (first == null) {
+                first = order;
+            } else if (!Arrays.equals(first, order)) {
+                throw new IllegalStateException("Held-Karp order on " + pool.getParallelism() + " threads is "
+                        + Arrays.toString(order) + " instead of " + Arrays.toString(first));
+            }
+        }
+        return first;
+    }
+
+    // Every search mode against a complete Dijkstra tree, on a map with a main component, a small
+    // one and a city without roads
+    private static void checkSearchModes(Random random, int rounds) {
+        Graph map = new Graph();
+        map.addNode("Nowhere");
+        int cities = 300;
+        for (int i = 1; i < cities; i++) {
+            // A random tree plus extra roads, so there are many alternative paths
+            map.addEdge("City " + i, "City " + random.nextInt(i), 1 + random.nextInt(100));
+        }
+        for (int i = 0; i < 2 * cities; i++) {
+            map.addEdge("City " + random.nextInt(cities), "City " + random.nextInt(cities), 1 + random.nextInt(100));
+        }
+        map.addEdge("Island A", "Island B", 7);
+        map.addEdge("Island B", "Island C", 3);
+        CompactGraph graph = CompactGraph.fromGraph(map);
+
+        Map<RoutePlanner.SearchMode, RoutePlanner> planners = new EnumMap<>(RoutePlanner.SearchMode.class);
+        for (RoutePlanner.SearchMode mode : RoutePlanner.SearchMode.values()) {
+            RoutePlanner planner = new RoutePlanner(graph, new DataLoader());
+            switch (mode) {
+                case ALT:
+                    planner.buildLandmarks(8);
+                    break;
+                case CH:
+                    planner.setContractionHierarchy(ContractionHierarchy.build(graph));
+                    break;
+                default:
+                    planner.setSearchMode(mode);
+            }
+            planners.put(mode, planner);
+        }
+
+        // Random pairs, plus pairs within and across the small components, which are rarely drawn
+        int n = graph.nodeCount();
+        List<int[]> pairs = new ArrayList<>();
+        for (int round = 0; round < rounds; round++) {
+            int source = random.nextInt(n);
+            for (int k = 0; k < 20; k++) {
+                pairs.add(new int[]{source, random.nextInt(n)});
+            }
+        }
+        String[] outliers = {"Nowhere", "Island A", "Island C", "City 0", "City " + (cities - 1)};
+        for (String from : outliers) {
+            for (String to : outliers) {
+                pairs.add(new int[]{graph.id(from), graph.id(to)});
+            }
+        }
+
+        for (int[] pair : pairs) {
+            int source = pair[0];
+            int target = pair[1];
+            ShortestPathTree tree = ShortestPathTree.compute(graph, source);
+            for (Map.Entry<RoutePlanner.SearchMode, RoutePlanner> entry : planners.entrySet()) {
+                int found = distance(graph, entry.getValue(), graph.name(source), graph.name(target));
+                if (found != tree.distance(target)) {
+                    throw new IllegalStateException(entry.getKey() + " found " + found + " instead of "
+                            + tree.distance(target) + " from " + graph.name(source) + " to " + graph.name(target));
+                }
+            }
+        }
+        System.out.println("Search modes: " + planners.keySet() + " agree with Dijkstra on " + pairs.size() + " queries");
+    }
+
+    // Length of the route a planner finds, checked against its roads; Integer.MAX_VALUE if there is none
+    private static int distance(CompactGraph graph, RoutePlanner planner, String start, String end) {
+        Route route;
+        try {
+            route = planner.findOptimalRoute(start, end, Collections.emptyList());
+        } catch (IllegalStateException e) {
+            return Integer.MAX_VALUE;
+        }
+        List<String> path = route.getCities();
+        long length = 0;
+        for (int i = 0; i + 1 < path.size(); i++) {
+            int weight = graph.weight(graph.id(path.get(i)), graph.id(path.get(i + 1)));
+            if (weight < 0) {
+                throw new IllegalStateException("The route " + path + " uses a road that does not exist");
+            }
+            length += weight;
+        }
+        if (length != route.getTotalDistance() || !path.get(0).equals(start) || !path.get(path.size() - 1).equals(end)) {
+            throw new IllegalStateException("The route " + path + " does not add up to " + route.getTotalDistance());
+        }
+        return route.getTotalDistance();
+    }
+
+    private static void expectSorted(String algorithm, String[] input, String[] expected, String[] actual) {
+        if (!Arrays.equals(expected, actual)) {
+            int i = 0;
+            while (i < expected.length && i < actual.length && expected[i].equals(actual[i])) {
+                i++;
+            }
+            throw new IllegalStateException(algorithm + " on " + input.length + " strings differs at index " + i);
+        }
+    }
+
+    // Strings of random pieces, some of them empty, all starting with a common prefix
+    private static String[] randomStrings(Random random, int size, String prefix) {
+        String[] strings = new String[size];
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < size; i++) {
+            sb.setLength(0);
+            sb.append(prefix);
+            for (int k = random.nextInt(9); k > 0; k--) {
+                sb.append(PIECES[random.nextInt(PIECES.length)]);
+            }
+            strings[i] = sb.toString();
+        }
+        return strings;
+    }
+
+    private static boolean hasUnpairedSurrogate(String[] strings) {
+        for (String s : strings) {
+            for (int i = 0; i < s.length(); i++) {
+                char c = s.charAt(i);
+                if (Character.isHighSurrogate(c) && i + 1 < s.length() && Character.isLowSurrogate(s.charAt(i + 1))) {
+                    i++;
+                } else if (Character.isSurrogate(c)) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    private static int compareCodePoints(String a, String b) {
+        int i = 0;
+        int j = 0;
+        while (i < a.length() && j < b.length()) {
+            int x = a.codePointAt(i);
+            int y = b.codePointAt(j);
+            if (x != y) {
+                return Integer.compare(x, y);
+            }
+            i += Character.charCount(x);
+            j += Character.charCount(y);
+        }
+        return Integer.compare(a.length() - i, b.length() - j);
+    }
+
+    private static int[][] randomMatrix(Random random, int n, int maxDistance) {
+        int[][] distances = new int[n][n];
+        for (int i = 0; i < n; i++) {
+            for (int j = 0; j < n; j++) {
+                distances[i][j] = i == j ? 0 : 1 + random.nextInt(maxDistance);
+            }
+        }
+        return distances;
+    }
+
+    private static long cost(int[][] distances, int[] order) {
+        long total = 0;
+        for (int i = 0; i + 1 < order.length; i++) {
+            total += distances[order[i]][order[i + 1]];
+        }
+        return total;
+    }
+
+    // Cheapest order over every permutation of the stops between start and end
+    private static long bruteForce(int[][] distances, int start, int end) {
+        List<Integer> stops = new ArrayList<>();
+        for (int i = 0; i < distances.length; i++) {
+            if (i != start && i != end) {
+                stops.add(i);
+            }
+        }
+        return bruteForce(distances, start, end, stops, new boolean[stops.size()], 0);
+    }
+
+    private static long bruteForce(int[][] distances, int current, int end, List<Integer> stops, boolean[] used, int count) {
+        if (count == stops.size()) {
+            return distances[current][end];
+        }
+        long best = Long.MAX_VALUE;
+        for (int i = 0; i < stops.size(); i++) {
+            if (!used[i]) {
+                used[i] = true;
+                int next = stops.get(i);
+                best = Math.min(best, distances[current][next] + bruteForce(distances, next, end, stops, used, count + 1));
+                used[i] = false;
+            }
+        }
+        return best;
+    }
+
+    // Value following a command-line option, or the default if the option is not given
+    private static String option(String[] args, String name, String defaultValue) {
+        for (int i = 0; i + 1 < args.length; i++) {
+            if (args[i].equals(name)) {
+                return args[i + 1];
+            }
+        }
+        return defaultValue;
+    }
+}
@@ -0,0 +1,222 @@
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Plans many itineraries concurrently.
+ *
+ * Every request runs findOptimalRoute on a copy of the given planner, so the caller's
+ * planner is never reconfigured. RoutePlanner queries are thread-safe (see its class
+ * comment), and the copy shares one ShortestPathTreeCache across the whole batch, so
+ * cities that appear in several requests are searched from only once.
+ */
+public class BatchPlanner {
+    // Default byte budget of the batch's shortest-path-tree cache
+    public static final long DEFAULT_CACHE_BYTES = 256L * 1024 * 1024;
+
+    private final RoutePlanner planner;
+    private final ExecutorService executor;
+
+    /**
+     * @param planner configured planner; a copy sharing one tree cache is used for the batch
+     * @param executor executor the requests run on (see platformExecutor and virtualThreadExecutor)
+     */
+    public BatchPlanner(RoutePlanner planner, ExecutorService executor) {
+        this(planner, executor, DEFAULT_CACHE_BYTES);
+    }
+
+    /**
+     * @param planner configured planner; a copy sharing one tree cache is used for the batch
+     * @param executor executor the requests run on
+     * @param cacheBytes byte budget of the shared tree cache, used unless the planner already has one
+     */
+    public BatchPlanner(RoutePlanner planner, ExecutorService executor, long cacheBytes) {
+        this.planner = new RoutePlanner(planner);
+        if (this.planner.getTreeCache() == null) {
+            this.planner.setTreeCache(new ShortestPathTreeCache(cacheBytes));
+        }
+        this.executor = executor;
+    }
+
+    /**
+     * Fixed pool of platform threads
+     * @param threads number of threads
+     * @return executor; the caller shuts it down
+     */
+    public static ExecutorService platformExecutor(int threads) {
+        return Executors.newFixedThreadPool(threads);
+    }
+
+    /**
+     * One virtual thread per task on Java 21 and later, a cached platform pool before that
+     * @return executor; the caller shuts it down
+     */
+    public static ExecutorService virtualThreadExecutor() {
+        try {
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (ReflectiveOperationException e) {
+            return Executors.newCachedThreadPool();
+        }
+    }
+
+    /**
+     * Plan every request. A failing request does not stop the others; its error is reported in its result.
+     *
+     * @param requests requests to plan
+     * @return results in input order, with aggregate timing
+     */
+    public BatchResult planAll(List<Request> requests) {
+        long start = System.nanoTime();
+
+        // Requests sharing a start city are queued together so its cached tree is hot
+        Map<String, List<Integer>> byStart = new HashMap<>();
+        for (int i = 0; i < requests.size(); i++) {
+            byStart.computeIfAbsent(requests.get(i).getStartCity(), k -> new ArrayList<>()).add(i);
+        }
+        List<Future<Result>> futures = new ArrayList<>(Collections.nCopies(requests.size(), null));
+        for (List<Integer> group : byStart.values()) {
+            for (int index : group) {
+                Request request = requests.get(index);
+                futures.set(index, executor.submit(() -> plan(index, request)));
+            }
+        }
+
+        List<Result> results = new ArrayList<>(requests.size());
+        for (int i = 0; i < futures.size(); i++) {
+            try {
+                results.add(futures.get(i).get());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                results.add(new Result(i, null, "Interrupted"));
+            } catch (ExecutionException e) {
+                results.add(new Result(i, null, String.valueOf(e.getCause())));
+            }
+        }
+        return new BatchResult(results, System.nanoTime() - start, planner.getTreeCache());
+    }
+
+    private Result plan(int index, Request request) {
+        try {
+            Route route = planner.findOptimalRoute(request.getStartCity(), request.getEndCity(), request.getAttractions());
+            return new Result(index, route, null);
+        } catch (RuntimeException e) {
+            return new Result(index, null, e.getMessage() == null ? e.toString() : e.getMessage());
+        }
+    }
+
+    /**
+     * One itinerary to plan
+     */
+    public static class Request {
+        private final String startCity;
+        private final String endCity;
+        private final List<String> attractions;
+
+        public Request(String startCity, String endCity, List<String> attractions) {
+            this.startCity = startCity;
+            this.endCity = endCity;
+            this.attractions = attractions;
+        }
+
+        public String getStartCity() {
+            return startCity;
+        }
+
+        public String getEndCity() {
+            return endCity;
+        }
+
+        public List<String> getAttractions() {
+            return attractions;
+        }
+    }
+
+    /**
+     * Outcome of one request: a route, or an error message
+     */
+    public static class Result {
+        private final int index;
+        private final Route route;
+        private final String error;
+
+        Result(int index, Route route, String error) {
+            this.index = index;
+            this.route = route;
+            this.error = error;
+        }
+
+        public int getIndex() {
+            return index;
+        }
+
+        public boolean isSuccess() {
+            return error == null;
+        }
+
+        public Route getRoute() {
+            return route;
+        }
+
+        public String getError() {
+            return error;
+        }
+
+        @Override
+        public String toString() {
+            return "#" + index + " " + (isSuccess() ? route.toString() : "Error: " + error);
+        }
+    }
+
+    /**
+     * Results of a batch in input order, with aggregate numbers
+     */
+    public static class BatchResult {
+        private final List<Result> results;
+        private final long elapsedNanos;
+        private final ShortestPathTreeCache cache;
+
+        BatchResult(List<Result> results, long elapsedNanos, ShortestPathTreeCache cache) {
+            this.results = results;
+            this.elapsedNanos = elapsedNanos;
+            this.cache = cache;
+        }
+
+        public List<Result> getResults() {
+            return results;
+        }
+
+        public long getElapsedNanos() {
+            return elapsedNanos;
+        }
+
+        public int getFailureCount() {
+            int failures = 0;
+            for (Result result : results) {
+                if (!result.isSuccess()) {
+                    failures++;
+                }
+            }
+            return failures;
+        }
+
+        /**
+         * Get the number of requests completed per second
+         * @return throughput
+         */
+        public double getThroughput() {
+            return elapsedNanos == 0 ? 0 : results.size() * 1e9 / elapsedNanos;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%d requests (%d failed) in %.1f ms, %.1f requests/s; %s",
+                    results.size(), getFailureCount(), elapsedNanos / 1e6, getThroughput(), cache);
+        }
+    }
+}
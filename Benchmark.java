@@ -0,0 +1,354 @@
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Small benchmark harness in the style of JMH, for code that cannot pull in JMH itself.
+ *
+ * A benchmark runs warmup iterations (discarded) and then measurement iterations; each iteration
+ * calls the operation repeatedly until the iteration time has passed, or once if a single call
+ * takes longer. Per benchmark it reports throughput and average time with their spread across
+ * iterations (standard deviation, median and 90th percentile), and, like JMH's GC profiler, the allocation rate, bytes allocated per operation and
+ * the collections that ran. Allocation is measured per thread, so operations that hand work to
+ * other threads (e.g. the parallel solver) only count the calling thread's share.
+ * Results are written as CSV or JSON so that runs can be compared for regressions.
+ */
+public class Benchmark {
+    private final int warmupIterations;
+    private final int measurementIterations;
+    private final long iterationNanos;
+    private final List<Result> results = new ArrayList<>();
+
+    // Results of every operation are folded in here, so the JIT cannot drop the work as dead code
+    private static volatile long sink;
+
+    /**
+     * Work being measured
+     */
+    public interface Operation {
+        /**
+         * Run the operation once
+         * @param invocation number of the call within the benchmark, e.g. to pick the next input
+         * @return any result of the work; it is consumed so the work is not optimized away
+         */
+        Object run(long invocation) throws Exception;
+    }
+
+    /**
+     * @param warmupIterations iterations run and discarded before measuring
+     * @param measurementIterations iterations measured
+     * @param iterationMillis minimum length of one iteration
+     */
+    public Benchmark(int warmupIterations, int measurementIterations, long iterationMillis) {
+        if (warmupIterations < 0 || measurementIterations < 1 || iterationMillis < 1) {
+            throw new IllegalArgumentException("At least one measured iteration of at least 1 ms is needed");
+        }
+        this.warmupIterations = warmupIterations;
+        this.measurementIterations = measurementIterations;
+        this.iterationNanos = iterationMillis * 1_000_000;
+    }
+
+    /**
+     * Measure an operation and keep the result
+     *
+     * @param name benchmark name
+     * @param parameters parameters shown with the result, e.g. shape and size
+     * @param operation work to measure
+     * @return result, also added to getResults
+     */
+    public Result run(String name, Map<String, String> parameters, Operation operation) throws Exception {
+        com.sun.management.ThreadMXBean threads = allocationBean();
+        long thread = Thread.currentThread().getId();
+        long invocation = 0;
+        for (int i = 0; i < warmupIterations; i++) {
+            long start = System.nanoTime();
+            do {
+                consume(operation.run(invocation++));
+            } while (System.nanoTime() - start < iterationNanos);
+        }
+
+        double[] nanosPerOperation = new double[measurementIterations];
+        double[] operationsPerSecond = new double[measurementIterations];
+        long operations = 0;
+        long totalNanos = 0;
+        long allocatedBytes = 0;
+        long gcCount = -gcCount();
+        long gcMillis = -gcMillis();
+        for (int i = 0; i < measurementIterations; i++) {
+            long allocatedBefore = threads == null ? 0 : threads.getThreadAllocatedBytes(thread);
+            long count = 0;
+            long start = System.nanoTime();
+            long elapsed;
+            do {
+                consume(operation.run(invocation++));
+                count++;
+                elapsed = System.nanoTime() - start;
+            } while (elapsed < iterationNanos);
+            if (threads != null) {
+                allocatedBytes += threads.getThreadAllocatedBytes(thread) - allocatedBefore;
+            }
+            nanosPerOperation[i] = (double) elapsed / count;
+            operationsPerSecond[i] = count * 1e9 / elapsed;
+            operations += count;
+            totalNanos += elapsed;
+        }
+        gcCount += gcCount();
+        gcMillis += gcMillis();
+
+        Result result = new Result(name, new LinkedHashMap<>(parameters), operations, totalNanos,
+                nanosPerOperation, operationsPerSecond, threads == null ? -1 : allocatedBytes, gcCount, gcMillis);
+        results.add(result);
+        return result;
+    }
+
+    /**
+     * Fold a value into the sink
+     * @param value any value
+     */
+    public static void consume(Object value) {
+        sink += value == null ? 0 : value.hashCode();
+    }
+
+    public List<Result> getResults() {
+        return results;
+    }
+
+    // Per-thread allocation counter of HotSpot-based JVMs, or null where unavailable
+    private static com.sun.management.ThreadMXBean allocationBean() {
+        if (ManagementFactory.getThreadMXBean() instanceof com.sun.management.ThreadMXBean) {
+            com.sun.management.ThreadMXBean bean = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+            if (bean.isThreadAllocatedMemorySupported()) {
+                bean.setThreadAllocatedMemoryEnabled(true);
+                return bean;
+            }
+        }
+        return null;
+    }
+
+    private static long gcCount() {
+        long count = 0;
+        for (GarbageCollectorMXBean collector : ManagementFactory.getGarbageCollectorMXBeans()) {
+            count += Math.max(0, collector.getCollectionCount());
+        }
+        return count;
+    }
+
+    private static long gcMillis() {
+        long millis = 0;
+        for (GarbageCollectorMXBean collector : ManagementFactory.getGarbageCollectorMXBeans()) {
+            millis += Math.max(0, collector.getCollectionTime());
+        }
+        return millis;
+    }
+
+    /**
+     * Write results as CSV, one row per benchmark; parameters are joined into one column as name=value pairs
+     * @param file file to write
+     * @param results results to write
+     */
+    public static void writeCsv(Path file, List<Result> results) throws IOException {
+        try (BufferedWriter writer = Files.newBufferedWriter(file, StandardCharsets.UTF_8)) {
+            writer.write("benchmark,params,iterations,ops,avg_us_per_op,avg_us_stddev,median_us_per_op,p90_us_per_op,"
+                    + "ops_per_s,ops_per_s_stddev,alloc_mb_per_s,alloc_bytes_per_op,gc_count,gc_ms\n");
+            for (Result result : results) {
+                writer.write(String.format(Locale.ROOT, "%s,%s,%d,%d,%.3f,%.3f,%.3f,%.3f,%.3f,%.3f,%.3f,%.1f,%d,%d%n",
+                        result.name, result.parameterString(" "), result.nanosPerOperation.length, result.operations,
+                        result.getAverageMicros(), stddev(result.nanosPerOperation) / 1000, result.getMedianMicros(),
+                        result.getPercentileMicros(90), result.getThroughput(),
+                        stddev(result.operationsPerSecond), result.getAllocationRate(), result.getBytesPerOperation(),
+                        result.gcCount, result.gcMillis));
+            }
+        }
+    }
+
+    /**
+     * Write results as a JSON array, one object per benchmark
+     * @param file file to write
+     * @param results results to write
+     */
+    public static void writeJson(Path file, List<Result> results) throws IOException {
+        try (BufferedWriter writer = Files.newBufferedWriter(file, StandardCharsets.UTF_8)) {
+            writer.write("[\n");
+            for (int i = 0; i < results.size(); i++) {
+                writer.write("  " + results.get(i).toJson() + (i + 1 < results.size() ? ",\n" : "\n"));
+            }
+            writer.write("]\n");
+        }
+    }
+
+    private static double mean(double[] values) {
+        double sum = 0;
+        for (double value : values) {
+            sum += value;
+        }
+        return sum / values.length;
+    }
+
+    private static double stddev(double[] values) {
+        if (values.length < 2) {
+            return 0;
+        }
+        double mean = mean(values);
+        double squares = 0;
+        for (double value : values) {
+            squares += (value - mean) * (value - mean);
+        }
+        return Math.sqrt(squares / (values.length - 1));
+    }
+
+    // Percentile of the values, interpolating between the two nearest ranks
+    private static double percentile(double[] values, double percent) {
+        double[] sorted = values.clone();
+        Arrays.sort(sorted);
+        double rank = percent / 100 * (sorted.length - 1);
+        int below = (int) Math.floor(rank);
+        int above = (int) Math.ceil(rank);
+        return sorted[below] + (sorted[above] - sorted[below]) * (rank - below);
+    }
+
+    /**
+     * Measurements of one benchmark
+     */
+    public static class Result {
+        private final String name;
+        private final Map<String, String> parameters;
+        private final long operations;
+        private final long totalNanos;
+        private final double[] nanosPerOperation;
+        private final double[] operationsPerSecond;
+        private final long allocatedBytes;
+        private final long gcCount;
+        private final long gcMillis;
+
+        Result(String name, Map<String, String> parameters, long operations, long totalNanos, double[] nanosPerOperation,
+               double[] operationsPerSecond, long allocatedBytes, long gcCount, long gcMillis) {
+            this.name = name;
+            this.parameters = parameters;
+            this.operations = operations;
+            this.totalNanos = totalNanos;
+            this.nanosPerOperation = nanosPerOperation;
+            this.operationsPerSecond = operationsPerSecond;
+            this.allocatedBytes = allocatedBytes;
+            this.gcCount = gcCount;
+            this.gcMillis = gcMillis;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public Map<String, String> getParameters() {
+            return parameters;
+        }
+
+        /**
+         * Get the mean time per operation over the measured iterations
+         * @return microseconds per operation
+         */
+        public double getAverageMicros() {
+            return mean(nanosPerOperation) / 1000;
+        }
+
+        /**
+         * Get the median time per operation over the measured iterations
+         * @return microseconds per operation
+         */
+        public double getMedianMicros() {
+            return getPercentileMicros(50);
+        }
+
+        /**
+         * Get a percentile of the time per operation over the measured iterations
+         * @param percent percentile, from 0 to 100
+         * @return microseconds per operation
+         */
+        public double getPercentileMicros(double percent) {
+            if (percent < 0 || percent > 100) {
+                throw new IllegalArgumentException("Percentile must be between 0 and 100");
+            }
+            return percentile(nanosPerOperation, percent) / 1000;
+        }
+
+        /**
+         * Get the mean throughput over the measured iterations
+         * @return operations per second
+         */
+        public double getThroughput() {
+            return mean(operationsPerSecond);
+        }
+
+        /**
+         * Get the allocation rate of the measuring thread
+         * @return megabytes per second, or -1 if the JVM cannot measure allocation
+         */
+        public double getAllocationRate() {
+            return allocatedBytes < 0 ? -1 : allocatedBytes / 1e6 / (totalNanos / 1e9);
+        }
+
+        /**
+         * Get the bytes allocated per operation by the measuring thread
+         * @return bytes per operation, or -1 if the JVM cannot measure allocation
+         */
+        public double getBytesPerOperation() {
+            return allocatedBytes < 0 ? -1 : (double) allocatedBytes / operations;
+        }
+
+        private String parameterString(String separator) {
+            StringBuilder text = new StringBuilder();
+            for (Map.Entry<String, String> parameter : parameters.entrySet()) {
+                if (text.length() > 0) {
+                    text.append(separator);
+                }
+                text.append(parameter.getKey()).append('=').append(parameter.getValue());
+            }
+            return text.toString();
+        }
+
+        /**
+         * Format the result as a JSON object
+         * @return JSON text
+         */
+        public String toJson() {
+            StringBuilder json = new StringBuilder("{\"benchmark\":");
+            RouteServer.quote(json, name);
+            json.append(",\"params\":{");
+            boolean first = true;
+            for (Map.Entry<String, String> parameter : parameters.entrySet()) {
+                if (!first) {
+                    json.append(',');
+                }
+                first = false;
+                RouteServer.quote(json, parameter.getKey());
+                json.append(':');
+                RouteServer.quote(json, parameter.getValue());
+            }
+            json.append(String.format(Locale.ROOT, "},\"iterations\":%d,\"ops\":%d,\"avgMicrosPerOp\":%.3f,"
+                            + "\"avgMicrosStddev\":%.3f,\"medianMicrosPerOp\":%.3f,\"p90MicrosPerOp\":%.3f,"
+                            + "\"opsPerSecond\":%.3f,\"opsPerSecondStddev\":%.3f,"
+                            + "\"gc.alloc.rate\":%.3f,\"gc.alloc.rate.norm\":%.1f,\"gc.count\":%d,\"gc.time\":%d}",
+                    nanosPerOperation.length, operations, getAverageMicros(), stddev(nanosPerOperation) / 1000,
+                    getMedianMicros(), getPercentileMicros(90), getThroughput(), stddev(operationsPerSecond), getAllocationRate(), getBytesPerOperation(),
+                    gcCount, gcMillis));
+            return json.toString();
+        }
+
+        @Override
+        public String toString() {
+            return String.format(Locale.ROOT, "%-28s %-40s %12.3f us/op (+- %.3f, median %.3f, p90 %.3f) %12.1f ops/s "
+                            + "%10.1f MB/s %12.0f B/op  gc %d (%d ms)",
+                    name, parameterString(" "), getAverageMicros(), stddev(nanosPerOperation) / 1000, getMedianMicros(),
+                    getPercentileMicros(90), getThroughput(),
+                    getAllocationRate(), getBytesPerOperation(), gcCount, gcMillis);
+        }
+    }
+}
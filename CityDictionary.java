@@ -0,0 +1,132 @@
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.function.ToIntFunction;
+
+/**
+ * Hash dictionary from UTF-8 city names to int ids, keyed by raw bytes.
+ * A name is only decoded into a String the first time it is seen, so interning a
+ * name that is already known allocates nothing. Not thread-safe.
+ */
+public class CityDictionary {
+    private final ToIntFunction<String> idForNewName;
+
+    // Open-addressing table; each used slot holds (hash << 32) | entry, 0 when empty
+    private long[] slots = new long[1024];
+
+    // Per entry, stored together so a lookup touches one place: byte pool start, byte length, id
+    private int[] entries = new int[3 * 256];
+    private int size = 0;
+
+    private byte[] pool = new byte[16 * 1024];
+    private int poolSize = 0;
+
+    /**
+     * @param idForNewName called once per new name; returns the id to store for it
+     */
+    public CityDictionary(ToIntFunction<String> idForNewName) {
+        this.idForNewName = idForNewName;
+    }
+
+    /**
+     * Look up or add a name held as UTF-8 bytes
+     * @param buffer bytes
+     * @param start first byte of the name
+     * @param end end of the name (exclusive)
+     * @return id of the name
+     */
+    public int intern(ByteBuffer buffer, int start, int end) {
+        int hash = 0x811c9dc5;
+        for (int i = start; i < end; i++) {
+            hash = (hash ^ (buffer.get(i) & 0xFF)) * 0x01000193;
+        }
+
+        int mask = slots.length - 1;
+        for (int slot = hash & mask; ; slot = (slot + 1) & mask) {
+            long packed = slots[slot];
+            if (packed == 0) {
+                byte[] bytes = new byte[end - start];
+                for (int i = 0; i < bytes.length; i++) {
+                    bytes[i] = buffer.get(start + i);
+                }
+                return add(slot, hash, bytes);
+            }
+            int entry = (int) packed - 1;
+            if ((int) (packed >>> 32) == hash && sameBytes(entry, buffer, start, end)) {
+                return entries[3 * entry + 2];
+            }
+        }
+    }
+
+    /**
+     * Look up or add a name
+     * @param name city name
+     * @return id of the name
+     */
+    public int intern(String name) {
+        byte[] bytes = name.getBytes(StandardCharsets.UTF_8);
+        return intern(ByteBuffer.wrap(bytes), 0, bytes.length);
+    }
+
+    public int size() {
+        return size;
+    }
+
+    private boolean sameBytes(int entry, ByteBuffer buffer, int start, int end) {
+        if (entries[3 * entry + 1] != end - start) {
+            return false;
+        }
+        int offset = entries[3 * entry];
+        for (int i = start; i < end; i++) {
+            if (pool[offset++] != buffer.get(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private int add(int slot, int hash, byte[] bytes) {
+        int id = idForNewName.applyAsInt(new String(bytes, StandardCharsets.UTF_8));
+
+        if (3 * size == entries.length) {
+            entries = Arrays.copyOf(entries, entries.length * 2);
+        }
+        if (poolSize + bytes.length > pool.length) {
+            pool = Arrays.copyOf(pool, Math.max(pool.length * 2, poolSize + bytes.length));
+        }
+        System.arraycopy(bytes, 0, pool, poolSize, bytes.length);
+
+        int entry = size++;
+        entries[3 * entry] = poolSize;
+        entries[3 * entry + 1] = bytes.length;
+        entries[3 * entry + 2] = id;
+        poolSize += bytes.length;
+        slots[slot] = pack(hash, entry);
+
+        // Keep the table at most half full
+        if (size * 2 > slots.length) {
+            rehash();
+        }
+        return id;
+    }
+
+    // Entries are stored plus one so that an empty slot is 0
+    private static long pack(int hash, int entry) {
+        return ((long) hash << 32) | (entry + 1);
+    }
+
+    private void rehash() {
+        long[] old = slots;
+        slots = new long[old.length * 2];
+        int mask = slots.length - 1;
+        for (long packed : old) {
+            if (packed != 0) {
+                int slot = (int) (packed >>> 32) & mask;
+                while (slots[slot] != 0) {
+                    slot = (slot + 1) & mask;
+                }
+                slots[slot] = packed;
+            }
+        }
+    }
+}
@@ -0,0 +1,497 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Frozen graph in compressed-sparse-row form.
+ * Cities are numbered 0..n-1 and the edges of node u are stored at
+ * indices begin(u)..end(u)-1 of targets(u) and weights(u).
+ *
+ * A CompactGraph is never modified. withRoad and withoutRoad return a new graph that
+ * shares everything with this one except the rows of the two cities involved, which
+ * are copied (copy-on-write), so an update costs time proportional to their degree.
+ */
+public class CompactGraph {
+    // Replaced rows are kept in pages of 2^PAGE_BITS nodes, so an update copies one page, not all rows
+    private static final int PAGE_BITS = 8;
+    private static final int PAGE_MASK = (1 << PAGE_BITS) - 1;
+
+    // City name <-> id dictionary
+    private final String[] names;
+    private final Map<String, Integer> ids;
+
+    // CSR arrays: the edges of u are at offsets[u]..offsets[u+1]-1
+    private final int[] offsets;
+    private final int[] targets;
+    private final int[] weights;
+
+    // Rows replaced by road updates, null (or a null page or entry) where the CSR row is current
+    private final Row[][] patches;
+    private final int arcCount;
+
+    CompactGraph(String[] names, Map<String, Integer> ids, int[] offsets, int[] targets, int[] weights) {
+        this(names, ids, offsets, targets, weights, null, targets.length);
+    }
+
+    private CompactGraph(String[] names, Map<String, Integer> ids, int[] offsets, int[] targets, int[] weights,
+                         Row[][] patches, int arcCount) {
+        this.names = names;
+        this.ids = ids;
+        this.offsets = offsets;
+        this.targets = targets;
+        this.weights = weights;
+        this.patches = patches;
+        this.arcCount = arcCount;
+    }
+
+    /**
+     * Build a compact copy of a graph
+     * @param graph source graph
+     * @return frozen CSR graph
+     */
+    public static CompactGraph fromGraph(Graph graph) {
+        Builder builder = new Builder();
+        // Hold the graph's lock so that a concurrent writer cannot change it halfway through the copy
+        synchronized (graph) {
+            List<String> nodes = graph.getNodes();
+            for (String node : nodes) {
+                builder.addNode(node);
+            }
+            for (String node : nodes) {
+                int u = builder.addNode(node);
+                for (String neighbor : graph.getNeighbors(node)) {
+                    // Each undirected edge is seen from both ends, so add one arc at a time
+                    builder.addArc(u, builder.addNode(neighbor), graph.getDistance(node, neighbor));
+                }
+            }
+        }
+        return builder.build();
+    }
+
+    /**
+     * Get the number of nodes
+     * @return node count
+     */
+    public int nodeCount() {
+        return names.length;
+    }
+
+    /**
+     * Get the number of directed arcs (each road counts twice)
+     * @return arc count
+     */
+    public int arcCount() {
+        return arcCount;
+    }
+
+    /**
+     * Get the id of a city
+     * @param city city name
+     * @return node id, or -1 if the city is not in the graph
+     */
+    public int id(String city) {
+        Integer id = ids.get(city);
+        return id == null ? -1 : id;
+    }
+
+    /**
+     * Get the name of a node
+     * @param id node id
+     * @return city name
+     */
+    public String name(int id) {
+        return names[id];
+    }
+
+    /**
+     * Check if a city exists
+     * @param city city name
+     * @return whether it exists
+     */
+    public boolean hasNode(String city) {
+        return ids.containsKey(city);
+    }
+
+    /**
+     * First edge index of a node
+     * @param u node id
+     * @return index into targets(u) and weights(u)
+     */
+    public int begin(int u) {
+        return patch(u) == null ? offsets[u] : 0;
+    }
+
+    /**
+     * End (exclusive) edge index of a node
+     * @param u node id
+     * @return index into targets(u) and weights(u)
+     */
+    public int end(int u) {
+        Row row = patch(u);
+        return row == null ? offsets[u + 1] : row.targets.length;
+    }
+
+    /**
+     * Array holding the edge targets of a node, valid from begin(u) to end(u)
+     * @param u node id
+     * @return target array (must not be modified)
+     */
+    public int[] targets(int u) {
+        Row row = patch(u);
+        return row == null ? targets : row.targets;
+    }
+
+    /**
+     * Array holding the edge weights of a node, valid from begin(u) to end(u)
+     * @param u node id
+     * @return weight array (must not be modified)
+     */
+    public int[] weights(int u) {
+        Row row = patch(u);
+        return row == null ? weights : row.weights;
+    }
+
+    private Row patch(int u) {
+        if (patches == null) {
+            return null;
+        }
+        Row[] page = patches[u >>> PAGE_BITS];
+        return page == null ? null : page[u & PAGE_MASK];
+    }
+
+    /**
+     * Get a graph with a road added or its distance changed; this graph is unchanged
+     * @param u node id of one end
+     * @param v node id of the other end
+     * @param distance new distance
+     * @return updated graph sharing all other rows with this one
+     */
+    public CompactGraph withRoad(int u, int v, int distance) {
+        if (distance < 0) {
+            throw new IllegalArgumentException("Distance must not be negative");
+        }
+        return update(u, v, distance);
+    }
+
+    /**
+     * Get a graph without the road between two nodes; this graph is unchanged
+     * @param u node id of one end
+     * @param v node id of the other end
+     * @return updated graph, or this graph if there is no such road
+     */
+    public CompactGraph withoutRoad(int u, int v) {
+        return weight(u, v) == -1 ? this : update(u, v, -1);
+    }
+
+    // Copy the rows of u and v with the road set to distance, or removed if distance is -1
+    private CompactGraph update(int u, int v, int distance) {
+        Row[][] pages = patches == null ? new Row[(names.length >>> PAGE_BITS) + 1][] : patches.clone();
+        int arcs = arcCount;
+        for (int side = 0; side < (u == v ? 1 : 2); side++) {
+            int from = side == 0 ? u : v;
+            int to = side == 0 ? v : u;
+            Row row = rowWith(from, to, distance);
+            arcs += row.targets.length - degree(from);
+
+            // Copy the page once per update; the second row may share it with the first
+            int page = from >>> PAGE_BITS;
+            if (pages[page] == null) {
+                pages[page] = new Row[PAGE_MASK + 1];
+            } else if (patches != null && pages[page] == patches[page]) {
+                pages[page] = pages[page].clone();
+            }
+            pages[page][from & PAGE_MASK] = row;
+        }
+        return new CompactGraph(names, ids, offsets, targets, weights, pages, arcs);
+    }
+
+    private Row rowWith(int from, int to, int distance) {
+        int[] t = targets(from);
+        int[] w = weights(from);
+        int begin = begin(from);
+        int degree = degree(from);
+        int existing = -1;
+        for (int e = begin; e < begin + degree; e++) {
+            if (t[e] == to) {
+                existing = e - begin;
+            }
+        }
+
+        int size = degree + (existing == -1 && distance != -1 ? 1 : 0) - (existing != -1 && distance == -1 ? 1 : 0);
+        int[] rowTargets = new int[size];
+        int[] rowWeights = new int[size];
+        int k = 0;
+        for (int e = begin; e < begin + degree; e++) {
+            if (e - begin == existing) {
+                if (distance == -1) {
+                    continue;
+                }
+                rowTargets[k] = to;
+                rowWeights[k++] = distance;
+            } else {
+                rowTargets[k] = t[e];
+                rowWeights[k++] = w[e];
+            }
+        }
+        if (existing == -1 && distance != -1) {
+            rowTargets[k] = to;
+            rowWeights[k] = distance;
+        }
+        return new Row(rowTargets, rowWeights);
+    }
+
+    /**
+     * Get the degree of a node
+     * @param u node id
+     * @return number of edges leaving u
+     */
+    public int degree(int u) {
+        return end(u) - begin(u);
+    }
+
+    /**
+     * Get the weight of the edge between two nodes
+     * @param u source node id
+     * @param v target node id
+     * @return distance, or -1 if no connection
+     */
+    public int weight(int u, int v) {
+        int[] t = targets(u);
+        int[] w = weights(u);
+        for (int e = begin(u), end = end(u); e < end; e++) {
+            if (t[e] == v) {
+                return w[e];
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Hash of the names and edges, used to check that precomputed data matches this graph.
+     * Cities and roads are hashed by name and summed, so the same data gives the same fingerprint
+     * whatever ids and adjacency order it was built with; see idMapping for data indexed by id.
+     * @return 64-bit fingerprint
+     */
+    public long fingerprint() {
+        long nodes = 0;
+        long arcs = 0;
+        for (int u = 0; u < nodeCount(); u++) {
+            int nameHash = names[u].hashCode();
+            nodes += mix(nameHash);
+            int[] t = targets(u);
+            int[] w = weights(u);
+            for (int e = begin(u), end = end(u); e < end; e++) {
+                arcs += mix(mix((long) nameHash << 32 | (names[t[e]].hashCode() & 0xFFFFFFFFL)) + w[e]);
+            }
+        }
+        return mix(nodes * 31 + arcs) ^ nodeCount();
+    }
+
+    // 64-bit finalizer of MurmurHash3, so summed hashes do not cancel in simple ways
+    private static long mix(long x) {
+        x = (x ^ (x >>> 33)) * 0xff51afd7ed558ccdL;
+        x = (x ^ (x >>> 33)) * 0xc4ceb9fe1a85ec53L;
+        return x ^ (x >>> 33);
+    }
+
+    /**
+     * Map ids of data saved for a graph with the same cities (possibly numbered differently) to ids in this graph
+     * @param savedNames city names in the saved data's id order
+     * @return this graph's id for each saved id, or null if the ids are the same
+     * @throws IllegalArgumentException if the cities differ
+     */
+    public int[] idMapping(String[] savedNames) {
+        if (savedNames.length != nodeCount()) {
+            throw new IllegalArgumentException("Saved data has " + savedNames.length + " cities, the graph " + nodeCount());
+        }
+        int[] mapping = new int[savedNames.length];
+        boolean same = true;
+        for (int i = 0; i < savedNames.length; i++) {
+            mapping[i] = id(savedNames[i]);
+            if (mapping[i] == -1) {
+                throw new IllegalArgumentException("Saved data has a city the graph does not: " + savedNames[i]);
+            }
+            same &= mapping[i] == i;
+        }
+        return same ? null : mapping;
+    }
+
+    /**
+     * Copy the graph back into the map-based representation
+     * @return mutable graph with the same nodes and edges
+     */
+    public Graph toGraph() {
+        Graph graph = new Graph();
+        for (int u = 0; u < nodeCount(); u++) {
+            graph.addNode(names[u]);
+        }
+        for (int u = 0; u < nodeCount(); u++) {
+            int[] t = targets(u);
+            int[] w = weights(u);
+            for (int e = begin(u), end = end(u); e < end; e++) {
+                graph.addEdge(names[u], names[t[e]], w[e]);
+            }
+        }
+        return graph;
+    }
+
+    @Override
+    public String toString() {
+        return "CompactGraph with " + nodeCount() + " nodes and " + (arcCount() / 2) + " roads";
+    }
+
+    // Adjacency of one node that replaces its CSR row
+    private static class Row {
+        final int[] targets;
+        final int[] weights;
+
+        Row(int[] targets, int[] weights) {
+            this.targets = targets;
+            this.weights = weights;
+        }
+    }
+
+    /**
+     * Collects nodes and edges and freezes them into a CompactGraph.
+     * Like Graph, a repeated edge replaces the earlier distance.
+     */
+    public static class Builder {
+        private final List<String> names = new ArrayList<>();
+        private final Map<String, Integer> ids = new HashMap<>();
+
+        // Arcs in insertion order
+        private int[] arcSources = new int[16];
+        private int[] arcTargets = new int[16];
+        private int[] arcWeights = new int[16];
+        private int arcCount = 0;
+
+        public Builder() {
+        }
+
+        private Builder(Builder other) {
+            names.addAll(other.names);
+            ids.putAll(other.ids);
+            arcSources = Arrays.copyOf(other.arcSources, Math.max(16, other.arcCount));
+            arcTargets = Arrays.copyOf(other.arcTargets, Math.max(16, other.arcCount));
+            arcWeights = Arrays.copyOf(other.arcWeights, Math.max(16, other.arcCount));
+            arcCount = other.arcCount;
+        }
+
+        /**
+         * Copy the nodes and edges collected so far; adding to the copy leaves this builder unchanged
+         * @return new builder
+         */
+        public Builder copy() {
+            return new Builder(this);
+        }
+
+        /**
+         * Add a node, or look up an existing one
+         * @param city city name
+         * @return node id
+         */
+        public int addNode(String city) {
+            Integer id = ids.get(city);
+            if (id == null) {
+                id = names.size();
+                names.add(city);
+                ids.put(city, id);
+            }
+            return id;
+        }
+
+        /**
+         * Get the number of nodes added so far
+         * @return node count
+         */
+        public int nodeCount() {
+            return names.size();
+        }
+
+        /**
+         * Add an undirected edge between two cities
+         * @param source source city
+         * @param destination destination city
+         * @param distance distance
+         */
+        public void addEdge(String source, String destination, int distance) {
+            addEdge(addNode(source), addNode(destination), distance);
+        }
+
+        /**
+         * Add an undirected edge between two existing node ids
+         * @param u source node id
+         * @param v destination node id
+         * @param distance distance
+         */
+        public void addEdge(int u, int v, int distance) {
+            addArc(u, v, distance);
+            addArc(v, u, distance);
+        }
+
+        void addArc(int u, int v, int distance) {
+            if (arcCount == arcSources.length) {
+                int capacity = arcCount * 2;
+                arcSources = Arrays.copyOf(arcSources, capacity);
+                arcTargets = Arrays.copyOf(arcTargets, capacity);
+                arcWeights = Arrays.copyOf(arcWeights, capacity);
+            }
+            arcSources[arcCount] = u;
+            arcTargets[arcCount] = v;
+            arcWeights[arcCount] = distance;
+            arcCount++;
+        }
+
+        /**
+         * Freeze the collected nodes and edges
+         * @return compact graph
+         */
+        public CompactGraph build() {
+            int n = names.size();
+
+            // Counting sort of the arcs by source, keeping insertion order within a row
+            int[] rowStart = new int[n + 1];
+            for (int i = 0; i < arcCount; i++) {
+                rowStart[arcSources[i] + 1]++;
+            }
+            for (int u = 0; u < n; u++) {
+                rowStart[u + 1] += rowStart[u];
+            }
+            int[] fill = Arrays.copyOf(rowStart, n);
+            int[] rowTargets = new int[arcCount];
+            int[] rowWeights = new int[arcCount];
+            for (int i = 0; i < arcCount; i++) {
+                int slot = fill[arcSources[i]]++;
+                rowTargets[slot] = arcTargets[i];
+                rowWeights[slot] = arcWeights[i];
+            }
+
+            // Drop repeated arcs, walking each row backwards so the last distance wins
+            int[] seenInRow = new int[n];
+            int[] offsets = new int[n + 1];
+            int[] targets = new int[arcCount];
+            int[] weights = new int[arcCount];
+            int size = 0;
+            for (int u = 0; u < n; u++) {
+                offsets[u] = size;
+                int rowEnd = size;
+                for (int i = rowStart[u + 1] - 1; i >= rowStart[u]; i--) {
+                    int v = rowTargets[i];
+                    if (seenInRow[v] != u + 1) {
+                        seenInRow[v] = u + 1;
+                        targets[rowEnd] = v;
+                        weights[rowEnd] = rowWeights[i];
+                        rowEnd++;
+                    }
+                }
+                size = rowEnd;
+            }
+            offsets[n] = size;
+
+            return new CompactGraph(names.toArray(new String[0]), new HashMap<>(ids),
+                    offsets, Arrays.copyOf(targets, size), Arrays.copyOf(weights, size));
+        }
+    }
+}
@@ -0,0 +1,641 @@
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.PriorityQueue;
+
+/**
+ * Contraction Hierarchies over a CompactGraph.
+ *
+ * Preprocessing contracts nodes one at a time in order of edge difference, adding a shortcut
+ * u-w through v whenever the path u-v-w is the only shortest path between u and w. Every edge
+ * then points from a lower to a higher ranked node, and a query is a bidirectional Dijkstra
+ * that only climbs the hierarchy. Shortcuts remember the node they bypass so that the result
+ * can be unpacked into original roads.
+ */
+public class ContractionHierarchy {
+    private static final int MAGIC = 0x52504348;  // "RPCH"
+    private static final int VERSION = 2;
+
+    // Witness searches give up after this many settled nodes and add the shortcut anyway
+    private static final int WITNESS_SETTLE_LIMIT = 500;
+
+    private final CompactGraph graph;
+    private final int[] rank;
+
+    // Upward graph in CSR form; middle is the bypassed node of a shortcut, -1 for a real road
+    private final int[] upOffsets;
+    private final int[] upTargets;
+    private final int[] upWeights;
+    private final int[] upMiddles;
+
+    // Query arrays are sized to the graph, so queries reuse pooled ones and reset only what they touched
+    private final WorkspacePool<QueryWorkspace> workspaces = new WorkspacePool<>();
+
+    private ContractionHierarchy(CompactGraph graph, int[] rank, int[] upOffsets, int[] upTargets, int[] upWeights, int[] upMiddles) {
+        this.graph = graph;
+        this.rank = rank;
+        this.upOffsets = upOffsets;
+        this.upTargets = upTargets;
+        this.upWeights = upWeights;
+        this.upMiddles = upMiddles;
+    }
+
+    /**
+     * Contract every node of a graph
+     * @param graph graph to preprocess
+     * @return hierarchy
+     */
+    public static ContractionHierarchy build(CompactGraph graph) {
+        return new Contractor(graph).contractAll();
+    }
+
+    /**
+     * Shortest path between two nodes
+     * @param source source node id
+     * @param target target node id
+     * @return result with the unpacked path; the path is null if the target is unreachable
+     */
+    public Result query(int source, int target) {
+        if (source == target) {
+            return new Result(0, new int[]{source}, 0, 0, 0);
+        }
+        QueryWorkspace workspace = workspaces.acquire();
+        if (workspace == null) {
+            workspace = new QueryWorkspace(rank.length);
+        }
+        // Only a query that finished has reset its arrays, so a failed one's workspace is dropped
+        Result result = query(workspace, source, target);
+        workspaces.release(workspace);
+        return result;
+    }
+
+    private Result query(QueryWorkspace workspace, int source, int target) {
+        int[][] distances = workspace.distances;
+        int[][] predecessors = workspace.predecessors;
+        IndexedMinHeap[] heaps = workspace.heaps;
+        workspace.reach(0, source, 0, -1);
+        workspace.reach(1, target, 0, -1);
+
+        long best = Long.MAX_VALUE;
+        int meeting = -1;
+        int settled = 0;
+        int relaxed = 0;
+        int pushes = 2;
+        while (true) {
+            long forwardMin = heaps[0].isEmpty() ? Long.MAX_VALUE : heaps[0].minKey();
+            long backwardMin = heaps[1].isEmpty() ? Long.MAX_VALUE : heaps[1].minKey();
+            // Neither side can still improve on the best meeting point
+            if (Math.min(forwardMin, backwardMin) >= best) {
+                break;
+            }
+            int side = forwardMin <= backwardMin ? 0 : 1;
+            int u = heaps[side].poll();
+            settled++;
+
+            int[] own = distances[side];
+            int[] other = distances[1 - side];
+            if (other[u] != Integer.MAX_VALUE && (long) own[u] + other[u] < best) {
+                best = (long) own[u] + other[u];
+                meeting = u;
+            }
+
+            relaxed += upOffsets[u + 1] - upOffsets[u];
+            for (int e = upOffsets[u]; e < upOffsets[u + 1]; e++) {
+                int v = upTargets[e];
+                int newDistance = own[u] + upWeights[e];
+                if (newDistance < own[v]) {
+                    workspace.reach(side, v, newDistance, u);
+                    pushes++;
+                }
+            }
+        }
+        if (meeting == -1) {
+            workspace.reset();
+            return new Result(Integer.MAX_VALUE, null, settled, relaxed, pushes);
+        }
+
+        // Hierarchy-level path: source up to the meeting node (filled back to front), then down to the target
+        int[] hierarchyPath = workspace.hierarchyPath;
+        int length = 0;
+        for (int current = meeting; current != -1; current = predecessors[0][current]) {
+            length++;
+        }
+        int i = length;
+        for (int current = meeting; current != -1; current = predecessors[0][current]) {
+            hierarchyPath[--i] = current;
+        }
+        for (int current = predecessors[1][meeting]; current != -1; current = predecessors[1][current]) {
+            hierarchyPath[length++] = current;
+        }
+        workspace.reset();
+
+        // Replace each shortcut with the roads it stands for
+        workspace.pathLength = 0;
+        workspace.append(source);
+        for (i = 0; i + 1 < length; i++) {
+            unpack(workspace, hierarchyPath[i], hierarchyPath[i + 1]);
+        }
+        return new Result((int) best, Arrays.copyOf(workspace.path, workspace.pathLength), settled, relaxed, pushes);
+    }
+
+    /**
+     * Append the original nodes after from, up to and including to, to the workspace's path
+     */
+    private void unpack(QueryWorkspace workspace, int from, int to) {
+        int[] stack = workspace.stack;
+        int size = 0;
+        stack[size++] = from;
+        stack[size++] = to;
+        while (size > 0) {
+            int y = stack[--size];
+            int x = stack[--size];
+            int middle = middle(x, y);
+            if (middle == -1) {
+                workspace.append(y);
+                continue;
+            }
+            if (size + 4 > stack.length) {
+                stack = Arrays.copyOf(stack, stack.length * 2);
+                workspace.stack = stack;
+            }
+            // Push the second half first so the first half is unpacked first
+            stack[size++] = middle;
+            stack[size++] = y;
+            stack[size++] = x;
+            stack[size++] = middle;
+        }
+    }
+
+    // Bypassed node of the hierarchy edge between x and y; stored at the lower-ranked end
+    private int middle(int x, int y) {
+        int lower = rank[x] < rank[y] ? x : y;
+        int higher = lower == x ? y : x;
+        for (int e = upOffsets[lower]; e < upOffsets[lower + 1]; e++) {
+            if (upTargets[e] == higher) {
+                return upMiddles[e];
+            }
+        }
+        throw new IllegalStateException("Missing hierarchy edge between " + graph.name(x) + " and " + graph.name(y));
+    }
+
+    /**
+     * Save the hierarchy so it can be loaded instead of contracting again
+     * @param file output file
+     */
+    public void writeTo(Path file) throws IOException {
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(file)))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(rank.length);
+            out.writeInt(upTargets.length);
+            out.writeLong(graph.fingerprint());
+            writeInts(out, rank);
+            writeInts(out, upOffsets);
+            writeInts(out, upTargets);
+            writeInts(out, upWeights);
+            writeInts(out, upMiddles);
+            // Names let readFrom translate ids for the same data numbered differently
+            for (int u = 0; u < rank.length; u++) {
+                out.writeUTF(graph.name(u));
+            }
+        }
+    }
+
+    /**
+     * Load a saved hierarchy
+     * @param file file written by writeTo
+     * @param graph graph the hierarchy must have been built from
+     * @return hierarchy
+     */
+    public static ContractionHierarchy readFrom(Path file, CompactGraph graph) throws IOException {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file)))) {
+            if (in.readInt() != MAGIC) {
+                throw new IOException(file + " is not a contraction hierarchy");
+            }
+            int version = in.readInt();
+            if (version != VERSION) {
+                throw new IOException("Unsupported contraction hierarchy version " + version + " in " + file);
+            }
+            int n = in.readInt();
+            int edges = in.readInt();
+            if (n != graph.nodeCount() || in.readLong() != graph.fingerprint()) {
+                throw new IOException("Contraction hierarchy " + file + " was built for a different graph");
+            }
+            int[] rank = readInts(in, n);
+            int[] upOffsets = readInts(in, n + 1);
+            int[] upTargets = readInts(in, edges);
+            int[] upWeights = readInts(in, edges);
+            int[] upMiddles = readInts(in, edges);
+            String[] names = new String[n];
+            for (int i = 0; i < n; i++) {
+                names[i] = in.readUTF();
+            }
+            int[] mapping;
+            try {
+                mapping = graph.idMapping(names);
+            } catch (IllegalArgumentException e) {
+                throw new IOException("Contraction hierarchy " + file + " was built for a different graph", e);
+            }
+            if (mapping == null) {
+                return new ContractionHierarchy(graph, rank, upOffsets, upTargets, upWeights, upMiddles);
+            }
+
+            // Renumber to the graph's ids, moving each node's upward edges to its new position
+            int[] saved = new int[n];
+            for (int i = 0; i < n; i++) {
+                saved[mapping[i]] = i;
+            }
+            int[] graphRank = new int[n];
+            int[] graphOffsets = new int[n + 1];
+            int[] graphTargets = new int[edges];
+            int[] graphWeights = new int[edges];
+            int[] graphMiddles = new int[edges];
+            int out = 0;
+            for (int u = 0; u < n; u++) {
+                int f = saved[u];
+                graphRank[u] = rank[f];
+                graphOffsets[u] = out;
+                for (int e = upOffsets[f]; e < upOffsets[f + 1]; e++, out++) {
+                    graphTargets[out] = mapping[upTargets[e]];
+                    graphWeights[out] = upWeights[e];
+                    graphMiddles[out] = upMiddles[e] == -1 ? -1 : mapping[upMiddles[e]];
+                }
+            }
+            graphOffsets[n] = out;
+            return new ContractionHierarchy(graph, graphRank, graphOffsets, graphTargets, graphWeights, graphMiddles);
+        }
+    }
+
+    private static void writeInts(DataOutputStream out, int[] values) throws IOException {
+        for (int value : values) {
+            out.writeInt(value);
+        }
+    }
+
+    private static int[] readInts(DataInputStream in, int count) throws IOException {
+        int[] values = new int[count];
+        for (int i = 0; i < count; i++) {
+            values[i] = in.readInt();
+        }
+        return values;
+    }
+
+    public CompactGraph getGraph() {
+        return graph;
+    }
+
+    /**
+     * Get the number of shortcut edges added by contraction
+     * @return shortcut count
+     */
+    public int getShortcutCount() {
+        int shortcuts = 0;
+        for (int middle : upMiddles) {
+            if (middle != -1) {
+                shortcuts++;
+            }
+        }
+        return shortcuts;
+    }
+
+    @Override
+    public String toString() {
+        return "ContractionHierarchy with " + rank.length + " nodes, " + upTargets.length
+                + " upward edges (" + getShortcutCount() + " shortcuts)";
+    }
+
+    /**
+     * Distance and unpacked node path of a query, and the work the upward searches did
+     */
+    public static class Result {
+        private final int distance;
+        private final int[] path;
+        private final int settledCount;
+        private final int relaxedCount;
+        private final int pushCount;
+
+        Result(int distance, int[] path, int settledCount, int relaxedCount, int pushCount) {
+            this.distance = distance;
+            this.path = path;
+            this.settledCount = settledCount;
+            this.relaxedCount = relaxedCount;
+            this.pushCount = pushCount;
+        }
+
+        public boolean isReachable() {
+            return path != null;
+        }
+
+        public int getDistance() {
+            return distance;
+        }
+
+        public int[] getPath() {
+            return path;
+        }
+
+        public int getSettledCount() {
+            return settledCount;
+        }
+
+        public int getRelaxedCount() {
+            return relaxedCount;
+        }
+
+        public int getPushCount() {
+            return pushCount;
+        }
+    }
+
+    // State of the two query directions, borrowed from the pool for one query at a time
+    private static class QueryWorkspace {
+        private final int[][] distances;
+        private final int[][] predecessors;
+        private final IndexedMinHeap[] heaps;
+        private final int[] touched;
+        private int touchedCount = 0;
+        // Path buffers: hierarchy-level nodes (a shortest path visits each node once), the unpacked
+        // path, and the unpacking stack; the last two grow as needed
+        private final int[] hierarchyPath;
+        private int[] path = new int[64];
+        private int pathLength = 0;
+        private int[] stack = new int[64];
+
+        QueryWorkspace(int n) {
+            hierarchyPath = new int[n];
+            distances = new int[][]{new int[n], new int[n]};
+            predecessors = new int[][]{new int[n], new int[n]};
+            Arrays.fill(distances[0], Integer.MAX_VALUE);
+            Arrays.fill(distances[1], Integer.MAX_VALUE);
+            // A node can be touched once per direction
+            touched = new int[2 * n];
+            heaps = new IndexedMinHeap[]{new IndexedMinHeap(n), new IndexedMinHeap(n)};
+        }
+
+        void reach(int side, int v, int distance, int predecessor) {
+            if (distances[side][v] == Integer.MAX_VALUE) {
+                touched[touchedCount++] = v;
+            }
+            distances[side][v] = distance;
+            predecessors[side][v] = predecessor;
+            heaps[side].push(v, distance);
+        }
+
+        void append(int node) {
+            if (pathLength == path.length) {
+                path = Arrays.copyOf(path, pathLength * 2);
+            }
+            path[pathLength++] = node;
+        }
+
+        void reset() {
+            for (int i = 0; i < touchedCount; i++) {
+                distances[0][touched[i]] = Integer.MAX_VALUE;
+                distances[1][touched[i]] = Integer.MAX_VALUE;
+            }
+            touchedCount = 0;
+            heaps[0].clear();
+            heaps[1].clear();
+        }
+    }
+
+    // Node-by-node contraction state, discarded once the hierarchy is built
+    private static class Contractor {
+        private final CompactGraph graph;
+        private final int n;
+
+        // Live adjacency between uncontracted nodes
+        private final int[][] neighbors;
+        private final int[][] weights;
+        private final int[][] middles;
+        private final int[] degree;
+
+        private final boolean[] contracted;
+        private final int[] contractedNeighbors;
+
+        // Upward edges recorded for each node when it is contracted
+        private final int[][] upTargets;
+        private final int[][] upWeights;
+        private final int[][] upMiddles;
+
+        // Witness search workspace, reset through the touched list
+        private final int[] witnessDistances;
+        private final IndexedMinHeap witnessHeap;
+        private final int[] touched;
+        private int touchedCount = 0;
+
+        Contractor(CompactGraph graph) {
+            this.graph = graph;
+            this.n = graph.nodeCount();
+            neighbors = new int[n][];
+            weights = new int[n][];
+            middles = new int[n][];
+            degree = new int[n];
+            contracted = new boolean[n];
+            contractedNeighbors = new int[n];
+            upTargets = new int[n][];
+            upWeights = new int[n][];
+            upMiddles = new int[n][];
+            witnessDistances = new int[n];
+            witnessHeap = new IndexedMinHeap(n);
+            touched = new int[n];
+            Arrays.fill(witnessDistances, Integer.MAX_VALUE);
+
+            for (int u = 0; u < n; u++) {
+                int capacity = Math.max(4, graph.degree(u));
+                neighbors[u] = new int[capacity];
+                weights[u] = new int[capacity];
+                middles[u] = new int[capacity];
+            }
+            for (int u = 0; u < n; u++) {
+                int[] t = graph.targets(u);
+                int[] w = graph.weights(u);
+                for (int e = graph.begin(u), end = graph.end(u); e < end; e++) {
+                    if (t[e] != u) {
+                        improveEdge(u, t[e], w[e], -1);
+                    }
+                }
+            }
+        }
+
+        ContractionHierarchy contractAll() {
+            // Queue entries pack (priority, node); priorities are offset to stay non-negative
+            PriorityQueue<Long> queue = new PriorityQueue<>();
+            for (int v = 0; v < n; v++) {
+                queue.add(entry(priority(v), v));
+            }
+
+            int[] rank = new int[n];
+            int next = 0;
+            while (!queue.isEmpty()) {
+                int v = (int) (long) queue.poll();
+                if (contracted[v]) {
+                    continue;
+                }
+                // Lazy update: the priority may have grown since v was queued
+                int priority = priority(v);
+                if (!queue.isEmpty() && entry(priority, v) > queue.peek()) {
+                    queue.add(entry(priority, v));
+                    continue;
+                }
+                contract(v);
+                rank[v] = next++;
+            }
+
+            // Freeze the upward edges into CSR arrays
+            int[] offsets = new int[n + 1];
+            for (int v = 0; v < n; v++) {
+                offsets[v + 1] = offsets[v] + upTargets[v].length;
+            }
+            int[] targets = new int[offsets[n]];
+            int[] edgeWeights = new int[offsets[n]];
+            int[] edgeMiddles = new int[offsets[n]];
+            for (int v = 0; v < n; v++) {
+                System.arraycopy(upTargets[v], 0, targets, offsets[v], upTargets[v].length);
+                System.arraycopy(upWeights[v], 0, edgeWeights, offsets[v], upWeights[v].length);
+                System.arraycopy(upMiddles[v], 0, edgeMiddles, offsets[v], upMiddles[v].length);
+            }
+            return new ContractionHierarchy(graph, rank, offsets, targets, edgeWeights, edgeMiddles);
+        }
+
+        private static long entry(int priority, int v) {
+            return ((long) (priority + (1 << 30)) << 32) | v;
+        }
+
+        // Edge difference plus the number of already contracted neighbours, to spread contraction out
+        private int priority(int v) {
+            return processShortcuts(v, false) - degree[v] + contractedNeighbors[v];
+        }
+
+        private void contract(int v) {
+            processShortcuts(v, true);
+
+            // Every remaining neighbour ranks higher than v, so v's live edges are its upward edges
+            int d = degree[v];
+            upTargets[v] = Arrays.copyOf(neighbors[v], d);
+            upWeights[v] = Arrays.copyOf(weights[v], d);
+            upMiddles[v] = Arrays.copyOf(middles[v], d);
+
+            contracted[v] = true;
+            for (int i = 0; i < d; i++) {
+                int u = neighbors[v][i];
+                removeEdge(u, v);
+                contractedNeighbors[u]++;
+            }
+        }
+
+        /**
+         * Find the shortcuts contracting v would need
+         * @param add whether to insert them or only count them
+         * @return number of shortcuts
+         */
+        private int processShortcuts(int v, boolean add) {
+            int d = degree[v];
+            int maxOut = 0;
+            for (int i = 0; i < d; i++) {
+                maxOut = Math.max(maxOut, weights[v][i]);
+            }
+
+            int shortcuts = 0;
+            for (int i = 0; i < d; i++) {
+                int u = neighbors[v][i];
+                int toU = weights[v][i];
+                witnessSearch(u, v, (long) toU + maxOut);
+                for (int j = i + 1; j < d; j++) {
+                    int w = neighbors[v][j];
+                    long viaV = (long) toU + weights[v][j];
+                    if (witnessDistances[w] > viaV) {
+                        shortcuts++;
+                        if (add) {
+                            improveEdge(u, w, (int) viaV, v);
+                            improveEdge(w, u, (int) viaV, v);
+                        }
+                    }
+                }
+                resetWitness();
+            }
+            return shortcuts;
+        }
+
+        // Bounded Dijkstra from u that ignores v and contracted nodes
+        private void witnessSearch(int u, int v, long maxDistance) {
+            witnessHeap.clear();
+            setWitness(u, 0);
+            witnessHeap.push(u, 0);
+            int settled = 0;
+            while (!witnessHeap.isEmpty() && settled < WITNESS_SETTLE_LIMIT) {
+                if (witnessHeap.minKey() > maxDistance) {
+                    break;
+                }
+                int x = witnessHeap.poll();
+                int distance = witnessDistances[x];
+                settled++;
+                for (int i = 0; i < degree[x]; i++) {
+                    int y = neighbors[x][i];
+                    if (y == v) {
+                        continue;
+                    }
+                    int newDistance = distance + weights[x][i];
+                    if (newDistance < witnessDistances[y]) {
+                        setWitness(y, newDistance);
+                        witnessHeap.push(y, newDistance);
+                    }
+                }
+            }
+        }
+
+        private void setWitness(int x, int distance) {
+            if (witnessDistances[x] == Integer.MAX_VALUE) {
+                touched[touchedCount++] = x;
+            }
+            witnessDistances[x] = distance;
+        }
+
+        private void resetWitness() {
+            for (int i = 0; i < touchedCount; i++) {
+                witnessDistances[touched[i]] = Integer.MAX_VALUE;
+            }
+            touchedCount = 0;
+        }
+
+        // Add u->v, or lower its weight if the edge exists and is longer
+        private void improveEdge(int u, int v, int weight, int middle) {
+            for (int i = 0; i < degree[u]; i++) {
+                if (neighbors[u][i] == v) {
+                    if (weight < weights[u][i]) {
+                        weights[u][i] = weight;
+                        middles[u][i] = middle;
+                    }
+                    return;
+                }
+            }
+            if (degree[u] == neighbors[u].length) {
+                int capacity = degree[u] * 2;
+                neighbors[u] = Arrays.copyOf(neighbors[u], capacity);
+                weights[u] = Arrays.copyOf(weights[u], capacity);
+                middles[u] = Arrays.copyOf(middles[u], capacity);
+            }
+            neighbors[u][degree[u]] = v;
+            weights[u][degree[u]] = weight;
+            middles[u][degree[u]] = middle;
+            degree[u]++;
+        }
+
+        private void removeEdge(int u, int v) {
+            for (int i = 0; i < degree[u]; i++) {
+                if (neighbors[u][i] == v) {
+                    int last = --degree[u];
+                    neighbors[u][i] = neighbors[u][last];
+                    weights[u][i] = weights[u][last];
+                    middles[u][i] = middles[u][last];
+                    return;
+                }
+            }
+        }
+    }
+}
@@ -1,21 +1,36 @@
 import java.io.BufferedReader;
 import java.io.File;
-import java.io.FileReader;
+import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Paths;
 import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 
 public class DataLoader {
     private Map<String, String> attractionToLocation = new HashMap<>();
     private Map<String, List<String>> locationToAttractions = new HashMap<>();
     private List<Road> roads = new ArrayList<>();
     private List<String> cities = new ArrayList<>();
+    private Set<String> citySet = new HashSet<>();
+    
+    // Roads loaded by loadRoadsMapped go straight into this builder instead of the roads list.
+    // Cities and roads loaded otherwise are copied in before each mapped load, so the builder holds
+    // everything loaded up to then in load order; these count what has been copied.
+    private CompactGraph.Builder mappedGraph;
+    private int citiesInMapped;
+    private int roadsInMapped;
+    private CityDictionary mappedCities;
+    
+    // Graph read from a snapshot by loadSnapshot, if any
+    private CompactGraph snapshotGraph;
     
     /**
      * Load attraction data
@@ -37,18 +52,7 @@ public class DataLoader {
                 String attraction = parts[0].trim();
                 String location = parts[1].trim();
                 
-                attractionToLocation.put(attraction, location);
-                
-                // Maintain mapping from cities to attractions
-                if (!locationToAttractions.containsKey(location)) {
-                    locationToAttractions.put(location, new ArrayList<>());
-                }
-                locationToAttractions.get(location).add(attraction);
-                
-                // Ensure the city is in the cities list
-                if (!cities.contains(location)) {
-                    cities.add(location);
-                }
+                addAttraction(attraction, location);
             }
         }
         
@@ -80,12 +84,8 @@ public class DataLoader {
                 roads.add(new Road(cityA, cityB, distance));
                 
                 // Ensure cities are in the cities list
-                if (!cities.contains(cityA)) {
-                    cities.add(cityA);
-                }
-                if (!cities.contains(cityB)) {
-                    cities.add(cityB);
-                }
+                addCity(cityA);
+                addCity(cityB);
             }
         }
         
@@ -93,10 +93,186 @@ public class DataLoader {
         System.out.println(roads.size() + " roads have been loaded ");
     }
     
+    /**
+     * Load attraction data from a memory-mapped file.
+     * Same result as loadAttractions, but fields may be quoted and are read as UTF-8.
+     */
+    public void loadAttractionsMapped(String filename) throws IOException {
+        MappedCsvReader.forEachRecord(findFile(filename).toPath(), record -> {
+            if (record.fieldCount() == 2) {
+                addAttraction(record.stringField(0), record.stringField(1));
+            }
+        });
+        System.out.println(attractionToLocation.size() + " scenic spots have been loaded ");
+    }
+    
+    /**
+     * Load road data from a memory-mapped file.
+     * Fields are parsed straight from the mapped bytes and city names are interned by their bytes,
+     * so loading is linear in the file size and allocates little per row. The roads are streamed
+     * into the builder used by buildCompactGraph and buildGraph; they are not added to getRoads().
+     */
+    public void loadRoadsMapped(String filename) throws IOException {
+        CompactGraph.Builder builder = mappedGraph();
+        CityDictionary dictionary = mappedCities;
+        
+        long count = MappedCsvReader.forEachRecord(findFile(filename).toPath(), record -> {
+            if (record.fieldCount() == 3) {
+                int cityA = record.internField(0, dictionary);
+                int cityB = record.internField(1, dictionary);
+                builder.addEdge(cityA, cityB, record.intField(2));
+            }
+        });
+        System.out.println(count + " roads have been loaded ");
+    }
+    
+    /**
+     * Load attractions, cities and the graph from a binary snapshot, if the snapshot is newer than
+     * all of its source files. Replaces anything loaded before.
+     *
+     * @param snapshotFile snapshot written by writeSnapshot
+     * @param sourceFiles CSV files the snapshot was built from
+     * @return whether the snapshot was loaded; false if it is missing, out of date or unreadable
+     */
+    public boolean loadSnapshot(String snapshotFile, String... sourceFiles) throws IOException {
+        File snapshot = new File(snapshotFile);
+        if (!snapshot.exists()) {
+            return false;
+        }
+        for (String sourceFile : sourceFiles) {
+            if (findFile(sourceFile).lastModified() >= snapshot.lastModified()) {
+                return false;
+            }
+        }
+        
+        // The snapshot is only a cache: if it cannot be read, the caller loads the CSV files and rewrites it
+        GraphSnapshot loaded;
+        try {
+            loaded = GraphSnapshot.read(snapshot.toPath());
+        } catch (IOException e) {
+            System.out.println("The snapshot cannot be used and will be rebuilt: " + e.getMessage());
+            return false;
+        }
+        attractionToLocation = new HashMap<>();
+        locationToAttractions = new HashMap<>();
+        roads = new ArrayList<>();
+        cities = new ArrayList<>();
+        citySet = new HashSet<>();
+        mappedGraph = null;
+        mappedCities = null;
+        snapshotGraph = loaded.getGraph();
+        
+        for (int u = 0; u < snapshotGraph.nodeCount(); u++) {
+            addCity(snapshotGraph.name(u));
+        }
+        for (Map.Entry<String, String> entry : loaded.getAttractionToLocation().entrySet()) {
+            addAttraction(entry.getKey(), entry.getValue());
+        }
+        System.out.println("Snapshot loaded from " + snapshot.getAbsolutePath() + ": " + snapshotGraph);
+        return true;
+    }
+    
+    /**
+     * Write the loaded attractions and graph to a binary snapshot for loadSnapshot
+     * @param snapshotFile output file
+     */
+    public void writeSnapshot(String snapshotFile) throws IOException {
+        writeSnapshot(snapshotFile, buildCompactGraph());
+    }
+    
+    /**
+     * Write the loaded attractions and an already built graph to a binary snapshot
+     * @param snapshotFile output file
+     * @param graph graph from buildCompactGraph
+     */
+    public void writeSnapshot(String snapshotFile, CompactGraph graph) throws IOException {
+        GraphSnapshot.write(Paths.get(snapshotFile), graph, attractionToLocation);
+    }
+    
+    /**
+     * Get the builder that mapped roads are streamed into, creating it on first use, with the
+     * cities and roads loaded since the last call added first
+     * @return builder; its node ids come from mappedCities()
+     */
+    CompactGraph.Builder mappedGraph() {
+        if (mappedGraph == null) {
+            citiesInMapped = 0;
+            roadsInMapped = 0;
+            CompactGraph.Builder builder = new CompactGraph.Builder();
+            mappedGraph = builder;
+            mappedCities = new CityDictionary(city -> {
+                addCity(city);
+                return builder.addNode(city);
+            });
+            
+            // Roads loaded on top of a snapshot extend it; the new roads are added later so they win
+            if (snapshotGraph != null) {
+                for (int u = 0; u < snapshotGraph.nodeCount(); u++) {
+                    mappedCities.intern(snapshotGraph.name(u));
+                }
+                copySnapshot(builder);
+                snapshotGraph = null;
+            }
+        }
+        
+        // Cities interned by earlier mapped loads are in the list too; interning them again is a lookup
+        for (; citiesInMapped < cities.size(); citiesInMapped++) {
+            mappedCities.intern(cities.get(citiesInMapped));
+        }
+        for (; roadsInMapped < roads.size(); roadsInMapped++) {
+            Road road = roads.get(roadsInMapped);
+            mappedGraph.addEdge(road.getCityA(), road.getCityB(), road.getDistance());
+        }
+        return mappedGraph;
+    }
+    
+    /**
+     * Get the dictionary that gives cities their ids in mappedGraph()
+     * @return city dictionary
+     */
+    CityDictionary mappedCities() {
+        mappedGraph();
+        return mappedCities;
+    }
+    
+    private void copySnapshot(CompactGraph.Builder builder) {
+        for (int u = 0; u < snapshotGraph.nodeCount(); u++) {
+            int id = builder.addNode(snapshotGraph.name(u));
+            int[] targets = snapshotGraph.targets(u);
+            int[] weights = snapshotGraph.weights(u);
+            for (int e = snapshotGraph.begin(u); e < snapshotGraph.end(u); e++) {
+                builder.addArc(id, builder.addNode(snapshotGraph.name(targets[e])), weights[e]);
+            }
+        }
+    }
+    
+    void addAttraction(String attraction, String location) {
+        attractionToLocation.put(attraction, location);
+        
+        // Maintain mapping from cities to attractions
+        locationToAttractions.computeIfAbsent(location, k -> new ArrayList<>()).add(attraction);
+        
+        // Ensure the city is in the cities list
+        addCity(location);
+    }
+    
+    private void addCity(String city) {
+        if (citySet.add(city)) {
+            cities.add(city);
+        }
+    }
+    
     /**
      * Get BufferedReader, try multiple possible file paths
      */
     private BufferedReader getBufferedReader(String filename) throws IOException {
+        return new BufferedReader(new InputStreamReader(new FileInputStream(findFile(filename)), StandardCharsets.UTF_8));
+    }
+    
+    /**
+     * Find a data file, trying multiple possible file paths
+     */
+    File findFile(String filename) throws IOException {
         // Try different path combinations
         String[] pathsToTry = {
             filename,                      // Direct use of provided path
@@ -111,7 +287,7 @@ public class DataLoader {
             File file = new File(path);
             if (file.exists()) {
                 System.out.println("File found at: " + file.getAbsolutePath());
-                return new BufferedReader(new FileReader(file));
+                return file;
             }
         }
         
@@ -131,6 +307,9 @@ public class DataLoader {
      * Build graph
      */
     public Graph buildGraph() {
+        if (mappedGraph != null || snapshotGraph != null) {
+            return buildCompactGraph().toGraph();
+        }
         Graph graph = new Graph();
         
         // Add all cities as nodes
@@ -146,6 +325,36 @@ public class DataLoader {
         return graph;
     }
     
+    /**
+     * Build the frozen compact graph directly, without the map-based Graph.
+     * Loader state is not changed, so this can be called again after loading more.
+     */
+    public CompactGraph buildCompactGraph() {
+        if (snapshotGraph != null && mappedGraph == null && roads.isEmpty()) {
+            return snapshotGraph;
+        }
+        // Mapped roads, and whatever was loaded before them, are already in the builder; extend a copy
+        CompactGraph.Builder builder = mappedGraph != null ? mappedGraph.copy() : new CompactGraph.Builder();
+        
+        // Start from the snapshot graph if roads were loaded on top of it
+        if (snapshotGraph != null) {
+            copySnapshot(builder);
+        }
+        
+        // Add all cities as nodes
+        for (String city : cities) {
+            builder.addNode(city);
+        }
+        
+        // Add the roads not yet in the builder as edges, in load order
+        for (int i = mappedGraph != null ? roadsInMapped : 0; i < roads.size(); i++) {
+            Road road = roads.get(i);
+            builder.addEdge(road.getCityA(), road.getCityB(), road.getDistance());
+        }
+        
+        return builder.build();
+    }
+    
     public String getLocationForAttraction(String attraction) {
         return attractionToLocation.get(attraction);
     }
@@ -0,0 +1,370 @@
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+
+/**
+ * All-pairs distance and next-hop tables, stored in a binary file and read through memory mapping.
+ *
+ * File layout (big-endian):
+ *   int magic, int version, int nodeCount, int reserved, long graph fingerprint, long reserved
+ *   int[nodeCount * nodeCount] distances, row by source (Integer.MAX_VALUE if unreachable)
+ *   int[nodeCount * nodeCount] next hops, row by source (-1 if none)
+ *   nodeCount x (int length, UTF-8 bytes) city names in id order
+ *
+ * The fingerprint does not depend on ids, so a table also opens for the same data built with
+ * cities numbered differently; its ids are then translated through the saved names.
+ */
+public class DistanceTable {
+    private static final int MAGIC = 0x52504454;  // "RPDT"
+    private static final int VERSION = 2;
+    private static final int HEADER_BYTES = 32;
+    // Rows checked per task when repairing after a road update
+    private static final int REPAIR_BLOCK_ROWS = 256;
+
+    private final int nodeCount;
+    private final int rowsPerSegment;
+    private final MappedByteBuffer[] distanceSegments;
+    private final MappedByteBuffer[] hopSegments;
+    // Graph id to file id and back, or null where the file's ids are the graph's
+    private final int[] toSaved;
+    private final int[] fromSaved;
+
+    // Rows recomputed in memory after road updates (see repair); null where the file row is current
+    private final int[][] overrideDistances;
+    private final int[][] overrideHops;
+
+    private DistanceTable(int nodeCount, int rowsPerSegment, MappedByteBuffer[] distanceSegments, MappedByteBuffer[] hopSegments,
+                          int[] toSaved, int[] fromSaved) {
+        this(nodeCount, rowsPerSegment, distanceSegments, hopSegments, toSaved, fromSaved, null, null);
+    }
+
+    private DistanceTable(int nodeCount, int rowsPerSegment, MappedByteBuffer[] distanceSegments, MappedByteBuffer[] hopSegments,
+                          int[] toSaved, int[] fromSaved, int[][] overrideDistances, int[][] overrideHops) {
+        this.nodeCount = nodeCount;
+        this.rowsPerSegment = rowsPerSegment;
+        this.distanceSegments = distanceSegments;
+        this.hopSegments = hopSegments;
+        this.toSaved = toSaved;
+        this.fromSaved = fromSaved;
+        this.overrideDistances = overrideDistances;
+        this.overrideHops = overrideHops;
+    }
+
+    /**
+     * Compute the tables with one Dijkstra per source and write them to a file
+     *
+     * @param graph graph to precompute
+     * @param file output file, replaced once complete
+     * @param pool pool the per-source searches run on
+     */
+    public static void precompute(CompactGraph graph, Path file, ForkJoinPool pool) throws IOException {
+        int n = graph.nodeCount();
+        long rowBytes = (long) n * Integer.BYTES;
+        long hopsStart = HEADER_BYTES + rowBytes * n;
+
+        // Write to a temporary file first so a crash never leaves a half-written table behind
+        Path temp = file.resolveSibling(file.getFileName() + ".tmp");
+        try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            List<Callable<Void>> rows = new ArrayList<>();
+            for (int s = 0; s < n; s++) {
+                final int source = s;
+                rows.add(() -> {
+                    ShortestPathTree tree = ShortestPathTree.compute(graph, source);
+                    int[] hops = tree.firstHops();
+                    ByteBuffer distanceRow = ByteBuffer.allocate((int) rowBytes);
+                    ByteBuffer hopRow = ByteBuffer.allocate((int) rowBytes);
+                    for (int t = 0; t < n; t++) {
+                        distanceRow.putInt(tree.distance(t));
+                        hopRow.putInt(hops[t]);
+                    }
+                    writeFully(channel, distanceRow.flip(), HEADER_BYTES + rowBytes * source);
+                    writeFully(channel, hopRow.flip(), hopsStart + rowBytes * source);
+                    return null;
+                });
+            }
+            for (Future<Void> result : pool.invokeAll(rows)) {
+                try {
+                    result.get();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new IOException("Distance table precomputation was interrupted", e);
+                } catch (ExecutionException e) {
+                    throw new IOException("Distance table precomputation failed", e.getCause());
+                }
+            }
+
+            ByteArrayOutputStream names = new ByteArrayOutputStream();
+            DataOutputStream namesOut = new DataOutputStream(names);
+            for (int u = 0; u < n; u++) {
+                byte[] name = graph.name(u).getBytes(StandardCharsets.UTF_8);
+                namesOut.writeInt(name.length);
+                namesOut.write(name);
+            }
+            writeFully(channel, ByteBuffer.wrap(names.toByteArray()), hopsStart + rowBytes * n);
+
+            ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES);
+            header.putInt(MAGIC).putInt(VERSION).putInt(n).putInt(0).putLong(graph.fingerprint()).putLong(0);
+            writeFully(channel, header.flip(), 0);
+            channel.force(true);
+        }
+        Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * Map a precomputed table file
+     *
+     * @param file table file
+     * @param graph graph the table must have been computed from
+     * @return mapped table
+     */
+    public static DistanceTable open(Path file, CompactGraph graph) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES);
+            while (header.hasRemaining() && channel.read(header) >= 0) {
+                // keep reading until the header is complete
+            }
+            header.flip();
+            if (header.remaining() < HEADER_BYTES || header.getInt() != MAGIC) {
+                throw new IOException(file + " is not a distance table");
+            }
+            int version = header.getInt();
+            if (version != VERSION) {
+                throw new IOException("Unsupported distance table version " + version + " in " + file);
+            }
+            int n = header.getInt();
+            header.getInt();
+            long fingerprint = header.getLong();
+            if (n != graph.nodeCount() || fingerprint != graph.fingerprint()) {
+                throw new IOException("Distance table " + file + " was computed for a different graph");
+            }
+
+            long rowBytes = (long) n * Integer.BYTES;
+            long namesStart = HEADER_BYTES + 2 * rowBytes * n;
+            if (channel.size() < namesStart + (long) n * Integer.BYTES) {
+                throw new IOException("Distance table " + file + " is truncated");
+            }
+            int[] fromSaved;
+            try {
+                fromSaved = graph.idMapping(readNames(channel, namesStart, n));
+            } catch (IllegalArgumentException e) {
+                throw new IOException("Distance table " + file + " was computed for a different graph", e);
+            }
+            int[] toSaved = null;
+            if (fromSaved != null) {
+                toSaved = new int[n];
+                for (int i = 0; i < n; i++) {
+                    toSaved[fromSaved[i]] = i;
+                }
+            }
+
+            // A single mapping is limited to 2 GB, so map whole rows in segments
+            int rowsPerSegment = (int) Math.max(1, Math.min(n, Integer.MAX_VALUE / Math.max(1, rowBytes)));
+            int segments = n == 0 ? 0 : (n + rowsPerSegment - 1) / rowsPerSegment;
+            MappedByteBuffer[] distanceSegments = new MappedByteBuffer[segments];
+            MappedByteBuffer[] hopSegments = new MappedByteBuffer[segments];
+            long hopsStart = HEADER_BYTES + rowBytes * n;
+            for (int i = 0; i < segments; i++) {
+                long firstRow = (long) i * rowsPerSegment;
+                long size = Math.min(rowsPerSegment, n - firstRow) * rowBytes;
+                distanceSegments[i] = map(channel, HEADER_BYTES + firstRow * rowBytes, size);
+                hopSegments[i] = map(channel, hopsStart + firstRow * rowBytes, size);
+            }
+            return new DistanceTable(n, rowsPerSegment, distanceSegments, hopSegments, toSaved, fromSaved);
+        }
+    }
+
+    // City names stored after the tables, in the file's id order
+    private static String[] readNames(FileChannel channel, long position, int n) throws IOException {
+        DataInputStream in = new DataInputStream(new BufferedInputStream(Channels.newInputStream(channel.position(position))));
+        long remaining = channel.size() - position;
+        String[] names = new String[n];
+        for (int i = 0; i < n; i++) {
+            int length = in.readInt();
+            remaining -= Integer.BYTES;
+            if (length < 0 || length > remaining) {
+                throw new IOException("Corrupt city name in distance table");
+            }
+            byte[] name = new byte[length];
+            in.readFully(name);
+            remaining -= length;
+            names[i] = new String(name, StandardCharsets.UTF_8);
+        }
+        return names;
+    }
+
+    private static MappedByteBuffer map(FileChannel channel, long position, long size) throws IOException {
+        MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, position, size);
+        buffer.order(ByteOrder.BIG_ENDIAN);
+        return buffer;
+    }
+
+    private static void writeFully(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            position += channel.write(buffer, position);
+        }
+    }
+
+    public int getNodeCount() {
+        return nodeCount;
+    }
+
+    /**
+     * Get the shortest distance between two nodes
+     * @param source source node id
+     * @param target target node id
+     * @return distance, or Integer.MAX_VALUE if unreachable
+     */
+    public int distance(int source, int target) {
+        if (overrideDistances != null && overrideDistances[source] != null) {
+            return overrideDistances[source][target];
+        }
+        if (toSaved != null) {
+            source = toSaved[source];
+            target = toSaved[target];
+        }
+        return distanceSegments[source / rowsPerSegment].getInt(cellOffset(source, target));
+    }
+
+    /**
+     * Get the next node after source on a shortest path to target
+     * @param source source node id
+     * @param target target node id
+     * @return next node id, or -1 if source equals target or target is unreachable
+     */
+    public int nextHop(int source, int target) {
+        if (overrideHops != null && overrideHops[source] != null) {
+            return overrideHops[source][target];
+        }
+        if (toSaved == null) {
+            return hopSegments[source / rowsPerSegment].getInt(cellOffset(source, target));
+        }
+        int savedSource = toSaved[source];
+        int hop = hopSegments[savedSource / rowsPerSegment].getInt(cellOffset(savedSource, toSaved[target]));
+        return hop < 0 ? hop : fromSaved[hop];
+    }
+
+    /**
+     * Follow next hops from source to target
+     * @param source source node id
+     * @param target target node id
+     * @return node ids from source to target, or null if unreachable
+     */
+    public int[] path(int source, int target) {
+        if (distance(source, target) == Integer.MAX_VALUE) {
+            return null;
+        }
+        int length = 1;
+        for (int current = source; current != target; current = nextHop(current, target)) {
+            if (length > nodeCount) {
+                throw new IllegalStateException("Distance table has a next-hop cycle towards node " + target);
+            }
+            length++;
+        }
+        int[] path = new int[length];
+        int current = source;
+        for (int i = 0; i < length; i++) {
+            path[i] = current;
+            current = nextHop(current, target);
+        }
+        return path;
+    }
+
+    /**
+     * Get a table for a graph with a road changed. Rows of sources whose shortest paths may
+     * change are copied into memory and repaired incrementally; the other rows are still read
+     * from the file. Every row stays a valid shortest-path row, so next hops never mix old and new paths.
+     *
+     * @param graph graph after the update (same nodes as the table)
+     * @param update road update, with the distance it had in the graph this table matches
+     * @param pool pool the row repairs run on
+     * @return repaired table; this table is unchanged
+     */
+    public DistanceTable repair(CompactGraph graph, RoadUpdate update, ForkJoinPool pool) {
+        if (graph.nodeCount() != nodeCount) {
+            throw new IllegalArgumentException("The graph does not match the distance table");
+        }
+        int a = graph.id(update.getCityA());
+        int b = graph.id(update.getCityB());
+        int[][] distances = overrideDistances == null ? new int[nodeCount][] : overrideDistances.clone();
+        int[][] hops = overrideHops == null ? new int[nodeCount][] : overrideHops.clone();
+
+        // Rows are checked and repaired in blocks, each row written by one task only
+        List<Callable<Integer>> blocks = new ArrayList<>();
+        for (int first = 0; first < nodeCount; first += REPAIR_BLOCK_ROWS) {
+            final int from = first;
+            final int to = Math.min(nodeCount, first + REPAIR_BLOCK_ROWS);
+            blocks.add(() -> {
+                int repaired = 0;
+                for (int s = from; s < to; s++) {
+                    if (update.affects(distance(s, a), distance(s, b))) {
+                        int[] distanceRow = new int[nodeCount];
+                        int[] hopRow = new int[nodeCount];
+                        for (int t = 0; t < nodeCount; t++) {
+                            distanceRow[t] = distance(s, t);
+                            hopRow[t] = nextHop(s, t);
+                        }
+                        IncrementalDijkstra.repair(graph, s, distanceRow, hopRow, update);
+                        distances[s] = distanceRow;
+                        hops[s] = hopRow;
+                        repaired++;
+                    }
+                }
+                return repaired;
+            });
+        }
+        int repaired = 0;
+        for (Future<Integer> result : pool.invokeAll(blocks)) {
+            try {
+                repaired += result.get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException("Distance table repair was interrupted", e);
+            } catch (ExecutionException e) {
+                throw new IllegalStateException("Distance table repair failed", e.getCause());
+            }
+        }
+        if (repaired == 0) {
+            return this;
+        }
+        return new DistanceTable(nodeCount, rowsPerSegment, distanceSegments, hopSegments, toSaved, fromSaved, distances, hops);
+    }
+
+    /**
+     * Get the number of rows recomputed in memory after road updates
+     * @return repaired row count
+     */
+    public int getRepairedRowCount() {
+        int count = 0;
+        if (overrideDistances != null) {
+            for (int[] row : overrideDistances) {
+                if (row != null) {
+                    count++;
+                }
+            }
+        }
+        return count;
+    }
+
+    private int cellOffset(int source, int target) {
+        return ((source % rowsPerSegment) * nodeCount + target) * Integer.BYTES;
+    }
+}
@@ -0,0 +1,388 @@
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.FilterInputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.PrintStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.Stream;
+
+/**
+ * Sorts the lines of a text file that does not fit in memory, in String.compareTo order.
+ *
+ * The input is read in chunks that fit the memory budget; each chunk is sorted with
+ * ParallelMergeSort and written to a temporary run file. The runs are then merged with a loser
+ * tree, as many at a time as the budget has room for read buffers; if there are more runs than
+ * that, groups of runs are first merged into longer runs. Lines are trimmed, like
+ * Sorting.readDataFromFile does, and duplicates are kept.
+ */
+public class ExternalSorter {
+    // Estimated heap use of a line besides its characters: String and array headers, fields,
+    // and a reference in both the chunk and ParallelMergeSort's scratch array
+    private static final int LINE_OVERHEAD = 64;
+    // Bytes of each read or write buffer
+    private static final int BUFFER_SIZE = 1 << 16;
+    // Input read between progress messages
+    private static final long PROGRESS_BYTES = 64L << 20;
+
+    private final long memoryBudget;
+    private final Path tempDirectory;
+    private final ForkJoinPool pool;
+    private final PrintStream log;
+
+    /**
+     * @param memoryBudget heap the sort may use, in bytes
+     * @param tempDirectory directory for the run files
+     * @param pool pool the chunks are sorted on
+     * @param log where progress is printed, or null for none
+     */
+    public ExternalSorter(long memoryBudget, Path tempDirectory, ForkJoinPool pool, PrintStream log) {
+        // Room for at least a couple of buffers and a small chunk
+        if (memoryBudget < 8L * BUFFER_SIZE) {
+            throw new IllegalArgumentException("Memory budget must be at least " + (8 * BUFFER_SIZE / 1024) + " KB");
+        }
+        this.memoryBudget = memoryBudget;
+        this.tempDirectory = tempDirectory;
+        this.pool = pool;
+        this.log = log;
+    }
+
+    /**
+     * Sort with the common fork/join pool, printing progress to System.out
+     * @param memoryBudget heap the sort may use, in bytes
+     * @param tempDirectory directory for the run files
+     */
+    public ExternalSorter(long memoryBudget, Path tempDirectory) {
+        this(memoryBudget, tempDirectory, ForkJoinPool.commonPool(), System.out);
+    }
+
+    /**
+     * Sort the lines of a file
+     *
+     * @param input file to sort
+     * @param output file the sorted lines are written to, one per line
+     * @return counts and timings of the sort
+     */
+    public Result sort(Path input, Path output) throws IOException {
+        long start = System.nanoTime();
+        Path directory = Files.createTempDirectory(tempDirectory, "external-sort");
+        List<Path> runs = new ArrayList<>();
+        try {
+            CountingInputStream in = new CountingInputStream(Files.newInputStream(input));
+            long lines = 0;
+            try (BufferedReader reader = new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8), BUFFER_SIZE)) {
+                // The chunk gets what is left after the reader and one run writer
+                long chunkBudget = memoryBudget - 4L * BUFFER_SIZE;
+                String[] chunk = new String[1024];
+                int size = 0;
+                long used = 0;
+                long nextReport = PROGRESS_BYTES;
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    line = line.trim();
+                    if (size == chunk.length) {
+                        chunk = Arrays.copyOf(chunk, size * 2);
+                    }
+                    chunk[size++] = line;
+                    used += LINE_OVERHEAD + 2L * line.length();
+                    lines++;
+                    if (used >= chunkBudget) {
+                        runs.add(spill(chunk, size, directory, runs.size()));
+                        // Drop the references so the chunk's strings can be collected
+                        Arrays.fill(chunk, 0, size, null);
+                        size = 0;
+                        used = 0;
+                    }
+                    if (in.count >= nextReport) {
+                        progress("Read %s, %d lines, %d runs, %s", megabytes(in.count), lines, runs.size(), rate(in.count, start));
+                        nextReport += PROGRESS_BYTES;
+                    }
+                }
+                if (size > 0 || runs.isEmpty()) {
+                    runs.add(spill(chunk, size, directory, runs.size()));
+                }
+            }
+            long bytesRead = in.count;
+            int sortedRuns = runs.size();
+            progress("Read %s, %d lines into %d sorted runs, %s", megabytes(bytesRead), lines, runs.size(), rate(bytesRead, start));
+
+            // Each merge input and the output get a buffer; the rest of the budget is not needed while merging
+            int fanIn = (int) Math.max(2, Math.min(Integer.MAX_VALUE, memoryBudget / (2L * BUFFER_SIZE) - 1));
+            int passes = 0;
+            long bytesWritten = 0;
+            while (runs.size() > fanIn) {
+                passes++;
+                List<Path> merged = new ArrayList<>();
+                for (int from = 0; from < runs.size(); from += fanIn) {
+                    List<Path> group = runs.subList(from, Math.min(runs.size(), from + fanIn));
+                    Path run = directory.resolve("pass" + passes + "-" + merged.size());
+                    bytesWritten += merge(group, run);
+                    for (Path done : group) {
+                        Files.delete(done);
+                    }
+                    merged.add(run);
+                }
+                runs = merged;
+                progress("Merge pass %d left %d runs, %s written, %s", passes, runs.size(), megabytes(bytesWritten),
+                        rate(bytesWritten, start));
+            }
+            passes++;
+            bytesWritten += merge(runs, output);
+            long nanos = System.nanoTime() - start;
+            Result result = new Result(lines, sortedRuns, passes, bytesRead, bytesWritten, nanos);
+            progress("%s", result);
+            return result;
+        } finally {
+            // Runs left behind by a failed sort
+            try (Stream<Path> left = Files.list(directory)) {
+                for (Path file : (Iterable<Path>) left::iterator) {
+                    Files.deleteIfExists(file);
+                }
+            }
+            Files.deleteIfExists(directory);
+        }
+    }
+
+    // Sort a chunk and write it to a new run file; the chunk is copied to its exact size for ParallelMergeSort
+    private Path spill(String[] chunk, int size, Path directory, int index) throws IOException {
+        String[] lines = size == chunk.length ? chunk : Arrays.copyOf(chunk, size);
+        ParallelMergeSort.sort(lines, pool);
+        Path run = directory.resolve("run" + index);
+        try (BufferedWriter writer = writer(Files.newOutputStream(run))) {
+            for (String line : lines) {
+                writer.write(line);
+                writer.write('\n');
+            }
+        }
+        return run;
+    }
+
+    // K-way merge of sorted run files into one file; returns the bytes written
+    private long merge(List<Path> runs, Path output) throws IOException {
+        List<BufferedReader> readers = new ArrayList<>();
+        CountingOutputStream out = new CountingOutputStream(Files.newOutputStream(output));
+        try (BufferedWriter writer = writer(out)) {
+            for (Path run : runs) {
+                readers.add(new BufferedReader(new InputStreamReader(Files.newInputStream(run), StandardCharsets.UTF_8), BUFFER_SIZE));
+            }
+            LoserTree tree = new LoserTree(readers);
+            String line;
+            while ((line = tree.next()) != null) {
+                writer.write(line);
+                writer.write('\n');
+            }
+        } finally {
+            for (Closeable reader : readers) {
+                reader.close();
+            }
+        }
+        return out.count;
+    }
+
+    private static BufferedWriter writer(OutputStream out) {
+        return new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8), BUFFER_SIZE);
+    }
+
+    private void progress(String format, Object... arguments) {
+        if (log != null) {
+            log.println(String.format(Locale.ROOT, format, arguments));
+        }
+    }
+
+    private static String megabytes(long bytes) {
+        return String.format(Locale.ROOT, "%.1f MB", bytes / 1e6);
+    }
+
+    private static String rate(long bytes, long start) {
+        return String.format(Locale.ROOT, "%.1f MB/s", bytes / 1e6 / Math.max(1e-9, (System.nanoTime() - start) / 1e9));
+    }
+
+    /**
+     * Tournament tree over the heads of sorted sources: each internal node keeps the source that
+     * lost the match there, so taking the smallest line costs one comparison per level, against
+     * the losers on the winner's path only. Ties go to the earlier source, keeping the merge stable.
+     */
+    private static class LoserTree {
+        private final BufferedReader[] sources;
+        private final String[] heads;
+        // tree[0] is the overall winner, tree[1..k-1] the losers at the internal nodes
+        private final int[] tree;
+
+        LoserTree(List<BufferedReader> readers) throws IOException {
+            int k = readers.size();
+            sources = readers.toArray(new BufferedReader[0]);
+            heads = new String[k];
+            tree = new int[Math.max(1, k)];
+            for (int i = 0; i < k; i++) {
+                heads[i] = sources[i].readLine();
+            }
+            if (k > 1) {
+                tree[0] = build(1);
+            }
+        }
+
+        // Play the matches below an internal node; leaves k..2k-1 are the sources
+        private int build(int node) {
+            int k = sources.length;
+            if (node >= k) {
+                return node - k;
+            }
+            int left = build(2 * node);
+            int right = build(2 * node + 1);
+            if (beats(left, right)) {
+                tree[node] = right;
+                return left;
+            }
+            tree[node] = left;
+            return right;
+        }
+
+        // Whether source a's head comes before source b's; exhausted sources lose to everything
+        private boolean beats(int a, int b) {
+            if (heads[a] == null) {
+                return false;
+            }
+            if (heads[b] == null) {
+                return true;
+            }
+            int order = heads[a].compareTo(heads[b]);
+            return order < 0 || (order == 0 && a < b);
+        }
+
+        // Smallest remaining line, or null when every source is exhausted
+        String next() throws IOException {
+            if (sources.length == 0) {
+                return null;
+            }
+            int winner = tree[0];
+            String line = heads[winner];
+            if (line == null) {
+                return null;
+            }
+            heads[winner] = sources[winner].readLine();
+            // Replay the winner's path from its leaf to the root
+            for (int node = (winner + sources.length) / 2; node >= 1; node /= 2) {
+                if (beats(tree[node], winner)) {
+                    int loser = winner;
+                    winner = tree[node];
+                    tree[node] = loser;
+                }
+            }
+            tree[0] = winner;
+            return line;
+        }
+    }
+
+    // Counts bytes read, for progress and throughput
+    private static class CountingInputStream extends FilterInputStream {
+        private long count = 0;
+
+        CountingInputStream(InputStream in) {
+            super(in);
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = super.read();
+            if (b >= 0) {
+                count++;
+            }
+            return b;
+        }
+
+        @Override
+        public int read(byte[] buffer, int offset, int length) throws IOException {
+            int n = super.read(buffer, offset, length);
+            if (n > 0) {
+                count += n;
+            }
+            return n;
+        }
+    }
+
+    // Counts bytes written, for throughput
+    private static class CountingOutputStream extends FilterOutputStream {
+        private long count = 0;
+
+        CountingOutputStream(OutputStream out) {
+            super(out);
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            out.write(b);
+            count++;
+        }
+
+        @Override
+        public void write(byte[] buffer, int offset, int length) throws IOException {
+            out.write(buffer, offset, length);
+            count += length;
+        }
+    }
+
+    /**
+     * Counts and timings of one sort
+     */
+    public static class Result {
+        private final long lines;
+        private final int runs;
+        private final int mergePasses;
+        private final long bytesRead;
+        private final long bytesWritten;
+        private final long nanos;
+
+        Result(long lines, int runs, int mergePasses, long bytesRead, long bytesWritten, long nanos) {
+            this.lines = lines;
+            this.runs = runs;
+            this.mergePasses = mergePasses;
+            this.bytesRead = bytesRead;
+            this.bytesWritten = bytesWritten;
+            this.nanos = nanos;
+        }
+
+        public long getLines() {
+            return lines;
+        }
+
+        public int getRuns() {
+            return runs;
+        }
+
+        public int getMergePasses() {
+            return mergePasses;
+        }
+
+        public long getBytesRead() {
+            return bytesRead;
+        }
+
+        public long getBytesWritten() {
+            return bytesWritten;
+        }
+
+        public long getNanos() {
+            return nanos;
+        }
+
+        @Override
+        public String toString() {
+            double seconds = nanos / 1e9;
+            return String.format(Locale.ROOT, "Sorted %d lines in %.2f s: %d sorted runs, %d merge passes, "
+                            + "read %.1f MB (%.1f MB/s), wrote %.1f MB (%.1f MB/s)", lines, seconds, runs, mergePasses,
+                    bytesRead / 1e6, bytesRead / 1e6 / seconds, bytesWritten / 1e6, bytesWritten / 1e6 / seconds);
+        }
+    }
+}
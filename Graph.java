@@ -1,24 +1,54 @@
 
 
+import java.util.ArrayDeque;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
 
 /**
  * Graph representing the connections between cities
+ * 
+ * Thread safety: every method locks the graph, so writers may change it while other threads
+ * read it. A caller that needs several reads to agree (e.g. to copy the whole graph) holds
+ * the graph's lock around them. Route queries never read this class directly; they run on
+ * immutable CompactGraph snapshots, see RoutePlanner and VersionedGraph.
  */
 public class Graph {
     // Adjacency list representation of the graph
     private Map<String, Map<String, Integer>> adjacencyList = new HashMap<>();
     
+    // Incremented on every change, so derived structures can tell when they are stale;
+    // volatile so that readers can check it without taking the lock
+    private volatile long version = 0;
+    
+    // Recent changes, so derived structures can catch up incrementally; a null update marks a new node
+    private static final int JOURNAL_SIZE = 4096;
+    private final ArrayDeque<Change> journal = new ArrayDeque<>();
+    // Every change after this version is still in the journal
+    private long journalStart = 0;
+    
+    // Notified of every road change, e.g. to repair derived structures or append to a RoadUpdateLog
+    private final List<RoadListener> listeners = new CopyOnWriteArrayList<>();
+    
+    /**
+     * Receives road changes. Listeners are called after the change is applied and recorded, so an
+     * exception from a listener reaches the caller but never leaves the version or journal behind.
+     */
+    public interface RoadListener {
+        void roadChanged(RoadUpdate update);
+    }
+    
     /**
      * Add a node to the graph
      * @param node name of the node to add
      */
-    public void addNode(String node) {
+    public synchronized void addNode(String node) {
         if (!adjacencyList.containsKey(node)) {
             adjacencyList.put(node, new HashMap<>());
+            version++;
+            record(null);
         }
     }
     
@@ -27,15 +57,120 @@ public class Graph {
      * @param source source node
      * @param destination destination node
      * @param distance distance
+     * @throws IllegalArgumentException if the distance is negative
      */
-    public void addEdge(String source, String destination, int distance) {
+    public synchronized void addEdge(String source, String destination, int distance) {
+        if (distance < 0) {
+            throw new IllegalArgumentException("Distance must not be negative");
+        }
         // Ensure nodes exist
         addNode(source);
         addNode(destination);
         
         // Add bidirectional edge
-        adjacencyList.get(source).put(destination, distance);
+        Integer previous = adjacencyList.get(source).put(destination, distance);
         adjacencyList.get(destination).put(source, distance);
+        version++;
+        if (previous == null || previous != distance) {
+            RoadUpdate update = new RoadUpdate(source, destination, previous == null ? -1 : previous, distance);
+            record(update);
+            notifyListeners(update);
+        }
+    }
+    
+    /**
+     * Remove the edge between two nodes (both directions)
+     * @param source source node
+     * @param destination destination node
+     * @return whether there was such an edge
+     */
+    public synchronized boolean removeEdge(String source, String destination) {
+        if (!hasEdge(source, destination)) {
+            return false;
+        }
+        int previous = adjacencyList.get(source).remove(destination);
+        adjacencyList.get(destination).remove(source);
+        RoadUpdate update = new RoadUpdate(source, destination, previous, -1);
+        version++;
+        record(update);
+        notifyListeners(update);
+        return true;
+    }
+    
+    /**
+     * Change the distance of an existing edge
+     * @param source source node
+     * @param destination destination node
+     * @param distance new distance
+     * @throws IllegalArgumentException if there is no such edge or the distance is negative
+     */
+    public synchronized void updateDistance(String source, String destination, int distance) {
+        if (!hasEdge(source, destination)) {
+            throw new IllegalArgumentException("There is no road from " + source + " to " + destination);
+        }
+        addEdge(source, destination, distance);
+    }
+    
+    /**
+     * Apply a road update: add, reweight or remove the road it describes
+     * @param update road update
+     */
+    public synchronized void apply(RoadUpdate update) {
+        if (update.isRemoval()) {
+            removeEdge(update.getCityA(), update.getCityB());
+        } else {
+            addEdge(update.getCityA(), update.getCityB(), update.getNewDistance());
+        }
+    }
+    
+    public void addRoadListener(RoadListener listener) {
+        listeners.add(listener);
+    }
+    
+    public void removeRoadListener(RoadListener listener) {
+        listeners.remove(listener);
+    }
+    
+    /**
+     * Get the road updates made after a version, oldest first
+     * @param since a version returned by getVersion
+     * @return updates, or null if nodes were added since or the journal no longer reaches back that far
+     */
+    public synchronized List<RoadUpdate> getUpdatesSince(long since) {
+        if (since < journalStart) {
+            return null;
+        }
+        List<RoadUpdate> updates = new ArrayList<>();
+        for (Change change : journal) {
+            if (change.version > since) {
+                if (change.update == null) {
+                    return null;
+                }
+                updates.add(change.update);
+            }
+        }
+        return updates;
+    }
+    
+    private void record(RoadUpdate update) {
+        journal.addLast(new Change(version, update));
+        if (journal.size() > JOURNAL_SIZE) {
+            journalStart = journal.removeFirst().version;
+        }
+    }
+    
+    private void notifyListeners(RoadUpdate update) {
+        for (RoadListener listener : listeners) {
+            listener.roadChanged(update);
+        }
+    }
+    
+    /**
+     * Get the modification version of the graph
+     * @return a number that changes whenever a node or edge is added, removed or changed
+     */
+    public long getVersion() {
+        return version;
     }
     
     /**
@@ -44,7 +179,7 @@ public class Graph {
      * @param destination destination node
      * @return distance, or -1 if no connection
      */
-    public int getDistance(String source, String destination) {
+    public synchronized int getDistance(String source, String destination) {
         if (!adjacencyList.containsKey(source) || !adjacencyList.containsKey(destination)) {
             return -1;
         }
@@ -58,7 +193,7 @@ public class Graph {
      * @param node node name
      * @return list of neighbor names
      */
-    public List<String> getNeighbors(String node) {
+    public synchronized List<String> getNeighbors(String node) {
         if (!adjacencyList.containsKey(node)) {
             return new ArrayList<>();
         }
@@ -70,16 +205,24 @@ public class Graph {
      * Get all nodes
      * @return list of node names
      */
-    public List<String> getNodes() {
+    public synchronized List<String> getNodes() {
         return new ArrayList<>(adjacencyList.keySet());
     }
     
+    /**
+     * Get the number of nodes
+     * @return node count
+     */
+    public synchronized int getNodeCount() {
+        return adjacencyList.size();
+    }
+    
     /**
      * Check if a node exists
      * @param node node name
      * @return whether it exists
      */
-    public boolean hasNode(String node) {
+    public synchronized boolean hasNode(String node) {
         return adjacencyList.containsKey(node);
     }
     
@@ -89,7 +232,7 @@ public class Graph {
      * @param destination destination node
      * @return whether the edge exists
      */
-    public boolean hasEdge(String source, String destination) {
+    public synchronized boolean hasEdge(String source, String destination) {
         if (!adjacencyList.containsKey(source)) {
             return false;
         }
@@ -98,7 +241,7 @@ public class Graph {
     }
     
     @Override
-    public String toString() {
+    public synchronized String toString() {
         StringBuilder sb = new StringBuilder();
         sb.append("Graph with ").append(adjacencyList.size()).append(" nodes:\n");
         
@@ -115,4 +258,15 @@ public class Graph {
         
         return sb.toString();
     }
+    
+    // Journal entry: the version a change produced
+    private static class Change {
+        private final long version;
+        private final RoadUpdate update;
+        
+        Change(long version, RoadUpdate update) {
+            this.version = version;
+            this.update = update;
+        }
+    }
 } 
\ No newline at end of file
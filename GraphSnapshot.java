@@ -0,0 +1,236 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.zip.CRC32;
+
+/**
+ * Binary snapshot of a loaded data set: the city dictionary, the attraction index and the
+ * CSR adjacency arrays, so that a later start can skip CSV parsing and graph building.
+ *
+ * File layout (big-endian):
+ *   int magic, int version, int nodeCount, int arcCount, int attractionCount, int reserved,
+ *   long CRC32 of the header fields before it and of the body
+ *   body:
+ *     int[nodeCount + 1] offsets, int[arcCount] targets, int[arcCount] weights
+ *     int[nodeCount + 1] city name byte offsets
+ *     int[attractionCount] attraction city ids, int[attractionCount + 1] attraction name byte offsets
+ *     UTF-8 city names, UTF-8 attraction names
+ */
+public class GraphSnapshot {
+    private static final int MAGIC = 0x52504753;  // "RPGS"
+    private static final int VERSION = 2;
+    private static final int HEADER_BYTES = 32;
+    // Header bytes covered by the checksum: everything before the checksum itself
+    private static final int CHECKED_HEADER_BYTES = 24;
+
+    private final CompactGraph graph;
+    private final Map<String, String> attractionToLocation;
+
+    private GraphSnapshot(CompactGraph graph, Map<String, String> attractionToLocation) {
+        this.graph = graph;
+        this.attractionToLocation = attractionToLocation;
+    }
+
+    public CompactGraph getGraph() {
+        return graph;
+    }
+
+    /**
+     * Get the attractions in the snapshot, in file order
+     * @return attraction name to city name
+     */
+    public Map<String, String> getAttractionToLocation() {
+        return attractionToLocation;
+    }
+
+    /**
+     * Write a snapshot
+     *
+     * @param file output file, replaced once complete
+     * @param graph graph to store
+     * @param attractionToLocation attraction name to city name; every city must be in the graph
+     */
+    public static void write(Path file, CompactGraph graph, Map<String, String> attractionToLocation) throws IOException {
+        int n = graph.nodeCount();
+        int arcs = graph.arcCount();
+        int attractions = attractionToLocation.size();
+
+        byte[][] cityNames = new byte[n][];
+        long cityBytes = 0;
+        for (int u = 0; u < n; u++) {
+            cityNames[u] = graph.name(u).getBytes(StandardCharsets.UTF_8);
+            cityBytes += cityNames[u].length;
+        }
+        byte[][] attractionNames = new byte[attractions][];
+        int[] attractionCities = new int[attractions];
+        long attractionBytes = 0;
+        int a = 0;
+        for (Map.Entry<String, String> entry : attractionToLocation.entrySet()) {
+            attractionCities[a] = graph.id(entry.getValue());
+            if (attractionCities[a] == -1) {
+                throw new IllegalArgumentException("Attraction " + entry.getKey() + " is in unknown city " + entry.getValue());
+            }
+            attractionNames[a] = entry.getKey().getBytes(StandardCharsets.UTF_8);
+            attractionBytes += attractionNames[a].length;
+            a++;
+        }
+
+        long intCount = 2L * (n + 1) + 2L * arcs + 2L * attractions + 1;
+        long size = HEADER_BYTES + intCount * Integer.BYTES + cityBytes + attractionBytes;
+        if (size > Integer.MAX_VALUE) {
+            throw new IOException("Graph is too large for a snapshot (" + size + " bytes)");
+        }
+
+        // Write to a temporary file first so a crash never leaves a half-written snapshot behind
+        Path temp = file.resolveSibling(file.getFileName() + ".tmp");
+        try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+            buffer.order(ByteOrder.BIG_ENDIAN);
+            buffer.position(HEADER_BYTES);
+
+            // Adjacency, row by row so that only live edges are written
+            int offset = 0;
+            for (int u = 0; u < n; u++) {
+                buffer.putInt(offset);
+                offset += graph.degree(u);
+            }
+            buffer.putInt(offset);
+            for (int u = 0; u < n; u++) {
+                buffer.asIntBuffer().put(graph.targets(u), graph.begin(u), graph.degree(u));
+                buffer.position(buffer.position() + graph.degree(u) * Integer.BYTES);
+            }
+            for (int u = 0; u < n; u++) {
+                buffer.asIntBuffer().put(graph.weights(u), graph.begin(u), graph.degree(u));
+                buffer.position(buffer.position() + graph.degree(u) * Integer.BYTES);
+            }
+
+            putByteOffsets(buffer, cityNames);
+            for (int city : attractionCities) {
+                buffer.putInt(city);
+            }
+            putByteOffsets(buffer, attractionNames);
+            for (byte[] name : cityNames) {
+                buffer.put(name);
+            }
+            for (byte[] name : attractionNames) {
+                buffer.put(name);
+            }
+
+            buffer.position(0);
+            buffer.putInt(MAGIC).putInt(VERSION).putInt(n).putInt(arcs).putInt(attractions).putInt(0);
+            buffer.putLong(checksum(buffer, (int) size));
+            buffer.force();
+        }
+        Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    // CRC32 of the header before the checksum field and of the body, so the counts are checked too
+    private static long checksum(ByteBuffer buffer, int size) {
+        CRC32 crc = new CRC32();
+        crc.update(buffer.duplicate().position(0).limit(CHECKED_HEADER_BYTES));
+        crc.update(buffer.duplicate().position(HEADER_BYTES).limit(size));
+        return crc.getValue();
+    }
+
+    private static void putByteOffsets(ByteBuffer buffer, byte[][] strings) {
+        int offset = 0;
+        buffer.putInt(0);
+        for (byte[] string : strings) {
+            offset += string.length;
+            buffer.putInt(offset);
+        }
+    }
+
+    /**
+     * Read a snapshot through memory mapping, checking its version and checksum
+     *
+     * @param file snapshot file
+     * @return graph and attraction index
+     * @throws IOException if the file cannot be read, or is not a valid snapshot of this version
+     */
+    public static GraphSnapshot read(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size < HEADER_BYTES || size > Integer.MAX_VALUE) {
+                throw new IOException(file + " is not a graph snapshot");
+            }
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+            buffer.order(ByteOrder.BIG_ENDIAN);
+            if (buffer.getInt() != MAGIC) {
+                throw new IOException(file + " is not a graph snapshot");
+            }
+            int version = buffer.getInt();
+            if (version != VERSION) {
+                throw new IOException("Unsupported graph snapshot version " + version + " in " + file);
+            }
+            int n = buffer.getInt();
+            int arcs = buffer.getInt();
+            int attractions = buffer.getInt();
+            buffer.getInt();
+            long checksum = buffer.getLong();
+
+            // The counts size the arrays below, so check them against the file before trusting the checksum
+            long intCount = 2L * (n + 1) + 2L * arcs + 2L * attractions + 1;
+            if (n < 0 || arcs < 0 || attractions < 0 || HEADER_BYTES + intCount * Integer.BYTES > size) {
+                throw new IOException("Graph snapshot " + file + " is corrupt (bad header)");
+            }
+            if (checksum(buffer, (int) size) != checksum) {
+                throw new IOException("Graph snapshot " + file + " is corrupt (checksum mismatch)");
+            }
+            try {
+                return decode(buffer, n, arcs, attractions);
+            } catch (RuntimeException e) {
+                // Only reachable if the writer was broken: the checksum matched, but offsets are out of range
+                throw new IOException("Graph snapshot " + file + " is corrupt", e);
+            }
+        }
+    }
+
+    private static GraphSnapshot decode(MappedByteBuffer buffer, int n, int arcs, int attractions) {
+        // Bulk copies of the int sections; no per-edge objects are created
+        IntBuffer ints = buffer.position(HEADER_BYTES).asIntBuffer();
+        int[] offsets = new int[n + 1];
+        int[] targets = new int[arcs];
+        int[] weights = new int[arcs];
+        int[] cityOffsets = new int[n + 1];
+        int[] attractionCities = new int[attractions];
+        int[] attractionOffsets = new int[attractions + 1];
+        ints.get(offsets).get(targets).get(weights).get(cityOffsets).get(attractionCities).get(attractionOffsets);
+
+        long stringBytes = (long) cityOffsets[n] + attractionOffsets[attractions];
+        if (cityOffsets[n] < 0 || attractionOffsets[attractions] < 0
+                || stringBytes > buffer.limit() - HEADER_BYTES - (long) ints.position() * Integer.BYTES) {
+            throw new IllegalStateException("Name sections run past the end of the file");
+        }
+        byte[] cityBytes = new byte[cityOffsets[n]];
+        byte[] attractionBytes = new byte[attractionOffsets[attractions]];
+        buffer.position(HEADER_BYTES + ints.position() * Integer.BYTES);
+        buffer.get(cityBytes).get(attractionBytes);
+
+        String[] names = new String[n];
+        Map<String, Integer> ids = new HashMap<>();
+        for (int u = 0; u < n; u++) {
+            names[u] = new String(cityBytes, cityOffsets[u], cityOffsets[u + 1] - cityOffsets[u], StandardCharsets.UTF_8);
+            ids.put(names[u], u);
+        }
+        Map<String, String> attractionToLocation = new LinkedHashMap<>();
+        for (int a = 0; a < attractions; a++) {
+            String name = new String(attractionBytes, attractionOffsets[a],
+                    attractionOffsets[a + 1] - attractionOffsets[a], StandardCharsets.UTF_8);
+            attractionToLocation.put(name, names[attractionCities[a]]);
+        }
+        return new GraphSnapshot(new CompactGraph(names, ids, offsets, targets, weights), attractionToLocation);
+    }
+}
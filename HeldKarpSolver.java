@@ -0,0 +1,196 @@
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Exact Held-Karp dynamic programming for the fixed start / fixed end path variant of TSP.
+ * Subsets of the intermediate stops are processed layer by layer (by size), and each layer
+ * is split across a ForkJoinPool. Every table cell is computed from the previous layer only,
+ * with ties broken by the lowest index, so the result does not depend on the thread count.
+ */
+public class HeldKarpSolver {
+    // Largest number of intermediate stops the tables may cover (2^20 * 20 cells, about 250 MB)
+    public static final int MAX_STOPS = 20;
+
+    // Masks per leaf task; smaller layers are computed on the calling thread
+    private static final int TASK_GRANULARITY = 2048;
+
+    private static final long UNREACHABLE = Long.MAX_VALUE / 4;
+
+    private final ForkJoinPool pool;
+
+    public HeldKarpSolver() {
+        this(ForkJoinPool.commonPool());
+    }
+
+    public HeldKarpSolver(ForkJoinPool pool) {
+        this.pool = pool;
+    }
+
+    /**
+     * Find the shortest path from start to end that visits every other index once
+     *
+     * @param distances n x n distance matrix
+     * @param start index of the start city
+     * @param end index of the end city (may equal start)
+     * @return visiting order, beginning with start and ending with end
+     */
+    public int[] solve(int[][] distances, int start, int end) {
+        int n = distances.length;
+
+        // Intermediate stops are every index except start and end
+        int[] stops = new int[n];
+        int m = 0;
+        for (int i = 0; i < n; i++) {
+            if (i != start && i != end) {
+                stops[m++] = i;
+            }
+        }
+        if (m > MAX_STOPS) {
+            throw new IllegalArgumentException("Too many stops for the exact solver: " + m + " (limit " + MAX_STOPS + ")");
+        }
+        if (m == 0) {
+            return new int[]{start, end};
+        }
+
+        // Local copy of the distances between intermediate stops
+        int[] stopDistances = new int[m * m];
+        for (int i = 0; i < m; i++) {
+            for (int j = 0; j < m; j++) {
+                stopDistances[i * m + j] = distances[stops[i]][stops[j]];
+            }
+        }
+
+        int full = (1 << m) - 1;
+        int[] masksBySize = masksByPopCount(m);
+        int[] layerStart = layerOffsets(m);
+
+        // cost[mask * m + j]: shortest path from start through exactly mask, ending at stop j
+        long[] cost = new long[(full + 1) * m];
+        int[] parent = new int[(full + 1) * m];
+        Arrays.fill(cost, UNREACHABLE);
+
+        // Layer 1: go straight from start to each stop
+        for (int j = 0; j < m; j++) {
+            cost[(1 << j) * m + j] = distances[start][stops[j]];
+            parent[(1 << j) * m + j] = -1;
+        }
+
+        // Larger layers only read the layer below, so every mask in a layer can run in parallel
+        for (int size = 2; size <= m; size++) {
+            LayerTask task = new LayerTask(masksBySize, layerStart[size], layerStart[size + 1], m, stopDistances, cost, parent);
+            if (layerStart[size + 1] - layerStart[size] <= TASK_GRANULARITY) {
+                task.compute();
+            } else {
+                pool.invoke(task);
+            }
+        }
+
+        // Close the path at the end city
+        long best = UNREACHABLE;
+        int last = -1;
+        for (int j = 0; j < m; j++) {
+            long total = cost[full * m + j] + distances[stops[j]][end];
+            if (total < best) {
+                best = total;
+                last = j;
+            }
+        }
+
+        // Walk the parent table backwards
+        int[] order = new int[m + 2];
+        order[0] = start;
+        order[m + 1] = end;
+        int mask = full;
+        for (int position = m; position >= 1; position--) {
+            order[position] = stops[last];
+            int previous = parent[mask * m + last];
+            mask ^= 1 << last;
+            last = previous;
+        }
+        return order;
+    }
+
+    /**
+     * All masks over m bits, grouped by number of set bits and ascending within a group
+     */
+    private static int[] masksByPopCount(int m) {
+        int[] layerStart = layerOffsets(m);
+        int[] fill = Arrays.copyOf(layerStart, m + 1);
+        int[] masks = new int[1 << m];
+        for (int mask = 0; mask < (1 << m); mask++) {
+            masks[fill[Integer.bitCount(mask)]++] = mask;
+        }
+        return masks;
+    }
+
+    /**
+     * Start of each layer in masksByPopCount, with one extra entry for the end
+     */
+    private static int[] layerOffsets(int m) {
+        int[] layerStart = new int[m + 2];
+        long binomial = 1;
+        for (int size = 0; size <= m; size++) {
+            layerStart[size + 1] = layerStart[size] + (int) binomial;
+            binomial = binomial * (m - size) / (size + 1);
+        }
+        return layerStart;
+    }
+
+    // Fills the table cells for one contiguous slice of a layer
+    private static class LayerTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final int[] masks;
+        private final int from;
+        private final int to;
+        private final int m;
+        private final int[] stopDistances;
+        private final long[] cost;
+        private final int[] parent;
+
+        LayerTask(int[] masks, int from, int to, int m, int[] stopDistances, long[] cost, int[] parent) {
+            this.masks = masks;
+            this.from = from;
+            this.to = to;
+            this.m = m;
+            this.stopDistances = stopDistances;
+            this.cost = cost;
+            this.parent = parent;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from > TASK_GRANULARITY) {
+                int middle = (from + to) >>> 1;
+                invokeAll(new LayerTask(masks, from, middle, m, stopDistances, cost, parent),
+                        new LayerTask(masks, middle, to, m, stopDistances, cost, parent));
+                return;
+            }
+
+            for (int k = from; k < to; k++) {
+                int mask = masks[k];
+                for (int j = 0; j < m; j++) {
+                    if ((mask & (1 << j)) == 0) {
+                        continue;
+                    }
+                    // Best way to reach j having visited everything else in mask
+                    int previousMask = mask ^ (1 << j);
+                    long best = UNREACHABLE;
+                    int bestPrevious = -1;
+                    for (int i = 0; i < m; i++) {
+                        if ((previousMask & (1 << i)) != 0) {
+                            long candidate = cost[previousMask * m + i] + stopDistances[i * m + j];
+                            if (candidate < best) {
+                                best = candidate;
+                                bestPrevious = i;
+                            }
+                        }
+                    }
+                    cost[mask * m + j] = best;
+                    parent[mask * m + j] = bestPrevious;
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,162 @@
+import java.util.Arrays;
+
+/**
+ * Repairs a single-source shortest-distance row after one road update, touching only the
+ * nodes whose distance can change instead of searching the whole graph again.
+ *
+ * A shorter or new road starts a Dijkstra search at the end it improves that only
+ * continues through nodes that get closer. For a longer or removed road, every node with a
+ * shortest path through it (found by following tight edges, where d(x) + w(x, z) = d(z)) is
+ * reset and settled again by a Dijkstra search seeded from its unaffected neighbours.
+ */
+public class IncrementalDijkstra {
+
+    private IncrementalDijkstra() {
+    }
+
+    /**
+     * Repair a row in place
+     *
+     * @param graph graph after the update
+     * @param source source node id of the row
+     * @param distances distance from the source to every node before the update, Integer.MAX_VALUE if unreachable
+     * @param hops first node after the source on the path to every node (-1 for the source and unreachable nodes),
+     *             or null if only distances are kept
+     * @param update road update, with the distance the road had in the row's graph
+     * @return number of nodes whose row entries were recomputed
+     */
+    public static int repair(CompactGraph graph, int source, int[] distances, int[] hops, RoadUpdate update) {
+        int a = graph.id(update.getCityA());
+        int b = graph.id(update.getCityB());
+        int oldDistance = update.getOldDistance();
+        int newDistance = update.getNewDistance();
+        if (oldDistance != -1 && (newDistance == -1 || newDistance > oldDistance)) {
+            try (SearchWorkspace workspace = SearchWorkspace.begin(graph.nodeCount())) {
+                return lengthen(graph, workspace, source, distances, hops, a, b, oldDistance);
+            }
+        }
+        if (newDistance != -1 && (oldDistance == -1 || newDistance < oldDistance)) {
+            try (SearchWorkspace workspace = SearchWorkspace.begin(graph.nodeCount())) {
+                return shorten(graph, workspace, source, distances, hops, a, b, newDistance);
+            }
+        }
+        return 0;
+    }
+
+    private static int shorten(CompactGraph graph, SearchWorkspace workspace, int source, int[] distances, int[] hops,
+                               int a, int b, int weight) {
+        IndexedMinHeap heap = workspace.heap(0);
+        for (int side = 0; side < 2; side++) {
+            int from = side == 0 ? a : b;
+            int to = side == 0 ? b : a;
+            if (distances[from] != Integer.MAX_VALUE && (long) distances[from] + weight < distances[to]) {
+                improve(source, distances, hops, from, to, distances[from] + weight);
+                heap.push(to, distances[to]);
+            }
+        }
+
+        // Only nodes that got closer are expanded
+        int changed = 0;
+        while (!heap.isEmpty()) {
+            int u = heap.poll();
+            changed++;
+            int[] targets = graph.targets(u);
+            int[] weights = graph.weights(u);
+            for (int e = graph.begin(u), end = graph.end(u); e < end; e++) {
+                int v = targets[e];
+                long candidate = (long) distances[u] + weights[e];
+                if (candidate < distances[v]) {
+                    improve(source, distances, hops, u, v, (int) candidate);
+                    heap.push(v, distances[v]);
+                }
+            }
+        }
+        return changed;
+    }
+
+    private static int lengthen(CompactGraph graph, SearchWorkspace workspace, int source, int[] distances, int[] hops,
+                                int a, int b, int oldWeight) {
+        // Roots: an end of the road whose shortest path may have used it
+        int[] stack = new int[16];
+        int size = 0;
+        for (int side = 0; side < 2; side++) {
+            int from = side == 0 ? a : b;
+            int to = side == 0 ? b : a;
+            if (to != source && distances[from] != Integer.MAX_VALUE
+                    && (long) distances[from] + oldWeight == distances[to] && workspace.mark(to)) {
+                stack[size++] = to;
+            }
+        }
+        if (size == 0) {
+            return 0;
+        }
+
+        // Everything reachable from the roots over tight edges may get farther away
+        int[] affected = new int[16];
+        int affectedCount = 0;
+        while (size > 0) {
+            int u = stack[--size];
+            if (affectedCount == affected.length) {
+                affected = Arrays.copyOf(affected, affectedCount * 2);
+            }
+            affected[affectedCount++] = u;
+            int[] targets = graph.targets(u);
+            int[] weights = graph.weights(u);
+            for (int e = graph.begin(u), end = graph.end(u); e < end; e++) {
+                int v = targets[e];
+                if (v != source && (long) distances[u] + weights[e] == distances[v] && workspace.mark(v)) {
+                    if (size == stack.length) {
+                        stack = Arrays.copyOf(stack, size * 2);
+                    }
+                    stack[size++] = v;
+                }
+            }
+        }
+        for (int i = 0; i < affectedCount; i++) {
+            distances[affected[i]] = Integer.MAX_VALUE;
+            if (hops != null) {
+                hops[affected[i]] = -1;
+            }
+        }
+
+        // Seed each affected node from its unaffected neighbours, then settle the affected region
+        IndexedMinHeap heap = workspace.heap(0);
+        for (int i = 0; i < affectedCount; i++) {
+            int v = affected[i];
+            int[] targets = graph.targets(v);
+            int[] weights = graph.weights(v);
+            for (int e = graph.begin(v), end = graph.end(v); e < end; e++) {
+                int u = targets[e];
+                if (!workspace.isMarked(u) && distances[u] != Integer.MAX_VALUE
+                        && (long) distances[u] + weights[e] < distances[v]) {
+                    improve(source, distances, hops, u, v, distances[u] + weights[e]);
+                }
+            }
+            if (distances[v] != Integer.MAX_VALUE) {
+                heap.push(v, distances[v]);
+            }
+        }
+        while (!heap.isEmpty()) {
+            int u = heap.poll();
+            int[] targets = graph.targets(u);
+            int[] weights = graph.weights(u);
+            for (int e = graph.begin(u), end = graph.end(u); e < end; e++) {
+                int v = targets[e];
+                long candidate = (long) distances[u] + weights[e];
+                if (workspace.isMarked(v) && candidate < distances[v]) {
+                    improve(source, distances, hops, u, v, (int) candidate);
+                    heap.push(v, distances[v]);
+                }
+            }
+        }
+        return affectedCount;
+    }
+
+    // Record a shorter path to v through u
+    private static void improve(int source, int[] distances, int[] hops, int u, int v, int distance) {
+        distances[v] = distance;
+        if (hops != null) {
+            hops[v] = u == source ? v : hops[u];
+        }
+    }
+}
@@ -0,0 +1,162 @@
+import java.util.Arrays;
+
+/**
+ * 4-ary min-heap of int node ids with int keys and decrease-key.
+ * Each node is in the heap at most once, so Dijkstra never sees stale entries,
+ * and nothing is allocated after construction.
+ */
+public class IndexedMinHeap {
+    private static final int ARITY = 4;
+
+    private final int[] heap;      // node ids in heap order
+    private final int[] keys;      // key per node id
+    private final int[] positions; // heap slot per node id, -1 if not in the heap
+    private int size = 0;
+
+    /**
+     * @param capacity number of node ids (ids range from 0 to capacity - 1)
+     */
+    public IndexedMinHeap(int capacity) {
+        heap = new int[capacity];
+        keys = new int[capacity];
+        positions = new int[capacity];
+        Arrays.fill(positions, -1);
+    }
+
+    public int capacity() {
+        return heap.length;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    public boolean contains(int node) {
+        return positions[node] != -1;
+    }
+
+    /**
+     * Insert a node, or lower its key if it is already in the heap with a larger one
+     * @param node node id
+     * @param key new key
+     * @return whether the heap changed
+     */
+    public boolean push(int node, int key) {
+        int position = positions[node];
+        if (position == -1) {
+            keys[node] = key;
+            heap[size] = node;
+            positions[node] = size;
+            siftUp(size++);
+            return true;
+        }
+        if (key < keys[node]) {
+            keys[node] = key;
+            siftUp(position);
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Get the smallest key without removing it
+     * @return smallest key (heap must not be empty)
+     */
+    public int minKey() {
+        return keys[heap[0]];
+    }
+
+    /**
+     * Get the node with the smallest key without removing it
+     * @return node id (heap must not be empty)
+     */
+    public int peek() {
+        return heap[0];
+    }
+
+    /**
+     * Remove the node with the smallest key
+     * @return node id (heap must not be empty)
+     */
+    public int poll() {
+        int top = heap[0];
+        positions[top] = -1;
+        size--;
+        if (size > 0) {
+            heap[0] = heap[size];
+            positions[heap[0]] = 0;
+            siftDown(0);
+        }
+        return top;
+    }
+
+    /**
+     * Get the key a node was last pushed with
+     * @param node node id
+     * @return key
+     */
+    public int key(int node) {
+        return keys[node];
+    }
+
+    /**
+     * Remove every node; costs time proportional to the current size only
+     */
+    public void clear() {
+        for (int i = 0; i < size; i++) {
+            positions[heap[i]] = -1;
+        }
+        size = 0;
+    }
+
+    private void siftUp(int position) {
+        int node = heap[position];
+        int key = keys[node];
+        while (position > 0) {
+            int parent = (position - 1) / ARITY;
+            int parentNode = heap[parent];
+            if (keys[parentNode] <= key) {
+                break;
+            }
+            heap[position] = parentNode;
+            positions[parentNode] = position;
+            position = parent;
+        }
+        heap[position] = node;
+        positions[node] = position;
+    }
+
+    private void siftDown(int position) {
+        int node = heap[position];
+        int key = keys[node];
+        while (true) {
+            int firstChild = position * ARITY + 1;
+            if (firstChild >= size) {
+                break;
+            }
+            // Smallest of up to four children
+            int best = firstChild;
+            int bestKey = keys[heap[firstChild]];
+            int lastChild = Math.min(firstChild + ARITY, size);
+            for (int child = firstChild + 1; child < lastChild; child++) {
+                int childKey = keys[heap[child]];
+                if (childKey < bestKey) {
+                    best = child;
+                    bestKey = childKey;
+                }
+            }
+            if (bestKey >= key) {
+                break;
+            }
+            heap[position] = heap[best];
+            positions[heap[position]] = position;
+            position = best;
+        }
+        heap[position] = node;
+        positions[node] = position;
+    }
+}
@@ -0,0 +1,207 @@
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.text.Collator;
+import java.util.Locale;
+
+/**
+ * Sorts lines by a binary sort key computed once per line, instead of comparing the Strings
+ * themselves again at every step.
+ *
+ * The key is either the line's collation key for a locale, which gives the order a reader of that
+ * language expects (accents and case as secondary differences, and so on), or its UTF-8 bytes,
+ * which give code point order. The keys are packed one after another into a direct (off-heap)
+ * buffer, so they cost the garbage collector nothing, and the first 8 bytes of each key are cached
+ * as an unsigned long. The sort is a stable merge sort over (prefix, line index) pairs held in two
+ * parallel arrays: most comparisons are decided by the cached prefixes, read sequentially, and only
+ * prefixes that tie look at the rest of the keys in the buffer. The lines are gathered in the
+ * sorted order at the end.
+ *
+ * UTF-8 order equals String.compareTo order except for characters outside the Basic Multilingual
+ * Plane, which String.compareTo puts before U+E000..U+FFFF.
+ */
+public class KeySort {
+    // Ranges this small are insertion sorted
+    static final int INSERTION_CUTOFF = 16;
+
+    private ByteBuffer keys;
+    private final int[] offsets;
+    private final int[] lengths;
+
+    private KeySort(int count, int expectedBytes) {
+        keys = ByteBuffer.allocateDirect(Math.max(64, expectedBytes));
+        offsets = new int[count];
+        lengths = new int[count];
+    }
+
+    /**
+     * Sort lines in code point order, by their UTF-8 bytes
+     * @param lines lines to sort; not changed
+     * @return sorted lines
+     */
+    public static String[] sort(String[] lines) {
+        return sort(lines, (Collator) null);
+    }
+
+    /**
+     * Sort lines in the order of a locale
+     * @param lines lines to sort; not changed
+     * @param locale locale whose collation order is used
+     * @return sorted lines
+     */
+    public static String[] sort(String[] lines, Locale locale) {
+        return sort(lines, Collator.getInstance(locale));
+    }
+
+    /**
+     * Sort lines by their collation keys, or by their UTF-8 bytes if there is no collator
+     * @param lines lines to sort; not changed
+     * @param collator collator, or null for code point order
+     * @return sorted lines; lines with equal keys keep their input order
+     */
+    public static String[] sort(String[] lines, Collator collator) {
+        int n = lines.length;
+        KeySort sort = new KeySort(n, (int) Math.min(1 << 30, 24L * n));
+        long[] prefixes = new long[n];
+        int[] index = new int[n];
+        for (int i = 0; i < n; i++) {
+            // Collation keys compare as unsigned bytes, most significant first, like UTF-8
+            byte[] key = collator == null ? lines[i].getBytes(StandardCharsets.UTF_8)
+                    : collator.getCollationKey(lines[i]).toByteArray();
+            sort.add(i, key);
+            prefixes[i] = prefix(key);
+            index[i] = i;
+        }
+
+        if (n > 1) {
+            sort.sort(prefixes, index, new long[n], new int[n], 0, n, false);
+        }
+
+        String[] sorted = new String[n];
+        for (int i = 0; i < n; i++) {
+            sorted[i] = lines[index[i]];
+        }
+        return sorted;
+    }
+
+    // Append a key to the buffer, doubling it when full
+    private void add(int line, byte[] key) {
+        if (keys.remaining() < key.length) {
+            long needed = (long) keys.position() + key.length;
+            if (needed > Integer.MAX_VALUE) {
+                throw new IllegalArgumentException("Sort keys exceed 2 GB; use ExternalSorter for inputs this large");
+            }
+            ByteBuffer grown = ByteBuffer.allocateDirect((int) Math.min(Integer.MAX_VALUE, Math.max(needed, 2L * keys.capacity())));
+            keys.flip();
+            grown.put(keys);
+            keys = grown;
+        }
+        offsets[line] = keys.position();
+        lengths[line] = key.length;
+        keys.put(key);
+    }
+
+    // First 8 bytes of a key as an unsigned big-endian long, padded with zero bytes
+    private static long prefix(byte[] key) {
+        long prefix = 0;
+        for (int i = 0; i < 8; i++) {
+            prefix = (prefix << 8) | (i < key.length ? key[i] & 0xFF : 0);
+        }
+        return prefix;
+    }
+
+    // Order of two lines whose keys have equal prefixes: compare the bytes after the prefix, then the lengths.
+    // A key of 8 bytes or less with an equal (padded) prefix is a prefix of the other key, so length decides.
+    private int compareTails(int a, int b) {
+        int offsetA = offsets[a];
+        int offsetB = offsets[b];
+        int length = Math.min(lengths[a], lengths[b]);
+        int k = 8;
+        for (; k + 8 <= length; k += 8) {
+            long x = keys.getLong(offsetA + k);
+            long y = keys.getLong(offsetB + k);
+            if (x != y) {
+                return Long.compareUnsigned(x, y);
+            }
+        }
+        for (; k < length; k++) {
+            int x = keys.get(offsetA + k) & 0xFF;
+            int y = keys.get(offsetB + k) & 0xFF;
+            if (x != y) {
+                return x - y;
+            }
+        }
+        return Integer.compare(lengths[a], lengths[b]);
+    }
+
+    // Whether pair i of (p, x) sorts after pair j of (q, y)
+    private boolean after(long[] p, int[] x, int i, long[] q, int[] y, int j) {
+        if (p[i] != q[j]) {
+            return Long.compareUnsigned(p[i], q[j]) > 0;
+        }
+        return compareTails(x[i], y[j]) > 0;
+    }
+
+    /**
+     * Sort pairs [lo, hi) of (prefixes, index), leaving the result in the scratch arrays if toScratch.
+     * The unsorted pairs are always read from prefixes and index, as in ParallelMergeSort.sortSequential.
+     */
+    private void sort(long[] prefixes, int[] index, long[] scratchPrefixes, int[] scratchIndex, int lo, int hi,
+                      boolean toScratch) {
+        if (hi - lo <= INSERTION_CUTOFF) {
+            insertionSort(prefixes, index, lo, hi);
+            if (toScratch) {
+                System.arraycopy(prefixes, lo, scratchPrefixes, lo, hi - lo);
+                System.arraycopy(index, lo, scratchIndex, lo, hi - lo);
+            }
+            return;
+        }
+        int mid = (lo + hi) >>> 1;
+        sort(prefixes, index, scratchPrefixes, scratchIndex, lo, mid, !toScratch);
+        sort(prefixes, index, scratchPrefixes, scratchIndex, mid, hi, !toScratch);
+        long[] fromPrefixes = toScratch ? prefixes : scratchPrefixes;
+        int[] fromIndex = toScratch ? index : scratchIndex;
+        long[] toPrefixes = toScratch ? scratchPrefixes : prefixes;
+        int[] toIndex = toScratch ? scratchIndex : index;
+
+        // Already in order: the merge is a copy
+        if (!after(fromPrefixes, fromIndex, mid - 1, fromPrefixes, fromIndex, mid)) {
+            System.arraycopy(fromPrefixes, lo, toPrefixes, lo, hi - lo);
+            System.arraycopy(fromIndex, lo, toIndex, lo, hi - lo);
+            return;
+        }
+        int i = lo;
+        int j = mid;
+        int out = lo;
+        while (i < mid && j < hi) {
+            // Ties take the first half's pair, keeping the sort stable
+            if (after(fromPrefixes, fromIndex, i, fromPrefixes, fromIndex, j)) {
+                toPrefixes[out] = fromPrefixes[j];
+                toIndex[out++] = fromIndex[j++];
+            } else {
+                toPrefixes[out] = fromPrefixes[i];
+                toIndex[out++] = fromIndex[i++];
+            }
+        }
+        System.arraycopy(fromPrefixes, i, toPrefixes, out, mid - i);
+        System.arraycopy(fromIndex, i, toIndex, out, mid - i);
+        out += mid - i;
+        System.arraycopy(fromPrefixes, j, toPrefixes, out, hi - j);
+        System.arraycopy(fromIndex, j, toIndex, out, hi - j);
+    }
+
+    private void insertionSort(long[] prefixes, int[] index, int lo, int hi) {
+        for (int i = lo + 1; i < hi; i++) {
+            long prefix = prefixes[i];
+            int line = index[i];
+            int k = i - 1;
+            while (k >= lo && (prefixes[k] != prefix ? Long.compareUnsigned(prefixes[k], prefix) > 0
+                    : compareTails(index[k], line) > 0)) {
+                prefixes[k + 1] = prefixes[k];
+                index[k + 1] = index[k];
+                k--;
+            }
+            prefixes[k + 1] = prefix;
+            index[k + 1] = line;
+        }
+    }
+}
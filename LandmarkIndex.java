@@ -0,0 +1,181 @@
+import java.util.Arrays;
+
+/**
+ * Landmark distances for ALT (A*, Landmarks, Triangle inequality) search.
+ * For any landmark L, |d(L, t) - d(L, v)| never exceeds d(v, t) on an undirected graph,
+ * so the largest such difference is an admissible and consistent A* heuristic.
+ */
+public class LandmarkIndex {
+    private final CompactGraph graph;
+    private final int[] landmarks;
+    // distances[k][v]: distance from landmark k to node v, Integer.MAX_VALUE if unreachable
+    private final int[][] distances;
+
+    private LandmarkIndex(CompactGraph graph, int[] landmarks, int[][] distances) {
+        this.graph = graph;
+        this.landmarks = landmarks;
+        this.distances = distances;
+    }
+
+    /**
+     * Choose landmarks by farthest-point selection and store their distance arrays.
+     * Selection starts in the largest component, where nearly all roads are, and stays there:
+     * each new landmark is the node of that component farthest from all landmarks chosen so far.
+     * Nodes in other components get no landmark, so searches there run without a bound. Fewer
+     * landmarks than asked for are chosen if the component has fewer nodes.
+     *
+     * @param graph graph to index
+     * @param count largest number of landmarks
+     * @return landmark index
+     */
+    public static LandmarkIndex build(CompactGraph graph, int count) {
+        int n = graph.nodeCount();
+        count = Math.min(count, n);
+        int[] landmarks = new int[count];
+        int[][] distances = new int[count][];
+        if (count == 0) {
+            return new LandmarkIndex(graph, landmarks, distances);
+        }
+
+        // Start from the node farthest from a node of the largest component, which tends to lie on its periphery
+        ShortestPathTree seedTree = ShortestPathTree.compute(graph, largestComponentNode(graph));
+        int[] nearestLandmark = new int[n];
+        for (int v = 0; v < n; v++) {
+            nearestLandmark[v] = seedTree.distance(v);
+        }
+        boolean[] chosen = new boolean[n];
+        int next = farthest(nearestLandmark, chosen);
+
+        Arrays.fill(nearestLandmark, Integer.MAX_VALUE);
+        int found = 0;
+        while (found < count && next != -1) {
+            landmarks[found] = next;
+            chosen[next] = true;
+            ShortestPathTree tree = ShortestPathTree.compute(graph, next);
+            distances[found] = new int[n];
+            for (int v = 0; v < n; v++) {
+                distances[found][v] = tree.distance(v);
+                nearestLandmark[v] = Math.min(nearestLandmark[v], tree.distance(v));
+            }
+            found++;
+            next = farthest(nearestLandmark, chosen);
+        }
+        if (found < count) {
+            landmarks = Arrays.copyOf(landmarks, found);
+            distances = Arrays.copyOf(distances, found);
+        }
+        return new LandmarkIndex(graph, landmarks, distances);
+    }
+
+    // A node of the component with the most nodes, the one holding the smallest id on a tie
+    private static int largestComponentNode(CompactGraph graph) {
+        int n = graph.nodeCount();
+        boolean[] seen = new boolean[n];
+        int[] queue = new int[n];
+        int best = 0;
+        int bestSize = 0;
+        for (int start = 0; start < n; start++) {
+            if (seen[start]) {
+                continue;
+            }
+            seen[start] = true;
+            queue[0] = start;
+            int size = 1;
+            for (int head = 0; head < size; head++) {
+                int u = queue[head];
+                int[] targets = graph.targets(u);
+                for (int e = graph.begin(u), edgeEnd = graph.end(u); e < edgeEnd; e++) {
+                    int v = targets[e];
+                    if (!seen[v]) {
+                        seen[v] = true;
+                        queue[size++] = v;
+                    }
+                }
+            }
+            if (size > bestSize) {
+                bestSize = size;
+                best = start;
+            }
+        }
+        return best;
+    }
+
+    /**
+     * Get an index for a graph with a road changed, keeping the same landmarks.
+     * Only the distance arrays the update can change are copied and repaired.
+     *
+     * @param graph graph after the update (same nodes as this index)
+     * @param update road update, with the distance it had in this index's graph
+     * @return updated index; this index is unchanged
+     */
+    public LandmarkIndex update(CompactGraph graph, RoadUpdate update) {
+        if (graph.nodeCount() != this.graph.nodeCount()) {
+            throw new IllegalArgumentException("The graph does not match the landmark index");
+        }
+        int a = graph.id(update.getCityA());
+        int b = graph.id(update.getCityB());
+        int[][] updated = distances.clone();
+        for (int k = 0; k < landmarks.length; k++) {
+            if (update.affects(distances[k][a], distances[k][b])) {
+                updated[k] = distances[k].clone();
+                IncrementalDijkstra.repair(graph, landmarks[k], updated[k], null, update);
+            }
+        }
+        return new LandmarkIndex(graph, landmarks, updated);
+    }
+
+    // Index of the largest finite distance that is not already a landmark, or -1 if there is none.
+    // Unreachable nodes are skipped, which keeps every landmark in the component selection started in.
+    private static int farthest(int[] distances, boolean[] chosen) {
+        int best = -1;
+        int bestValue = -1;
+        for (int v = 0; v < distances.length; v++) {
+            int value = distances[v];
+            if (value != Integer.MAX_VALUE && !chosen[v] && value > bestValue) {
+                bestValue = value;
+                best = v;
+            }
+        }
+        return best;
+    }
+
+    /**
+     * Lower bound on the distance from v to t
+     * @param v node id
+     * @param t target node id
+     * @return lower bound, or Integer.MAX_VALUE if t is known to be unreachable from v
+     */
+    public int lowerBound(int v, int t) {
+        int bound = 0;
+        for (int[] fromLandmark : distances) {
+            int toV = fromLandmark[v];
+            int toT = fromLandmark[t];
+            if (toV == Integer.MAX_VALUE || toT == Integer.MAX_VALUE) {
+                if (toV != toT) {
+                    // One is in the landmark's component and the other is not
+                    return Integer.MAX_VALUE;
+                }
+                continue;
+            }
+            bound = Math.max(bound, Math.abs(toT - toV));
+        }
+        return bound;
+    }
+
+    public CompactGraph getGraph() {
+        return graph;
+    }
+
+    public int[] getLandmarks() {
+        return landmarks.clone();
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder("LandmarkIndex with ").append(landmarks.length).append(" landmarks:");
+        for (int landmark : landmarks) {
+            sb.append(" ").append(graph.name(landmark)).append(";");
+        }
+        return sb.toString();
+    }
+}
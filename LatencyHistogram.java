@@ -0,0 +1,151 @@
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Histogram of durations in nanoseconds, with buckets laid out like HdrHistogram's: values below
+ * 128 have a bucket each, and every power of two above that is split into 64 equal buckets, so any
+ * recorded value is known to within 1/64 (about 1.6%) however large it is, in a fixed 2.4k buckets.
+ *
+ * Recording is a few shifts and one atomic increment, without locks or allocation. The counts are
+ * striped: each thread increments the copy picked by its id, so threads recording at once rarely
+ * touch the same cache line; a snapshot adds the stripes up.
+ */
+public class LatencyHistogram {
+    // Sub-buckets per power of two are 2^(SUB_BUCKET_BITS - 1), i.e. 64
+    private static final int SUB_BUCKET_BITS = 7;
+    private static final int HALF_SUB_BUCKETS = 1 << (SUB_BUCKET_BITS - 1);
+    // Largest value told apart from larger ones: about 73 minutes in nanoseconds
+    private static final long MAX_VALUE = (1L << 42) - 1;
+    private static final int BUCKETS = index(MAX_VALUE) + 1;
+
+    private final AtomicLongArray[] stripes;
+    private final LongAdder count = new LongAdder();
+    private final LongAdder sum = new LongAdder();
+    private final LongAccumulator max = new LongAccumulator(Math::max, 0);
+
+    public LatencyHistogram() {
+        // A power of two at least the number of cores, so the stripe is a mask of the thread id
+        int stripeCount = Integer.highestOneBit(Math.max(1, Runtime.getRuntime().availableProcessors() * 2 - 1));
+        stripes = new AtomicLongArray[stripeCount];
+        for (int i = 0; i < stripeCount; i++) {
+            stripes[i] = new AtomicLongArray(BUCKETS);
+        }
+    }
+
+    /**
+     * Record one duration
+     * @param nanos duration in nanoseconds; negative values count as 0, values above about 73 minutes as that
+     */
+    public void record(long nanos) {
+        long value = Math.max(0, Math.min(MAX_VALUE, nanos));
+        stripes[(int) Thread.currentThread().getId() & (stripes.length - 1)].incrementAndGet(index(value));
+        count.increment();
+        sum.add(value);
+        max.accumulate(value);
+    }
+
+    // Bucket of a value: the value itself below 128, else 64 buckets per power of two
+    private static int index(long value) {
+        int shift = Math.max(0, 64 - Long.numberOfLeadingZeros(value) - SUB_BUCKET_BITS);
+        int subBucket = (int) (value >>> shift);
+        return shift == 0 ? subBucket : shift * HALF_SUB_BUCKETS + subBucket;
+    }
+
+    // Largest value that falls in a bucket
+    private static long highestValue(int index) {
+        if (index < 2 * HALF_SUB_BUCKETS) {
+            return index;
+        }
+        int shift = index / HALF_SUB_BUCKETS - 1;
+        long subBucket = index % HALF_SUB_BUCKETS + HALF_SUB_BUCKETS;
+        return ((subBucket + 1) << shift) - 1;
+    }
+
+    /**
+     * Add up the stripes. Values recorded meanwhile may or may not be included.
+     * @return counts at this moment
+     */
+    public Snapshot snapshot() {
+        long[] counts = new long[BUCKETS];
+        for (AtomicLongArray stripe : stripes) {
+            for (int i = 0; i < BUCKETS; i++) {
+                counts[i] += stripe.get(i);
+            }
+        }
+        long total = 0;
+        for (long bucketCount : counts) {
+            total += bucketCount;
+        }
+        return new Snapshot(counts, total, sum.sum(), max.get());
+    }
+
+    public long getCount() {
+        return count.sum();
+    }
+
+    /**
+     * Bucket counts at one moment
+     */
+    public static class Snapshot {
+        private final long[] counts;
+        private final long count;
+        private final long sum;
+        private final long max;
+
+        Snapshot(long[] counts, long count, long sum, long max) {
+            this.counts = counts;
+            this.count = count;
+            this.sum = sum;
+            this.max = max;
+        }
+
+        public long getCount() {
+            return count;
+        }
+
+        /**
+         * Get the sum of the recorded values
+         * @return nanoseconds
+         */
+        public long getSum() {
+            return sum;
+        }
+
+        /**
+         * Get the mean of the recorded values
+         * @return mean in nanoseconds, 0 if nothing was recorded
+         */
+        public double getMean() {
+            return count == 0 ? 0 : (double) sum / count;
+        }
+
+        public long getMax() {
+            return max;
+        }
+
+        /**
+         * Get a percentile, as the largest value of the bucket it falls in (like HdrHistogram's
+         * highest equivalent value), so it is never below the true value
+         * @param percent percentile, from 0 to 100
+         * @return nanoseconds, 0 if nothing was recorded
+         */
+        public long getPercentile(double percent) {
+            if (percent < 0 || percent > 100) {
+                throw new IllegalArgumentException("Percentile must be between 0 and 100");
+            }
+            if (count == 0) {
+                return 0;
+            }
+            long rank = Math.max(1, (long) Math.ceil(percent / 100 * count));
+            long seen = 0;
+            for (int i = 0; i < counts.length; i++) {
+                seen += counts[i];
+                if (seen >= rank) {
+                    return Math.min(highestValue(i), max);
+                }
+            }
+            return max;
+        }
+    }
+}
@@ -0,0 +1,304 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Loads the attraction and road files concurrently and builds the graph while parsing is still running.
+ *
+ * The roads file is split into byte ranges that start and end on line boundaries. Each range is
+ * parsed on its own task with a private city dictionary, and finished ranges are merged into the
+ * DataLoader's graph builder in file order, so a repeated road still keeps its last distance.
+ * Merging a range only remaps its (few) local city ids, while later ranges are still being parsed.
+ * Ranges are found by newlines, so quoted fields in the roads file must not contain line breaks.
+ */
+public class LoadingPipeline {
+    // Ranges are at least this large so that small files are not split needlessly
+    private static final long MIN_CHUNK_BYTES = 1L << 20;
+    // and at most this large so that each range fits one mapping
+    private static final long MAX_CHUNK_BYTES = 1L << 30;
+    // Number of ranges per thread, so that uneven ranges still balance
+    private static final int CHUNKS_PER_THREAD = 4;
+
+    private final ExecutorService executor;
+    private final int threads;
+
+    /**
+     * @param executor executor the parsing tasks run on; not shut down by the pipeline
+     * @param threads number of threads of the executor, used to choose the number of ranges
+     */
+    public LoadingPipeline(ExecutorService executor, int threads) {
+        if (threads < 1) {
+            throw new IllegalArgumentException("Threads must be at least 1");
+        }
+        this.executor = executor;
+        this.threads = threads;
+    }
+
+    /**
+     * Load both files on a temporary pool with one thread per available processor
+     *
+     * @param loader loader to fill
+     * @param attractionsFile attractions CSV
+     * @param roadsFile roads CSV
+     * @return time spent in each stage, and the built graph
+     */
+    public static Timings loadInParallel(DataLoader loader, String attractionsFile, String roadsFile) throws IOException {
+        int threads = Runtime.getRuntime().availableProcessors();
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        try {
+            return new LoadingPipeline(executor, threads).load(loader, attractionsFile, roadsFile);
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    /**
+     * Load both files into a DataLoader and build the graph
+     *
+     * @param loader loader to fill
+     * @param attractionsFile attractions CSV
+     * @param roadsFile roads CSV
+     * @return time spent in each stage, and the built graph
+     */
+    public Timings load(DataLoader loader, String attractionsFile, String roadsFile) throws IOException {
+        long start = System.nanoTime();
+        Path attractionsPath = loader.findFile(attractionsFile).toPath();
+        Path roadsPath = loader.findFile(roadsFile).toPath();
+
+        Future<List<String[]>> attractions = executor.submit(() -> parseAttractions(attractionsPath));
+        long splitStart = System.nanoTime();
+        List<Future<Chunk>> chunks = new ArrayList<>();
+        try (FileChannel channel = FileChannel.open(roadsPath, StandardOpenOption.READ)) {
+            long[] bounds = split(channel);
+            long splitNanos = System.nanoTime() - splitStart;
+            for (int i = 0; i + 1 < bounds.length; i++) {
+                MappedByteBuffer range = channel.map(FileChannel.MapMode.READ_ONLY, bounds[i], bounds[i + 1] - bounds[i]);
+                boolean first = i == 0;
+                chunks.add(executor.submit(() -> parseRoads(range, first)));
+            }
+
+            // Attraction cities come first, as with loadAttractions then loadRoads, so cities get the
+            // same ids (and the graph the same fingerprint) as on the sequential path
+            long attractionsStart = System.nanoTime();
+            List<String[]> parsedAttractions = get(attractions);
+            for (String[] attraction : parsedAttractions) {
+                loader.addAttraction(attraction[0], attraction[1]);
+            }
+            long attractionNanos = System.nanoTime() - attractionsStart;
+
+            // Merge in file order as the ranges finish; later ranges keep parsing meanwhile
+            CompactGraph.Builder builder = loader.mappedGraph();
+            CityDictionary dictionary = loader.mappedCities();
+            long mergeNanos = 0;
+            long parseNanos = 0;
+            long roads = 0;
+            for (Future<Chunk> future : chunks) {
+                Chunk chunk = get(future);
+                long mergeStart = System.nanoTime();
+                int[] globalIds = new int[chunk.cities.size()];
+                for (int local = 0; local < globalIds.length; local++) {
+                    globalIds[local] = dictionary.intern(chunk.cities.get(local));
+                }
+                for (int i = 0; i < chunk.roadCount; i++) {
+                    builder.addEdge(globalIds[chunk.cityA[i]], globalIds[chunk.cityB[i]], chunk.distances[i]);
+                }
+                mergeNanos += System.nanoTime() - mergeStart;
+                parseNanos += chunk.parseNanos;
+                roads += chunk.roadCount;
+            }
+            long roadsNanos = System.nanoTime() - splitStart;
+
+            long buildStart = System.nanoTime();
+            CompactGraph graph = loader.buildCompactGraph();
+            long buildNanos = System.nanoTime() - buildStart;
+
+            return new Timings(parsedAttractions.size(), roads, chunks.size(), graph, splitNanos, parseNanos,
+                    mergeNanos, roadsNanos, attractionNanos, buildNanos, System.nanoTime() - start);
+        }
+    }
+
+    private static <T> T get(Future<T> future) throws IOException {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Loading was interrupted", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException) {
+                throw (IOException) e.getCause();
+            }
+            throw new IOException("Loading failed", e.getCause());
+        }
+    }
+
+    /**
+     * Split a file into ranges that start right after a newline
+     * @return range boundaries, from 0 to the file size
+     */
+    private long[] split(FileChannel channel) throws IOException {
+        long size = channel.size();
+        long chunkBytes = Math.max(MIN_CHUNK_BYTES, size / ((long) threads * CHUNKS_PER_THREAD) + 1);
+        chunkBytes = Math.min(chunkBytes, MAX_CHUNK_BYTES);
+
+        long[] bounds = new long[16];
+        int count = 1;
+        long position = 0;
+        ByteBuffer probe = ByteBuffer.allocate(64 * 1024);
+        while (position < size) {
+            long next = position + chunkBytes;
+            if (next >= size) {
+                next = size;
+            } else {
+                next = lineEndAfter(channel, next, probe);
+            }
+            if (count == bounds.length) {
+                bounds = Arrays.copyOf(bounds, count * 2);
+            }
+            bounds[count++] = next;
+            position = next;
+        }
+        return Arrays.copyOf(bounds, count);
+    }
+
+    // Position just after the first newline at or after position, or the file size
+    private static long lineEndAfter(FileChannel channel, long position, ByteBuffer probe) throws IOException {
+        while (true) {
+            probe.clear();
+            int read = channel.read(probe, position);
+            if (read <= 0) {
+                return channel.size();
+            }
+            for (int i = 0; i < read; i++) {
+                if (probe.get(i) == '\n') {
+                    return position + i + 1;
+                }
+            }
+            position += read;
+        }
+    }
+
+    private static List<String[]> parseAttractions(Path file) throws IOException {
+        List<String[]> attractions = new ArrayList<>();
+        MappedCsvReader.forEachRecord(file, record -> {
+            if (record.fieldCount() == 2) {
+                attractions.add(new String[]{record.stringField(0), record.stringField(1)});
+            }
+        });
+        return attractions;
+    }
+
+    private static Chunk parseRoads(ByteBuffer range, boolean first) {
+        long start = System.nanoTime();
+        Chunk chunk = new Chunk();
+        int begin = 0;
+        if (first) {
+            begin = MappedCsvReader.skipLine(range, MappedCsvReader.skipByteOrderMark(range, 0), range.limit());
+        }
+        CityDictionary dictionary = new CityDictionary(city -> {
+            chunk.cities.add(city);
+            return chunk.cities.size() - 1;
+        });
+        MappedCsvReader.forEachRecord(range, begin, range.limit(), record -> {
+            if (record.fieldCount() == 3) {
+                chunk.add(record.internField(0, dictionary), record.internField(1, dictionary), record.intField(2));
+            }
+        });
+        chunk.parseNanos = System.nanoTime() - start;
+        return chunk;
+    }
+
+    /**
+     * Roads of one byte range, with city ids local to the range
+     */
+    private static class Chunk {
+        final List<String> cities = new ArrayList<>();
+        int[] cityA = new int[1024];
+        int[] cityB = new int[1024];
+        int[] distances = new int[1024];
+        int roadCount = 0;
+        long parseNanos;
+
+        void add(int a, int b, int distance) {
+            if (roadCount == cityA.length) {
+                cityA = Arrays.copyOf(cityA, roadCount * 2);
+                cityB = Arrays.copyOf(cityB, roadCount * 2);
+                distances = Arrays.copyOf(distances, roadCount * 2);
+            }
+            cityA[roadCount] = a;
+            cityB[roadCount] = b;
+            distances[roadCount] = distance;
+            roadCount++;
+        }
+    }
+
+    /**
+     * Time spent in each loading stage
+     */
+    public static class Timings {
+        private final int attractionCount;
+        private final long roadCount;
+        private final int chunkCount;
+        private final CompactGraph graph;
+        private final long splitNanos;
+        private final long parseNanos;
+        private final long mergeNanos;
+        private final long roadsNanos;
+        private final long attractionNanos;
+        private final long buildNanos;
+        private final long totalNanos;
+
+        Timings(int attractionCount, long roadCount, int chunkCount, CompactGraph graph, long splitNanos, long parseNanos,
+                long mergeNanos, long roadsNanos, long attractionNanos, long buildNanos, long totalNanos) {
+            this.attractionCount = attractionCount;
+            this.roadCount = roadCount;
+            this.chunkCount = chunkCount;
+            this.graph = graph;
+            this.splitNanos = splitNanos;
+            this.parseNanos = parseNanos;
+            this.mergeNanos = mergeNanos;
+            this.roadsNanos = roadsNanos;
+            this.attractionNanos = attractionNanos;
+            this.buildNanos = buildNanos;
+            this.totalNanos = totalNanos;
+        }
+
+        /**
+         * Get the graph built at the end of the pipeline
+         * @return compact graph
+         */
+        public CompactGraph getGraph() {
+            return graph;
+        }
+
+        public long getRoadCount() {
+            return roadCount;
+        }
+
+        public int getAttractionCount() {
+            return attractionCount;
+        }
+
+        public long getTotalNanos() {
+            return totalNanos;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("Loaded %d scenic spots and %d roads in %.1f ms: split %.1f ms, "
+                            + "parse %.1f ms over %d ranges (%.1f ms wall incl. merge %.1f ms), "
+                            + "attractions %.1f ms before roads, build %.1f ms",
+                    attractionCount, roadCount, totalNanos / 1e6, splitNanos / 1e6, parseNanos / 1e6, chunkCount,
+                    roadsNanos / 1e6, mergeNanos / 1e6, attractionNanos / 1e6, buildNanos / 1e6);
+        }
+    }
+}
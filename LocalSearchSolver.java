@@ -0,0 +1,436 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+
+/**
+ * Heuristic for the fixed start / fixed end path variant of TSP, for routes with too many stops
+ * for HeldKarpSolver. The distance matrix must be symmetric, as the planner's is.
+ *
+ * A nearest-neighbour path is improved by local search with two kinds of moves:
+ * 2-opt (reverse a stretch of the path) and segment insertion (move a stretch elsewhere, either
+ * way round; a stretch of up to three stops is an Or-opt move, a longer one the pure segment
+ * insertion move of 3-opt). Candidate moves only join a stop to one of its nearest neighbours,
+ * and a stop is looked at again only when an edge next to it has changed (don't-look bits).
+ *
+ * Each worker on the pool then repeats: perturb the best path it has found with a random
+ * double-bridge move, search locally again from the changed stops, and keep the result if it is
+ * shorter (iterated local search). Workers start from different paths and stop when the time
+ * budget is used up, or earlier after many attempts without improvement; the shortest path of
+ * all workers is returned. Because of the time budget, results may vary between runs.
+ */
+public class LocalSearchSolver {
+    // Nearest neighbours a stop may be joined to by a move
+    static final int NEIGHBOURS = 10;
+    // Perturbations in a row without a shorter path after which a worker stops early
+    static final int STALL_LIMIT = 500;
+
+    private final ForkJoinPool pool;
+    private final long budgetNanos;
+    private final long seed;
+
+    /**
+     * @param pool pool the workers run on, one per unit of parallelism
+     * @param budgetMillis wall-clock time allowed per solve
+     * @param seed seed of the workers' random choices
+     */
+    public LocalSearchSolver(ForkJoinPool pool, long budgetMillis, long seed) {
+        if (budgetMillis < 0) {
+            throw new IllegalArgumentException("Time budget must not be negative");
+        }
+        this.pool = pool;
+        this.budgetNanos = budgetMillis * 1_000_000;
+        this.seed = seed;
+    }
+
+    public LocalSearchSolver(ForkJoinPool pool, long budgetMillis) {
+        this(pool, budgetMillis, 42);
+    }
+
+    /**
+     * Find a short path from start to end that visits every other index once
+     *
+     * @param distances n x n symmetric distance matrix
+     * @param start index of the start city
+     * @param end index of the end city (may equal start)
+     * @return visiting order, beginning with start and ending with end
+     */
+    public int[] solve(int[][] distances, int start, int end) {
+        long deadline = System.nanoTime() + budgetNanos;
+        int n = distances.length;
+        // A round trip is a path to a copy of the start city
+        int[][] d = distances;
+        int last = end;
+        if (start == end) {
+            d = new int[n + 1][n + 1];
+            for (int i = 0; i < n; i++) {
+                System.arraycopy(distances[i], 0, d[i], 0, n);
+                d[i][n] = distances[i][start];
+                d[n][i] = distances[start][i];
+            }
+            last = n;
+        }
+
+        int[][] neighbours = neighbourLists(d);
+        final int[][] matrix = d;
+        final int target = last;
+        List<Callable<int[]>> workers = new ArrayList<>();
+        for (int k = 0; k < Math.max(1, pool.getParallelism()); k++) {
+            final Random random = new Random(seed + k);
+            // The first worker starts from the plain nearest-neighbour path, the others from randomised ones
+            final boolean randomised = k > 0;
+            workers.add(() -> new Search(matrix, neighbours, nearestNeighbour(matrix, start, target, randomised ? random : null))
+                    .run(random, deadline));
+        }
+
+        int[] best = null;
+        long bestLength = Long.MAX_VALUE;
+        for (Future<int[]> result : pool.invokeAll(workers)) {
+            try {
+                int[] tour = result.get();
+                long length = length(matrix, tour);
+                if (length < bestLength) {
+                    best = tour;
+                    bestLength = length;
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException("Route search was interrupted", e);
+            } catch (ExecutionException e) {
+                throw new IllegalStateException("Route search failed", e.getCause());
+            }
+        }
+        best[best.length - 1] = end;
+        return best;
+    }
+
+    // Each index's nearest other indices, nearest first
+    private static int[][] neighbourLists(int[][] d) {
+        int n = d.length;
+        int k = Math.min(NEIGHBOURS, n - 1);
+        int[][] neighbours = new int[n][k];
+        // Distance in the high half and index in the low half, so sorting the longs sorts by distance
+        long[] others = new long[n];
+        for (int i = 0; i < n; i++) {
+            for (int j = 0; j < n; j++) {
+                others[j] = (long) d[i][j] << 32 | j;
+            }
+            Arrays.sort(others);
+            for (int j = 0, filled = 0; filled < k; j++) {
+                int other = (int) others[j];
+                if (other != i) {
+                    neighbours[i][filled++] = other;
+                }
+            }
+        }
+        return neighbours;
+    }
+
+    /**
+     * Greedy path: keep moving to the nearest unvisited city, then finish at the end city.
+     * With a random source, each step picks one of the three nearest instead.
+     */
+    private static int[] nearestNeighbour(int[][] d, int start, int end, Random random) {
+        int n = d.length;
+        int[] tour = new int[n];
+        boolean[] visited = new boolean[n];
+        visited[start] = true;
+        visited[end] = true;
+        tour[0] = start;
+        tour[n - 1] = end;
+        int[] nearest = new int[3];
+        for (int position = 1; position < n - 1; position++) {
+            int current = tour[position - 1];
+            // Up to three nearest unvisited cities, nearest first
+            int found = 0;
+            for (int i = 0; i < n; i++) {
+                if (visited[i]) {
+                    continue;
+                }
+                int slot = Math.min(found, nearest.length - 1);
+                if (found < nearest.length || d[current][i] < d[current][nearest[slot]]) {
+                    while (slot > 0 && d[current][i] < d[current][nearest[slot - 1]]) {
+                        nearest[slot] = nearest[slot - 1];
+                        slot--;
+                    }
+                    nearest[slot] = i;
+                    found = Math.min(found + 1, nearest.length);
+                }
+            }
+            int next = random == null ? nearest[0] : nearest[random.nextInt(found)];
+            tour[position] = next;
+            visited[next] = true;
+        }
+        return tour;
+    }
+
+    private static long length(int[][] d, int[] tour) {
+        long length = 0;
+        for (int i = 0; i + 1 < tour.length; i++) {
+            length += d[tour[i]][tour[i + 1]];
+        }
+        return length;
+    }
+
+    // One worker's path, with the position of every city and the queue of cities to look at
+    private static class Search {
+        private final int[][] d;
+        private final int[][] neighbours;
+        private final int[] tour;
+        private final int[] position;
+        private final int size;
+        // Cities whose don't-look bit is off, in a ring buffer
+        private final boolean[] queued;
+        private final int[] queue;
+        private int queueHead = 0;
+        private int queueSize = 0;
+
+        Search(int[][] d, int[][] neighbours, int[] tour) {
+            this.d = d;
+            this.neighbours = neighbours;
+            this.tour = tour;
+            this.size = tour.length;
+            this.position = new int[size];
+            this.queued = new boolean[size];
+            this.queue = new int[size];
+            for (int i = 0; i < size; i++) {
+                position[tour[i]] = i;
+            }
+        }
+
+        // Iterated local search until the deadline or the stall limit; returns the best path found
+        int[] run(Random random, long deadline) {
+            for (int city : tour) {
+                enqueue(city);
+            }
+            optimise(deadline);
+            int[] best = tour.clone();
+            long bestLength = length(d, best);
+            // Double bridge needs three stops between the ends
+            int stall = 0;
+            while (size >= 5 && stall < STALL_LIMIT && System.nanoTime() < deadline) {
+                doubleBridge(random);
+                optimise(deadline);
+                long length = length(d, tour);
+                if (length < bestLength) {
+                    bestLength = length;
+                    System.arraycopy(tour, 0, best, 0, size);
+                    stall = 0;
+                } else {
+                    // Continue from the best path
+                    System.arraycopy(best, 0, tour, 0, size);
+                    for (int i = 0; i < size; i++) {
+                        position[tour[i]] = i;
+                    }
+                    stall++;
+                }
+            }
+            return best;
+        }
+
+        private void enqueue(int city) {
+            if (!queued[city]) {
+                queued[city] = true;
+                queue[(queueHead + queueSize++) % size] = city;
+            }
+        }
+
+        // Apply improving moves until no queued city has one
+        private void optimise(long deadline) {
+            while (queueSize > 0 && System.nanoTime() < deadline) {
+                int city = queue[queueHead];
+                queueHead = (queueHead + 1) % size;
+                queueSize--;
+                queued[city] = false;
+                if (twoOpt(city) || moveSegment(city)) {
+                    enqueue(city);
+                }
+            }
+            // Cities left over when time runs out are not looked at again
+            while (queueSize > 0) {
+                queued[queue[queueHead]] = false;
+                queueHead = (queueHead + 1) % size;
+                queueSize--;
+            }
+        }
+
+        /**
+         * Try to join a city to a near neighbour by reversing the stretch between them.
+         * Reversing tour[p + 1 .. q] replaces edges (p, p + 1) and (q, q + 1) by (p, q) and (p + 1, q + 1).
+         */
+        private boolean twoOpt(int a) {
+            int i = position[a];
+            for (int c : neighbours[a]) {
+                int joined = d[a][c];
+                // Only moves that remove a longer edge at a than the one they add can improve
+                boolean successor = i < size - 1 && joined < d[a][tour[i + 1]];
+                boolean predecessor = i > 0 && joined < d[a][tour[i - 1]];
+                if (!successor && !predecessor) {
+                    break;
+                }
+                int p = Math.min(i, position[c]);
+                int q = Math.max(i, position[c]);
+                if (q - p < 2) {
+                    continue;
+                }
+                // a and c become neighbours as tour[p] and tour[q], after removing their successor edges
+                if (successor && q <= size - 2
+                        && improves(tour[p], tour[q], tour[p + 1], tour[q + 1], tour[p], tour[p + 1], tour[q], tour[q + 1])) {
+                    reverse(p + 1, q);
+                    return true;
+                }
+                // ... or after removing their predecessor edges, reversing tour[p .. q - 1]
+                if (predecessor && p >= 1
+                        && improves(tour[p - 1], tour[q - 1], tour[p], tour[q], tour[p - 1], tour[p], tour[q - 1], tour[q])) {
+                    reverse(p, q - 1);
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        // Whether edges (a, b) and (c, d) are shorter than edges (e, f) and (g, h)
+        private boolean improves(int a, int b, int c, int dd, int e, int f, int g, int h) {
+            return (long) d[a][b] + d[c][dd] < (long) d[e][f] + d[g][h];
+        }
+
+        private void reverse(int from, int to) {
+            enqueue(tour[from - 1]);
+            enqueue(tour[to + 1]);
+            enqueue(tour[from]);
+            enqueue(tour[to]);
+            for (; from < to; from++, to--) {
+                int t = tour[from];
+                tour[from] = tour[to];
+                tour[to] = t;
+                position[tour[from]] = from;
+                position[tour[to]] = to;
+            }
+        }
+
+        /**
+         * Try to move a stretch that begins or ends at a city so that the city is joined to a near
+         * neighbour: the stretch is cut out, its two sides joined, and it is put back into the edge
+         * next to the neighbour, whichever way round is shorter.
+         */
+        private boolean moveSegment(int a) {
+            int i = position[a];
+            if (i == 0 || i == size - 1) {
+                return false;
+            }
+            for (int c : neighbours[a]) {
+                int joined = d[a][c];
+                boolean first = joined < d[tour[i - 1]][a];
+                boolean last = joined < d[a][tour[i + 1]];
+                if (!first && !last) {
+                    break;
+                }
+                int j = position[c];
+                // Stretches [i .. end] with a first, then [begin .. i] with a last, away from c
+                if (first) {
+                    for (int end = i; end <= size - 2 && end < (j > i ? j : size - 1); end++) {
+                        if (tryMove(i, end, c)) {
+                            return true;
+                        }
+                    }
+                }
+                if (last) {
+                    for (int begin = i; begin >= 1 && begin > (j < i ? j : 0); begin--) {
+                        if (tryMove(begin, i, c)) {
+                            return true;
+                        }
+                    }
+                }
+            }
+            return false;
+        }
+
+        // Move tour[from .. to] into an edge next to city c (which is not in the stretch), if that is shorter
+        private boolean tryMove(int from, int to, int c) {
+            int before = tour[from - 1];
+            int after = tour[to + 1];
+            int s = tour[from];
+            int e = tour[to];
+            long removed = (long) d[before][s] + d[e][after] - d[before][after];
+            int j = position[c];
+            // The edges on either side of c, unless they touch the stretch
+            for (int q = j - 1; q <= j; q++) {
+                if (q < 0 || q > size - 2 || (q >= from - 1 && q <= to)) {
+                    continue;
+                }
+                int x = tour[q];
+                int y = tour[q + 1];
+                long forward = (long) d[x][s] + d[e][y];
+                long backward = (long) d[x][e] + d[s][y];
+                long added = Math.min(forward, backward) - d[x][y];
+                if (added < removed) {
+                    move(from, to, q, backward < forward);
+                    enqueue(before);
+                    enqueue(after);
+                    enqueue(x);
+                    enqueue(y);
+                    enqueue(s);
+                    enqueue(e);
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        // Cut out tour[from .. to] and insert it between positions q and q + 1, reversed if asked
+        private void move(int from, int to, int q, boolean reversed) {
+            int length = to - from + 1;
+            int[] segment = Arrays.copyOfRange(tour, from, to + 1);
+            if (reversed) {
+                for (int l = 0, r = length - 1; l < r; l++, r--) {
+                    int t = segment[l];
+                    segment[l] = segment[r];
+                    segment[r] = t;
+                }
+            }
+            int low;
+            int high;
+            if (q < from) {
+                System.arraycopy(tour, q + 1, tour, q + 1 + length, from - q - 1);
+                System.arraycopy(segment, 0, tour, q + 1, length);
+                low = q + 1;
+                high = to;
+            } else {
+                System.arraycopy(tour, to + 1, tour, from, q - to);
+                System.arraycopy(segment, 0, tour, q - length + 1, length);
+                low = from;
+                high = q;
+            }
+            for (int k = low; k <= high; k++) {
+                position[tour[k]] = k;
+            }
+        }
+
+        // Swap two random adjacent stretches between the ends, a move local search rarely undoes
+        private void doubleBridge(Random random) {
+            int[] cuts = new int[3];
+            do {
+                for (int k = 0; k < 3; k++) {
+                    cuts[k] = 1 + random.nextInt(size - 1);
+                }
+                Arrays.sort(cuts);
+            } while (cuts[0] == cuts[1] || cuts[1] == cuts[2]);
+            // tour[cuts[0] .. cuts[1]) and tour[cuts[1] .. cuts[2]) change places
+            int[] first = Arrays.copyOfRange(tour, cuts[0], cuts[1]);
+            System.arraycopy(tour, cuts[1], tour, cuts[0], cuts[2] - cuts[1]);
+            System.arraycopy(first, 0, tour, cuts[0] + cuts[2] - cuts[1], first.length);
+            for (int k = cuts[0]; k < cuts[2]; k++) {
+                position[tour[k]] = k;
+            }
+            int middle = cuts[0] + cuts[2] - cuts[1];
+            for (int cut : new int[]{cuts[0], middle, cuts[2]}) {
+                enqueue(tour[cut - 1]);
+                enqueue(tour[cut]);
+            }
+        }
+    }
+}
@@ -0,0 +1,301 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+/**
+ * CSV reader that parses fields straight out of a memory-mapped file.
+ *
+ * Records are handed to a visitor as a reused Record view holding field offsets into the
+ * mapped bytes, so reading allocates nothing per line unless a field is turned into a String.
+ * Fields are trimmed, may be wrapped in double quotes (with "" for a literal quote and
+ * embedded commas or newlines), and text is decoded as UTF-8.
+ */
+public class MappedCsvReader {
+    // Files are mapped in windows of this size; a window always ends on a record boundary
+    private static final long WINDOW_BYTES = 1L << 30;
+
+    /**
+     * Receives each record; the Record is only valid during the call
+     */
+    public interface RecordVisitor {
+        void visit(Record record);
+    }
+
+    /**
+     * Parse every record of a file after the header line
+     *
+     * @param file CSV file
+     * @param visitor receives each record
+     * @return number of records visited
+     */
+    public static long forEachRecord(Path file, RecordVisitor visitor) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            long size = channel.size();
+            long position = 0;
+            long records = 0;
+            boolean header = true;
+            while (position < size) {
+                long length = Math.min(WINDOW_BYTES, size - position);
+                MappedByteBuffer window = channel.map(FileChannel.MapMode.READ_ONLY, position, length);
+                boolean last = position + length == size;
+
+                // Parse whole records only; the tail of a window is re-mapped with the next one
+                int end = last ? (int) length : lastRecordEnd(window, (int) length);
+                if (end == 0) {
+                    throw new IOException("A record in " + file + " is longer than " + WINDOW_BYTES + " bytes");
+                }
+                int start = 0;
+                if (header) {
+                    start = skipLine(window, skipByteOrderMark(window, 0), end);
+                    header = false;
+                }
+                records += forEachRecord(window, start, end, visitor);
+                position += end;
+            }
+            return records;
+        }
+    }
+
+    /**
+     * Parse the records in a byte range; start must be at the beginning of a record
+     *
+     * @param buffer bytes to parse
+     * @param start first byte
+     * @param end end of the range (exclusive); a record cut off here is still parsed
+     * @param visitor receives each record
+     * @return number of records visited
+     */
+    public static long forEachRecord(ByteBuffer buffer, int start, int end, RecordVisitor visitor) {
+        Record record = new Record(buffer);
+        long records = 0;
+        int position = start;
+        while (position < end) {
+            position = record.parse(position, end);
+            if (!record.isBlank()) {
+                visitor.visit(record);
+                records++;
+            }
+        }
+        return records;
+    }
+
+    /**
+     * Find the first record boundary at or after a position, for splitting a file into chunks.
+     * Assumes the position is not inside a quoted field.
+     *
+     * @param buffer bytes
+     * @param position starting point
+     * @param end end of the bytes
+     * @return index just after the next newline, or end
+     */
+    public static int nextRecordStart(ByteBuffer buffer, int position, int end) {
+        if (position == 0) {
+            return 0;
+        }
+        // A position right after a newline is already a record start
+        if (buffer.get(position - 1) == '\n') {
+            return position;
+        }
+        return skipLine(buffer, position, end);
+    }
+
+    /**
+     * Skip a UTF-8 byte order mark
+     * @return index of the first byte after it
+     */
+    public static int skipByteOrderMark(ByteBuffer buffer, int position) {
+        if (buffer.limit() - position >= 3 && (buffer.get(position) & 0xFF) == 0xEF
+                && (buffer.get(position + 1) & 0xFF) == 0xBB && (buffer.get(position + 2) & 0xFF) == 0xBF) {
+            return position + 3;
+        }
+        return position;
+    }
+
+    /**
+     * Skip to just after the next newline
+     * @return index after the newline, or end
+     */
+    public static int skipLine(ByteBuffer buffer, int position, int end) {
+        while (position < end && buffer.get(position) != '\n') {
+            position++;
+        }
+        return Math.min(position + 1, end);
+    }
+
+    // End of the last complete record in a window, tracking quotes so quoted newlines are skipped
+    private static int lastRecordEnd(ByteBuffer buffer, int length) {
+        boolean quoted = false;
+        int lastEnd = 0;
+        for (int i = 0; i < length; i++) {
+            byte b = buffer.get(i);
+            if (b == '"') {
+                quoted = !quoted;
+            } else if (b == '\n' && !quoted) {
+                lastEnd = i + 1;
+            }
+        }
+        return lastEnd;
+    }
+
+    /**
+     * One parsed record: field boundaries within the underlying buffer
+     */
+    public static class Record {
+        private final ByteBuffer buffer;
+        private int[] starts = new int[8];
+        private int[] ends = new int[8];
+        // Whether a quoted field contains "" escapes and so cannot be used as raw bytes
+        private boolean[] escaped = new boolean[8];
+        private int fieldCount;
+
+        Record(ByteBuffer buffer) {
+            this.buffer = buffer;
+        }
+
+        /**
+         * Parse one record starting at position
+         * @return position after the record
+         */
+        int parse(int position, int end) {
+            fieldCount = 0;
+            while (true) {
+                // Leading whitespace of the field
+                while (position < end && isSpace(buffer.get(position))) {
+                    position++;
+                }
+                int fieldStart;
+                int fieldEnd;
+                boolean fieldEscaped = false;
+                if (position < end && buffer.get(position) == '"') {
+                    fieldStart = ++position;
+                    while (position < end) {
+                        if (buffer.get(position) == '"') {
+                            if (position + 1 < end && buffer.get(position + 1) == '"') {
+                                fieldEscaped = true;
+                                position += 2;
+                                continue;
+                            }
+                            break;
+                        }
+                        position++;
+                    }
+                    fieldEnd = position;
+                    position = Math.min(position + 1, end);
+                    // Ignore anything between the closing quote and the delimiter
+                    while (position < end && buffer.get(position) != ',' && buffer.get(position) != '\n') {
+                        position++;
+                    }
+                } else {
+                    fieldStart = position;
+                    while (position < end && buffer.get(position) != ',' && buffer.get(position) != '\n') {
+                        position++;
+                    }
+                    fieldEnd = position;
+                    // Trailing whitespace, including the \r of a \r\n line ending
+                    while (fieldEnd > fieldStart && isSpace(buffer.get(fieldEnd - 1))) {
+                        fieldEnd--;
+                    }
+                }
+                addField(fieldStart, fieldEnd, fieldEscaped);
+
+                if (position >= end) {
+                    return end;
+                }
+                if (buffer.get(position) == '\n') {
+                    return position + 1;
+                }
+                position++;  // skip the comma
+            }
+        }
+
+        private static boolean isSpace(byte b) {
+            return b == ' ' || b == '\t' || b == '\r';
+        }
+
+        private void addField(int start, int end, boolean fieldEscaped) {
+            if (fieldCount == starts.length) {
+                starts = Arrays.copyOf(starts, fieldCount * 2);
+                ends = Arrays.copyOf(ends, fieldCount * 2);
+                escaped = Arrays.copyOf(escaped, fieldCount * 2);
+            }
+            starts[fieldCount] = start;
+            ends[fieldCount] = end;
+            escaped[fieldCount] = fieldEscaped;
+            fieldCount++;
+        }
+
+        boolean isBlank() {
+            return fieldCount == 1 && starts[0] == ends[0];
+        }
+
+        public int fieldCount() {
+            return fieldCount;
+        }
+
+        /**
+         * Parse a field as a decimal int
+         * @param i field index
+         * @return value
+         */
+        public int intField(int i) {
+            int position = starts[i];
+            int end = ends[i];
+            boolean negative = false;
+            if (position < end && (buffer.get(position) == '-' || buffer.get(position) == '+')) {
+                negative = buffer.get(position) == '-';
+                position++;
+            }
+            if (position == end) {
+                throw new NumberFormatException("For input string: \"" + stringField(i) + "\"");
+            }
+            long value = 0;
+            for (; position < end; position++) {
+                int digit = buffer.get(position) - '0';
+                if (digit < 0 || digit > 9) {
+                    throw new NumberFormatException("For input string: \"" + stringField(i) + "\"");
+                }
+                value = value * 10 + digit;
+                if (value > (long) Integer.MAX_VALUE + 1) {
+                    throw new NumberFormatException("For input string: \"" + stringField(i) + "\"");
+                }
+            }
+            value = negative ? -value : value;
+            if (value > Integer.MAX_VALUE) {
+                throw new NumberFormatException("For input string: \"" + stringField(i) + "\"");
+            }
+            return (int) value;
+        }
+
+        /**
+         * Decode a field as UTF-8
+         * @param i field index
+         * @return field text, with "" escapes resolved
+         */
+        public String stringField(int i) {
+            byte[] bytes = new byte[ends[i] - starts[i]];
+            for (int k = 0; k < bytes.length; k++) {
+                bytes[k] = buffer.get(starts[i] + k);
+            }
+            String text = new String(bytes, StandardCharsets.UTF_8);
+            return escaped[i] ? text.replace("\"\"", "\"") : text;
+        }
+
+        /**
+         * Look up or add a field in a dictionary without decoding it
+         * @param i field index
+         * @param dictionary dictionary of names
+         * @return id of the name
+         */
+        public int internField(int i, CityDictionary dictionary) {
+            if (escaped[i]) {
+                return dictionary.intern(stringField(i));
+            }
+            return dictionary.intern(buffer, starts[i], ends[i]);
+        }
+    }
+}
@@ -0,0 +1,196 @@
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Stable parallel merge sort of a String[] in compareTo order.
+ *
+ * One scratch array of the same length is allocated per sort. Levels alternate between the
+ * array and the scratch array (each merge reads the halves from one and writes the other),
+ * so nothing is copied back between levels. Ranges above SEQUENTIAL_THRESHOLD are sorted as
+ * fork/join tasks, and large merges are split too: the middle element of the longer run is
+ * located in the other run by binary search, and the two sides are merged in parallel, so the
+ * top levels do not fall back to a single thread.
+ */
+public class ParallelMergeSort {
+    // Ranges this small are insertion sorted
+    static final int INSERTION_CUTOFF = 24;
+    // Ranges this small are sorted on the current thread; below this, task overhead outweighs the gain
+    static final int SEQUENTIAL_THRESHOLD = 1 << 13;
+    // Merges this small are done on the current thread
+    static final int MERGE_THRESHOLD = 1 << 13;
+
+    private ParallelMergeSort() {
+    }
+
+    /**
+     * Sort an array on the common fork/join pool
+     * @param a array to sort
+     */
+    public static void sort(String[] a) {
+        sort(a, ForkJoinPool.commonPool());
+    }
+
+    /**
+     * Sort an array
+     * @param a array to sort
+     * @param pool pool the tasks run on
+     */
+    public static void sort(String[] a, ForkJoinPool pool) {
+        if (a.length <= INSERTION_CUTOFF) {
+            insertionSort(a, 0, a.length);
+            return;
+        }
+        String[] scratch = new String[a.length];
+        if (a.length <= SEQUENTIAL_THRESHOLD) {
+            sortSequential(a, scratch, 0, a.length, false);
+        } else {
+            pool.invoke(new SortTask(a, scratch, 0, a.length, false));
+        }
+    }
+
+    /**
+     * Sort a[lo, hi), leaving the result in scratch if toScratch and in a otherwise.
+     * The unsorted elements are always read from a; the other array is working space.
+     */
+    static void sortSequential(String[] a, String[] scratch, int lo, int hi, boolean toScratch) {
+        if (hi - lo <= INSERTION_CUTOFF) {
+            insertionSort(a, lo, hi);
+            if (toScratch) {
+                System.arraycopy(a, lo, scratch, lo, hi - lo);
+            }
+            return;
+        }
+        int mid = (lo + hi) >>> 1;
+        // The halves end up in the other array, and are merged into the requested one
+        sortSequential(a, scratch, lo, mid, !toScratch);
+        sortSequential(a, scratch, mid, hi, !toScratch);
+        String[] from = toScratch ? a : scratch;
+        String[] to = toScratch ? scratch : a;
+        // Already in order: the merge is a copy
+        if (from[mid - 1].compareTo(from[mid]) <= 0) {
+            System.arraycopy(from, lo, to, lo, hi - lo);
+        } else {
+            merge(from, lo, mid, mid, hi, to, lo);
+        }
+    }
+
+    static void insertionSort(String[] a, int lo, int hi) {
+        for (int i = lo + 1; i < hi; i++) {
+            String current = a[i];
+            int k = i - 1;
+            while (k >= lo && a[k].compareTo(current) > 0) {
+                a[k + 1] = a[k];
+                k--;
+            }
+            a[k + 1] = current;
+        }
+    }
+
+    // Merge from[lo1, hi1) and from[lo2, hi2) into to[out...]; ties take the first run's element
+    static void merge(String[] from, int lo1, int hi1, int lo2, int hi2, String[] to, int out) {
+        while (lo1 < hi1 && lo2 < hi2) {
+            if (from[lo1].compareTo(from[lo2]) <= 0) {
+                to[out++] = from[lo1++];
+            } else {
+                to[out++] = from[lo2++];
+            }
+        }
+        if (lo1 < hi1) {
+            System.arraycopy(from, lo1, to, out, hi1 - lo1);
+        } else if (lo2 < hi2) {
+            System.arraycopy(from, lo2, to, out, hi2 - lo2);
+        }
+    }
+
+    // First index in a[lo, hi) whose element is >= key (or > key if after), by binary search
+    private static int search(String[] a, int lo, int hi, String key, boolean after) {
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            int order = a[mid].compareTo(key);
+            if (order < 0 || (after && order == 0)) {
+                lo = mid + 1;
+            } else {
+                hi = mid;
+            }
+        }
+        return lo;
+    }
+
+    // Sorts a range like sortSequential, splitting into tasks while the range is large
+    private static class SortTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final String[] a;
+        private final String[] scratch;
+        private final int lo;
+        private final int hi;
+        private final boolean toScratch;
+
+        SortTask(String[] a, String[] scratch, int lo, int hi, boolean toScratch) {
+            this.a = a;
+            this.scratch = scratch;
+            this.lo = lo;
+            this.hi = hi;
+            this.toScratch = toScratch;
+        }
+
+        @Override
+        protected void compute() {
+            if (hi - lo <= SEQUENTIAL_THRESHOLD) {
+                sortSequential(a, scratch, lo, hi, toScratch);
+                return;
+            }
+            int mid = (lo + hi) >>> 1;
+            invokeAll(new SortTask(a, scratch, lo, mid, !toScratch), new SortTask(a, scratch, mid, hi, !toScratch));
+            String[] from = toScratch ? a : scratch;
+            String[] to = toScratch ? scratch : a;
+            new MergeTask(from, lo, mid, mid, hi, to, lo).compute();
+        }
+    }
+
+    // Merges two sorted runs, splitting the merge around a middle element while it is large
+    private static class MergeTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final String[] from;
+        private final int lo1;
+        private final int hi1;
+        private final int lo2;
+        private final int hi2;
+        private final String[] to;
+        private final int out;
+
+        MergeTask(String[] from, int lo1, int hi1, int lo2, int hi2, String[] to, int out) {
+            this.from = from;
+            this.lo1 = lo1;
+            this.hi1 = hi1;
+            this.lo2 = lo2;
+            this.hi2 = hi2;
+            this.to = to;
+            this.out = out;
+        }
+
+        @Override
+        protected void compute() {
+            int length1 = hi1 - lo1;
+            int length2 = hi2 - lo2;
+            if (length1 + length2 <= MERGE_THRESHOLD || length1 == 0 || length2 == 0) {
+                merge(from, lo1, hi1, lo2, hi2, to, out);
+                return;
+            }
+            // Split the longer run at its middle; equal elements of the first run stay in front
+            int split1;
+            int split2;
+            if (length1 >= length2) {
+                split1 = (lo1 + hi1) >>> 1;
+                split2 = search(from, lo2, hi2, from[split1], false);
+            } else {
+                split2 = (lo2 + hi2) >>> 1;
+                split1 = search(from, lo1, hi1, from[split2], true);
+            }
+            int middle = out + (split1 - lo1) + (split2 - lo2);
+            invokeAll(new MergeTask(from, lo1, split1, lo2, split2, to, out),
+                    new MergeTask(from, split1, hi1, split2, hi2, to, middle));
+        }
+    }
+}
@@ -0,0 +1,183 @@
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.stream.Stream;
+
+/**
+ * Benchmarks of routing, loading and graph building on synthetic road networks (see Benchmark and
+ * SyntheticRoadNetwork).
+ *
+ * Usage: java PlannerBenchmark [--shapes grid,geometric,scale-free] [--sizes 1000,10000,100000,1000000]
+ *        [--attractions 2,5,10,15] [--benchmarks name,...] [--warmup 2] [--iterations 5]
+ *        [--iteration-ms 1000] [--seed 42] [--csv results.csv] [--json results.json]
+ *
+ * Networks of a million cities need a heap of about 4 GB (-Xmx4g) for the map-based Graph.
+ */
+public class PlannerBenchmark {
+    // Inputs drawn per benchmark; operations cycle through them
+    private static final int INPUTS = 1024;
+
+    public static void main(String[] args) throws Exception {
+        List<String> shapes = list(option(args, "--shapes", "grid,geometric,scale-free"));
+        List<String> sizes = list(option(args, "--sizes", "1000,10000,100000,1000000"));
+        List<String> attractionCounts = list(option(args, "--attractions", "2,5,10,15"));
+        List<String> selected = list(option(args, "--benchmarks", ""));
+        long seed = Long.parseLong(option(args, "--seed", "42"));
+        Benchmark benchmark = new Benchmark(Integer.parseInt(option(args, "--warmup", "2")),
+                Integer.parseInt(option(args, "--iterations", "5")), Long.parseLong(option(args, "--iteration-ms", "1000")));
+
+        Path directory = Files.createTempDirectory("planner-benchmark");
+        try {
+            for (String shapeName : shapes) {
+                SyntheticRoadNetwork.Shape shape = SyntheticRoadNetwork.Shape.parse(shapeName);
+                for (String size : sizes) {
+                    int nodeCount = Integer.parseInt(size);
+                    SyntheticRoadNetwork network = SyntheticRoadNetwork.generate(shape, nodeCount,
+                            Math.max(15, Math.min(1000, nodeCount)), seed);
+                    System.out.println(network);
+                    run(benchmark, network, directory, attractionCounts, selected, seed);
+                }
+            }
+        } finally {
+            try (Stream<Path> files = Files.list(directory)) {
+                for (Path file : (Iterable<Path>) files::iterator) {
+                    Files.delete(file);
+                }
+            }
+            Files.delete(directory);
+        }
+
+        String csv = option(args, "--csv", null);
+        if (csv != null) {
+            Benchmark.writeCsv(Paths.get(csv), benchmark.getResults());
+        }
+        String json = option(args, "--json", null);
+        if (json != null) {
+            Benchmark.writeJson(Paths.get(json), benchmark.getResults());
+        }
+    }
+
+    private static void run(Benchmark benchmark, SyntheticRoadNetwork network, Path directory,
+                            List<String> attractionCounts, List<String> selected, long seed) throws Exception {
+        Path roadsFile = directory.resolve("roads.csv");
+        Path attractionsFile = directory.resolve("attractions.csv");
+        network.writeCsv(roadsFile, attractionsFile);
+        Map<String, String> parameters = new LinkedHashMap<>();
+        parameters.put("shape", network.getShape().name().toLowerCase(Locale.ROOT));
+        parameters.put("nodes", String.valueOf(network.getNodeCount()));
+
+        // Loading: parse both files, then build each kind of graph from the parsed roads
+        DataLoader loaded = quietly(() -> load(roadsFile, attractionsFile));
+        if (isSelected(selected, "parse")) {
+            report(quietly(() -> benchmark.run("parse", parameters, i -> load(roadsFile, attractionsFile).getRoads().size())));
+        }
+        if (isSelected(selected, "buildGraph")) {
+            report(benchmark.run("buildGraph", parameters, i -> loaded.buildGraph().getNodeCount()));
+        }
+        if (isSelected(selected, "buildCompactGraph")) {
+            report(benchmark.run("buildCompactGraph", parameters, i -> loaded.buildCompactGraph().nodeCount()));
+        }
+
+        // Routing on the compact graph, with random city pairs and random scenic spots
+        RoutePlanner planner = new RoutePlanner(loaded.buildCompactGraph(), loaded);
+        Random random = new Random(seed);
+        String[] starts = new String[INPUTS];
+        String[] ends = new String[INPUTS];
+        for (int i = 0; i < INPUTS; i++) {
+            starts[i] = SyntheticRoadNetwork.cityName(random.nextInt(network.getNodeCount()));
+            ends[i] = SyntheticRoadNetwork.cityName(random.nextInt(network.getNodeCount()));
+        }
+        if (isSelected(selected, "findShortestPath")) {
+            report(benchmark.run("findShortestPath", parameters, i -> {
+                int k = (int) (i % INPUTS);
+                return planner.findOptimalRoute(starts[k], ends[k], null).getTotalDistance();
+            }));
+        }
+        if (isSelected(selected, "findOptimalRoute")) {
+            for (String count : attractionCounts) {
+                List<List<String>> attractions = randomAttractions(random, network.getAttractionCount(), Integer.parseInt(count));
+                Map<String, String> withCount = new LinkedHashMap<>(parameters);
+                withCount.put("attractions", count);
+                report(benchmark.run("findOptimalRoute", withCount, i -> {
+                    int k = (int) (i % INPUTS);
+                    return planner.findOptimalRoute(starts[k], ends[k], attractions.get(k)).getTotalDistance();
+                }));
+            }
+        }
+    }
+
+    private static DataLoader load(Path roadsFile, Path attractionsFile) throws IOException {
+        DataLoader loader = new DataLoader();
+        loader.loadAttractions(attractionsFile.toString());
+        loader.loadRoads(roadsFile.toString());
+        return loader;
+    }
+
+    // INPUTS lists of distinct scenic spots
+    private static List<List<String>> randomAttractions(Random random, int available, int count) {
+        if (count > available) {
+            throw new IllegalArgumentException("Only " + available + " scenic spots are available");
+        }
+        List<List<String>> lists = new ArrayList<>();
+        for (int i = 0; i < INPUTS; i++) {
+            List<String> attractions = new ArrayList<>();
+            while (attractions.size() < count) {
+                String attraction = SyntheticRoadNetwork.attractionName(random.nextInt(available));
+                if (!attractions.contains(attraction)) {
+                    attractions.add(attraction);
+                }
+            }
+            lists.add(attractions);
+        }
+        return lists;
+    }
+
+    private static void report(Benchmark.Result result) {
+        System.out.println(result);
+    }
+
+    // Run with the loader's progress messages discarded, so they neither flood the console nor get timed
+    private static <T> T quietly(Callable<T> work) throws Exception {
+        PrintStream out = System.out;
+        System.setOut(new PrintStream(OutputStream.nullOutputStream()));
+        try {
+            return work.call();
+        } finally {
+            System.setOut(out);
+        }
+    }
+
+    private static boolean isSelected(List<String> selected, String name) {
+        return selected.isEmpty() || selected.contains(name);
+    }
+
+    private static List<String> list(String value) {
+        List<String> items = new ArrayList<>();
+        for (String item : value.split(",")) {
+            if (!item.trim().isEmpty()) {
+                items.add(item.trim());
+            }
+        }
+        return items;
+    }
+
+    // Value following a command-line option, or the default if the option is not given
+    private static String option(String[] args, String name, String defaultValue) {
+        for (int i = 0; i + 1 < args.length; i++) {
+            if (args[i].equals(name)) {
+                return args[i + 1];
+            }
+        }
+        return defaultValue;
+    }
+}
@@ -0,0 +1,261 @@
+import java.io.PrintStream;
+import java.lang.management.ManagementFactory;
+import java.util.Locale;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import javax.management.JMException;
+import javax.management.ObjectName;
+
+/**
+ * Always-on counters of a RoutePlanner: query latency, the work done by its searches (nodes
+ * settled, edges relaxed, heap pushes), the time spent building distance matrices compared with
+ * ordering the stops, and tree cache hits.
+ *
+ * Counters are LongAdders and latencies go into striped LatencyHistograms, so queries on many
+ * threads never contend on one counter. Searches add their work once when they finish, not per
+ * node. The metrics can be registered as a JMX MBean and printed periodically.
+ */
+public class PlannerMetrics implements PlannerMetricsMBean {
+    private final LatencyHistogram queryLatency = new LatencyHistogram();
+    private final LatencyHistogram matrixLatency = new LatencyHistogram();
+    private final LatencyHistogram orderingLatency = new LatencyHistogram();
+    private final LongAdder failedQueries = new LongAdder();
+    private final LongAdder nodesSettled = new LongAdder();
+    private final LongAdder edgesRelaxed = new LongAdder();
+    private final LongAdder heapPushes = new LongAdder();
+    private final LongAdder treeCacheHits = new LongAdder();
+    private final LongAdder treeCacheMisses = new LongAdder();
+
+    /**
+     * Record a query that returned a route
+     * @param nanos time the query took
+     */
+    public void recordQuery(long nanos) {
+        queryLatency.record(nanos);
+    }
+
+    /**
+     * Record a query that ended with an exception
+     */
+    public void recordFailure() {
+        failedQueries.increment();
+    }
+
+    /**
+     * Record the work of one search
+     * @param settled nodes taken off the heap
+     * @param relaxed edges looked at
+     * @param pushes heap insertions and decreases
+     */
+    public void recordSearch(int settled, int relaxed, int pushes) {
+        nodesSettled.add(settled);
+        edgesRelaxed.add(relaxed);
+        heapPushes.add(pushes);
+    }
+
+    /**
+     * Record building the distance matrix between the cities of a query
+     * @param nanos time taken
+     */
+    public void recordMatrixBuild(long nanos) {
+        matrixLatency.record(nanos);
+    }
+
+    /**
+     * Record choosing the order of the stops of a query
+     * @param nanos time taken
+     */
+    public void recordOrdering(long nanos) {
+        orderingLatency.record(nanos);
+    }
+
+    /**
+     * Record a lookup in the tree cache
+     * @param hit whether the tree was cached
+     */
+    public void recordTreeCacheLookup(boolean hit) {
+        if (hit) {
+            treeCacheHits.increment();
+        } else {
+            treeCacheMisses.increment();
+        }
+    }
+
+    /**
+     * Register with the platform MBean server, so the metrics show up in JConsole, VisualVM, etc.
+     * @param name value of the name key, to tell planners apart
+     * @return name registered under
+     */
+    public ObjectName register(String name) {
+        try {
+            ObjectName objectName = new ObjectName("RoutePlanner:type=PlannerMetrics,name=" + ObjectName.quote(name));
+            ManagementFactory.getPlatformMBeanServer().registerMBean(this, objectName);
+            return objectName;
+        } catch (JMException e) {
+            throw new IllegalStateException("Could not register planner metrics as " + name, e);
+        }
+    }
+
+    /**
+     * Print dump() at a fixed rate on a daemon thread
+     * @param out stream to print to
+     * @param period time between dumps
+     * @param unit unit of period
+     * @return scheduler running the dumps; shut it down to stop them
+     */
+    public ScheduledExecutorService startPeriodicDump(PrintStream out, long period, TimeUnit unit) {
+        ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(task -> {
+            Thread thread = new Thread(task, "planner-metrics-dump");
+            thread.setDaemon(true);
+            return thread;
+        });
+        scheduler.scheduleAtFixedRate(() -> out.println(dump()), period, period, unit);
+        return scheduler;
+    }
+
+    @Override
+    public long getQueryCount() {
+        return queryLatency.getCount();
+    }
+
+    @Override
+    public long getFailedQueryCount() {
+        return failedQueries.sum();
+    }
+
+    @Override
+    public double getQueryLatencyMeanMillis() {
+        return queryLatency.snapshot().getMean() / 1e6;
+    }
+
+    @Override
+    public double getQueryLatencyP50Millis() {
+        return queryLatency.snapshot().getPercentile(50) / 1e6;
+    }
+
+    @Override
+    public double getQueryLatencyP90Millis() {
+        return queryLatency.snapshot().getPercentile(90) / 1e6;
+    }
+
+    @Override
+    public double getQueryLatencyP99Millis() {
+        return queryLatency.snapshot().getPercentile(99) / 1e6;
+    }
+
+    @Override
+    public double getQueryLatencyP999Millis() {
+        return queryLatency.snapshot().getPercentile(99.9) / 1e6;
+    }
+
+    @Override
+    public double getQueryLatencyMaxMillis() {
+        return queryLatency.snapshot().getMax() / 1e6;
+    }
+
+    @Override
+    public long getNodesSettled() {
+        return nodesSettled.sum();
+    }
+
+    @Override
+    public long getEdgesRelaxed() {
+        return edgesRelaxed.sum();
+    }
+
+    @Override
+    public long getHeapPushes() {
+        return heapPushes.sum();
+    }
+
+    @Override
+    public long getMatrixBuildCount() {
+        return matrixLatency.getCount();
+    }
+
+    @Override
+    public double getMatrixBuildMillis() {
+        return matrixLatency.snapshot().getSum() / 1e6;
+    }
+
+    @Override
+    public long getOrderingCount() {
+        return orderingLatency.getCount();
+    }
+
+    @Override
+    public double getOrderingMillis() {
+        return orderingLatency.snapshot().getSum() / 1e6;
+    }
+
+    @Override
+    public long getTreeCacheHits() {
+        return treeCacheHits.sum();
+    }
+
+    @Override
+    public long getTreeCacheMisses() {
+        return treeCacheMisses.sum();
+    }
+
+    @Override
+    public double getTreeCacheHitRate() {
+        long hits = treeCacheHits.sum();
+        long lookups = hits + treeCacheMisses.sum();
+        return lookups == 0 ? 0 : (double) hits / lookups;
+    }
+
+    @Override
+    public String dump() {
+        LatencyHistogram.Snapshot query = queryLatency.snapshot();
+        LatencyHistogram.Snapshot matrix = matrixLatency.snapshot();
+        LatencyHistogram.Snapshot ordering = orderingLatency.snapshot();
+        return String.format(Locale.ROOT, "queries %d, failed %d, latency %s%n"
+                        + "searches: %d nodes settled, %d edges relaxed, %d heap pushes%n"
+                        + "distance matrix: %d builds, %.3f ms in total, %s%n"
+                        + "ordering: %d solves, %.3f ms in total, %s%n"
+                        + "tree cache: %d hits, %d misses, hit rate %.3f",
+                query.getCount(), getFailedQueryCount(), latency(query),
+                getNodesSettled(), getEdgesRelaxed(), getHeapPushes(),
+                matrix.getCount(), matrix.getSum() / 1e6, latency(matrix),
+                ordering.getCount(), ordering.getSum() / 1e6, latency(ordering),
+                getTreeCacheHits(), getTreeCacheMisses(), getTreeCacheHitRate());
+    }
+
+    /**
+     * Format every metric as a JSON object
+     * @return JSON text
+     */
+    public String toJson() {
+        LatencyHistogram.Snapshot query = queryLatency.snapshot();
+        LatencyHistogram.Snapshot matrix = matrixLatency.snapshot();
+        LatencyHistogram.Snapshot ordering = orderingLatency.snapshot();
+        return String.format(Locale.ROOT, "{\"queries\":%d,\"failed\":%d,\"latencyMillis\":%s,"
+                        + "\"nodesSettled\":%d,\"edgesRelaxed\":%d,\"heapPushes\":%d,"
+                        + "\"matrixBuilds\":%d,\"matrixMillis\":%s,\"orderings\":%d,\"orderingMillis\":%s,"
+                        + "\"treeCacheHits\":%d,\"treeCacheMisses\":%d}",
+                query.getCount(), getFailedQueryCount(), latencyJson(query),
+                getNodesSettled(), getEdgesRelaxed(), getHeapPushes(),
+                matrix.getCount(), latencyJson(matrix), ordering.getCount(), latencyJson(ordering),
+                getTreeCacheHits(), getTreeCacheMisses());
+    }
+
+    private static String latency(LatencyHistogram.Snapshot snapshot) {
+        return String.format(Locale.ROOT, "ms mean %.3f p50 %.3f p90 %.3f p99 %.3f p99.9 %.3f max %.3f",
+                snapshot.getMean() / 1e6, snapshot.getPercentile(50) / 1e6, snapshot.getPercentile(90) / 1e6,
+                snapshot.getPercentile(99) / 1e6, snapshot.getPercentile(99.9) / 1e6, snapshot.getMax() / 1e6);
+    }
+
+    private static String latencyJson(LatencyHistogram.Snapshot snapshot) {
+        return String.format(Locale.ROOT, "{\"mean\":%.3f,\"p50\":%.3f,\"p90\":%.3f,\"p99\":%.3f,\"p999\":%.3f,\"max\":%.3f}",
+                snapshot.getMean() / 1e6, snapshot.getPercentile(50) / 1e6, snapshot.getPercentile(90) / 1e6,
+                snapshot.getPercentile(99) / 1e6, snapshot.getPercentile(99.9) / 1e6, snapshot.getMax() / 1e6);
+    }
+
+    @Override
+    public String toString() {
+        return dump();
+    }
+}
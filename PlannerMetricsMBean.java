@@ -0,0 +1,46 @@
+/**
+ * JMX view of PlannerMetrics; times are in milliseconds unless the name says otherwise
+ */
+public interface PlannerMetricsMBean {
+    long getQueryCount();
+
+    long getFailedQueryCount();
+
+    double getQueryLatencyMeanMillis();
+
+    double getQueryLatencyP50Millis();
+
+    double getQueryLatencyP90Millis();
+
+    double getQueryLatencyP99Millis();
+
+    double getQueryLatencyP999Millis();
+
+    double getQueryLatencyMaxMillis();
+
+    long getNodesSettled();
+
+    long getEdgesRelaxed();
+
+    long getHeapPushes();
+
+    long getMatrixBuildCount();
+
+    double getMatrixBuildMillis();
+
+    long getOrderingCount();
+
+    double getOrderingMillis();
+
+    long getTreeCacheHits();
+
+    long getTreeCacheMisses();
+
+    double getTreeCacheHitRate();
+
+    /**
+     * Format every metric as text, as the periodic dump prints it
+     * @return one metric group per line
+     */
+    String dump();
+}
@@ -0,0 +1,88 @@
+/**
+ * One change to a road: added, removed, or given a new distance.
+ * A distance of -1 means there is no road, so an addition has oldDistance -1
+ * and a removal has newDistance -1.
+ */
+public class RoadUpdate {
+    private final String cityA;
+    private final String cityB;
+    private final int oldDistance;
+    private final int newDistance;
+
+    public RoadUpdate(String cityA, String cityB, int oldDistance, int newDistance) {
+        this.cityA = cityA;
+        this.cityB = cityB;
+        this.oldDistance = oldDistance;
+        this.newDistance = newDistance;
+    }
+
+    public String getCityA() {
+        return cityA;
+    }
+
+    public String getCityB() {
+        return cityB;
+    }
+
+    public int getOldDistance() {
+        return oldDistance;
+    }
+
+    public int getNewDistance() {
+        return newDistance;
+    }
+
+    public boolean isRemoval() {
+        return newDistance == -1;
+    }
+
+    /**
+     * Apply the update to a compact graph
+     * @param graph graph that contains both cities
+     * @return updated graph
+     */
+    public CompactGraph applyTo(CompactGraph graph) {
+        int a = graph.id(cityA);
+        int b = graph.id(cityB);
+        if (a == -1 || b == -1) {
+            throw new IllegalArgumentException("The road " + cityA + " - " + cityB + " is not between known cities");
+        }
+        return isRemoval() ? graph.withoutRoad(a, b) : graph.withRoad(a, b, newDistance);
+    }
+
+    /**
+     * Check whether the update can change any shortest distance from some source, given the
+     * source's shortest distances (before the update) to the two cities.
+     * A longer or removed road matters only if it is tight, i.e. may lie on a shortest path;
+     * a shorter or new road matters only if it gives one of the cities a shorter distance.
+     *
+     * @param distanceA distance from the source to cityA, Integer.MAX_VALUE if unreachable
+     * @param distanceB distance from the source to cityB, Integer.MAX_VALUE if unreachable
+     * @return whether the source's shortest-path tree may change
+     */
+    public boolean affects(int distanceA, int distanceB) {
+        if (distanceA == Integer.MAX_VALUE && distanceB == Integer.MAX_VALUE) {
+            return false;
+        }
+        long a = distanceA;
+        long b = distanceB;
+        if (oldDistance != -1 && (newDistance == -1 || newDistance > oldDistance)) {
+            return a + oldDistance == b || b + oldDistance == a;
+        }
+        if (newDistance != -1 && (oldDistance == -1 || newDistance < oldDistance)) {
+            return a + newDistance < b || b + newDistance < a;
+        }
+        return false;
+    }
+
+    @Override
+    public String toString() {
+        if (oldDistance == -1) {
+            return "add " + cityA + " - " + cityB + " (" + newDistance + ")";
+        }
+        if (newDistance == -1) {
+            return "remove " + cityA + " - " + cityB;
+        }
+        return "change " + cityA + " - " + cityB + " from " + oldDistance + " to " + newDistance;
+    }
+}
@@ -0,0 +1,113 @@
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Append-only CSV log of road updates, so that closures and distance changes survive a restart.
+ *
+ * Each line is "set,cityA,cityB,distance" or "remove,cityA,cityB". Registered as a listener on a
+ * Graph, the log records every change as it happens; on startup, replay the log into the freshly
+ * loaded Graph before registering it again.
+ */
+public class RoadUpdateLog implements Graph.RoadListener, Closeable {
+    private static final String HEADER = "Action,CityA,CityB,Distance";
+
+    private final BufferedWriter writer;
+
+    /**
+     * Open a log for appending, creating it if it does not exist
+     * @param file log file
+     */
+    public RoadUpdateLog(Path file) throws IOException {
+        boolean exists = Files.exists(file) && Files.size(file) > 0;
+        writer = Files.newBufferedWriter(file, StandardCharsets.UTF_8, StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+        if (!exists) {
+            writer.write(HEADER);
+            writer.newLine();
+            writer.flush();
+        }
+    }
+
+    /**
+     * Apply every update in a log file to a graph, in order
+     *
+     * @param file log file; a missing file counts as empty
+     * @param graph graph to update
+     * @return number of updates applied
+     */
+    public static int replay(Path file, Graph graph) throws IOException {
+        List<RoadUpdate> updates = read(file);
+        for (RoadUpdate update : updates) {
+            graph.apply(update);
+        }
+        return updates.size();
+    }
+
+    /**
+     * Read every update in a log file, e.g. for RoutePlanner.applyUpdates.
+     * Old distances are not logged and are read as -1.
+     *
+     * @param file log file; a missing file counts as empty
+     * @return updates in log order
+     */
+    public static List<RoadUpdate> read(Path file) throws IOException {
+        List<RoadUpdate> updates = new ArrayList<>();
+        if (!Files.exists(file)) {
+            return updates;
+        }
+        MappedCsvReader.forEachRecord(file, record -> {
+            String action = record.stringField(0);
+            if (action.equals("set") && record.fieldCount() == 4) {
+                updates.add(new RoadUpdate(record.stringField(1), record.stringField(2), -1, record.intField(3)));
+            } else if (action.equals("remove") && record.fieldCount() >= 3) {
+                updates.add(new RoadUpdate(record.stringField(1), record.stringField(2), -1, -1));
+            } else {
+                throw new IllegalArgumentException("Invalid road update in " + file + ": " + action);
+            }
+        });
+        return updates;
+    }
+
+    /**
+     * Append an update and flush it to the file
+     * @param update road update
+     */
+    public synchronized void append(RoadUpdate update) throws IOException {
+        if (update.isRemoval()) {
+            writer.write("remove," + quote(update.getCityA()) + "," + quote(update.getCityB()));
+        } else {
+            writer.write("set," + quote(update.getCityA()) + "," + quote(update.getCityB()) + "," + update.getNewDistance());
+        }
+        writer.newLine();
+        writer.flush();
+    }
+
+    @Override
+    public void roadChanged(RoadUpdate update) {
+        try {
+            append(update);
+        } catch (IOException e) {
+            throw new UncheckedIOException("The road update could not be logged", e);
+        }
+    }
+
+    // Quote a name that contains a delimiter, quote or surrounding whitespace
+    private static String quote(String name) {
+        if (name.contains(",") || name.contains("\"") || name.contains("\n") || !name.equals(name.trim())) {
+            return "\"" + name.replace("\"", "\"\"") + "\"";
+        }
+        return name;
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        writer.close();
+    }
+}
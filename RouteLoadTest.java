@@ -0,0 +1,185 @@
+import java.io.IOException;
+import java.net.URI;
+import java.net.URLEncoder;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Closed-loop load generator for a RouteServer: a number of clients each send one request at a
+ * time, for a fixed duration, between random cities. Raising the client count until requests
+ * start being shed (503) or timing out (504) shows how many concurrent requests one server holds.
+ */
+public class RouteLoadTest {
+    private final URI base;
+    private final List<String> cities;
+    private final List<String> attractions;
+    private final int attractionsPerRequest;
+
+    /**
+     * @param base server address, e.g. http://localhost:8080
+     * @param cities cities to pick start and destination from
+     * @param attractions scenic spots to pick from; empty to request shortest paths only
+     * @param attractionsPerRequest number of scenic spots per /optimal request
+     */
+    public RouteLoadTest(URI base, List<String> cities, List<String> attractions, int attractionsPerRequest) {
+        if (cities.isEmpty()) {
+            throw new IllegalArgumentException("At least one city is needed");
+        }
+        this.base = base;
+        this.cities = cities;
+        this.attractions = attractions;
+        this.attractionsPerRequest = attractions.isEmpty() ? 0 : attractionsPerRequest;
+    }
+
+    /**
+     * Run the load
+     *
+     * @param clients number of concurrent clients
+     * @param durationMillis how long to send requests
+     * @param seed seed of the random city choice
+     * @return latencies and status counts
+     */
+    public Result run(int clients, long durationMillis, long seed) throws InterruptedException {
+        ExecutorService executor = BatchPlanner.virtualThreadExecutor();
+        HttpClient client = HttpClient.newBuilder().connectTimeout(Duration.ofSeconds(5)).build();
+        Map<Integer, LongAdder> statuses = new ConcurrentHashMap<>();
+        List<Recorder> recorders = new ArrayList<>();
+        long end = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(durationMillis);
+        long start = System.nanoTime();
+        for (int c = 0; c < clients; c++) {
+            Recorder recorder = new Recorder();
+            recorders.add(recorder);
+            Random random = new Random(seed + c);
+            executor.execute(() -> {
+                while (System.nanoTime() < end) {
+                    HttpRequest request = HttpRequest.newBuilder(nextUri(random)).timeout(Duration.ofSeconds(30)).build();
+                    long sent = System.nanoTime();
+                    int status;
+                    try {
+                        status = client.send(request, HttpResponse.BodyHandlers.discarding()).statusCode();
+                    } catch (IOException e) {
+                        // Connection refused or reset counts as status 0
+                        status = 0;
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                    recorder.add(System.nanoTime() - sent);
+                    statuses.computeIfAbsent(status, k -> new LongAdder()).increment();
+                }
+            });
+        }
+        executor.shutdown();
+        executor.awaitTermination(durationMillis + 60_000, TimeUnit.MILLISECONDS);
+        long elapsed = System.nanoTime() - start;
+
+        int total = 0;
+        for (Recorder recorder : recorders) {
+            total += recorder.count;
+        }
+        long[] all = new long[total];
+        int filled = 0;
+        for (Recorder recorder : recorders) {
+            System.arraycopy(recorder.latencies, 0, all, filled, recorder.count);
+            filled += recorder.count;
+        }
+        Arrays.sort(all);
+        Map<Integer, Long> counts = new TreeMap<>();
+        statuses.forEach((status, count) -> counts.put(status, count.sum()));
+        return new Result(clients, elapsed, all, counts);
+    }
+
+    private URI nextUri(Random random) {
+        StringBuilder uri = new StringBuilder(base.toString());
+        uri.append(attractionsPerRequest > 0 ? "/optimal" : "/route");
+        uri.append("?from=").append(encode(cities.get(random.nextInt(cities.size()))));
+        uri.append("&to=").append(encode(cities.get(random.nextInt(cities.size()))));
+        for (int i = 0; i < attractionsPerRequest; i++) {
+            uri.append("&attraction=").append(encode(attractions.get(random.nextInt(attractions.size()))));
+        }
+        return URI.create(uri.toString());
+    }
+
+    private static String encode(String text) {
+        return URLEncoder.encode(text, StandardCharsets.UTF_8);
+    }
+
+    // Latencies of one client, read once the client has finished
+    private static class Recorder {
+        long[] latencies = new long[1024];
+        int count = 0;
+
+        void add(long nanos) {
+            if (count == latencies.length) {
+                latencies = Arrays.copyOf(latencies, count * 2);
+            }
+            latencies[count++] = nanos;
+        }
+    }
+
+    /**
+     * Outcome of one load run
+     */
+    public static class Result {
+        private final int clients;
+        private final long elapsedNanos;
+        private final long[] sortedLatencies;
+        private final Map<Integer, Long> statusCounts;
+
+        Result(int clients, long elapsedNanos, long[] sortedLatencies, Map<Integer, Long> statusCounts) {
+            this.clients = clients;
+            this.elapsedNanos = elapsedNanos;
+            this.sortedLatencies = sortedLatencies;
+            this.statusCounts = statusCounts;
+        }
+
+        public int getRequestCount() {
+            return sortedLatencies.length;
+        }
+
+        /**
+         * Get the number of responses with a status
+         * @param status HTTP status, or 0 for connection failures
+         * @return count
+         */
+        public long getStatusCount(int status) {
+            return statusCounts.getOrDefault(status, 0L);
+        }
+
+        public double getThroughput() {
+            return sortedLatencies.length / (elapsedNanos / 1e9);
+        }
+
+        /**
+         * Get a latency percentile
+         * @param percentile between 0 and 100
+         * @return latency in milliseconds
+         */
+        public double getLatencyMillis(double percentile) {
+            if (sortedLatencies.length == 0) {
+                return 0;
+            }
+            int index = (int) Math.min(sortedLatencies.length - 1, Math.ceil(percentile / 100 * sortedLatencies.length) - 1);
+            return sortedLatencies[Math.max(0, index)] / 1e6;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%d clients: %d requests in %.1f s, %.1f requests/s, latency p50 %.2f ms, p99 %.2f ms, max %.2f ms, statuses %s",
+                    clients, sortedLatencies.length, elapsedNanos / 1e9, getThroughput(), getLatencyMillis(50),
+                    getLatencyMillis(99), getLatencyMillis(100), statusCounts);
+        }
+    }
+}
@@ -1,23 +1,245 @@
-
-
 import java.util.*;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.concurrent.locks.ReentrantLock;
 
 /**
  * Class for planning optimal routes
+ * 
+ * Thread safety: findOptimalRoute may be called from any number of threads at once.
+ * Each query pins the current State, i.e. one immutable CompactGraph together with the
+ * structures derived from it, runs its searches in a SearchWorkspace borrowed from a shared
+ * pool for the query (see WorkspacePool), and only shares the synchronized tree cache besides. Queries never wait for road updates: the
+ * planner is brought up to date by one thread at a time, and queries that arrive meanwhile
+ * keep using the previous state. Setters are safe to call between queries; a query that is
+ * already running keeps the configuration it started with or sees the new one, but never
+ * a torn mix of graph and derived structures from different versions.
  */
 public class RoutePlanner {
-    private Graph graph;
-    private DataLoader dataLoader;
+    private volatile State state;
+    private volatile DataLoader dataLoader;
+    
+    // Map-based graph or versioned graph the state follows, if any
+    private final Graph sourceGraph;
+    private final VersionedGraph versionedGraph;
+    // Held while the state is replaced; queries only ever try to take it
+    private final ReentrantLock updateLock = new ReentrantLock();
+    
+    // Routes with more intermediate cities than this use local search
+    private volatile int maxExactStops = 16;
+    private volatile ForkJoinPool solverPool = ForkJoinPool.commonPool();
+    // Wall-clock time the local search may spend ordering one route's stops
+    private volatile long localSearchMillis = 100;
+    
+    // Optional cache of complete shortest-path trees, see ShortestPathTreeCache.
+    // Point and matrix queries use the same precedence: distance table, then contraction hierarchy
+    // (SearchMode.CH), then tree cache, then the configured search. Point queries only read trees
+    // already cached, since one point search is far cheaper than a complete tree.
+    private volatile ShortestPathTreeCache treeCache;
+    
+    // Point-to-point search algorithm
+    private volatile SearchMode searchMode = SearchMode.DIJKSTRA;
+    
+    // Nodes settled by the most recent point-to-point search (on any thread)
+    private volatile int lastSettledCount;
+    
+    // Query latency and search work, see PlannerMetrics
+    private volatile PlannerMetrics metrics = new PlannerMetrics();
+    
+    /**
+     * Algorithm used for single shortest-path queries
+     */
+    public enum SearchMode {
+        // Plain Dijkstra, stopping when the destination is settled
+        DIJKSTRA,
+        // Dijkstra from both ends at once, expanding the smaller frontier
+        BIDIRECTIONAL,
+        // A* guided by landmark lower bounds, see LandmarkIndex
+        ALT,
+        // Bidirectional upward search in a preprocessed ContractionHierarchy
+        CH
+    }
     
     public RoutePlanner(Graph graph) {
-        this.graph = graph;
+        this(graph, null);
     }
     
     public RoutePlanner(Graph graph, DataLoader dataLoader) {
-        this.graph = graph;
+        this.sourceGraph = graph;
+        this.versionedGraph = null;
+        synchronized (graph) {
+            this.state = new State(CompactGraph.fromGraph(graph), graph.getVersion(), null);
+        }
         this.dataLoader = dataLoader;
     }
     
+    public RoutePlanner(CompactGraph graph, DataLoader dataLoader) {
+        this.sourceGraph = null;
+        this.versionedGraph = null;
+        this.state = new State(graph, 0, null);
+        this.dataLoader = dataLoader;
+    }
+    
+    /**
+     * Plan on a graph that is updated while queries run; each query uses the latest snapshot
+     * @param graph versioned graph
+     * @param dataLoader loader for the scenic spot locations
+     */
+    public RoutePlanner(VersionedGraph graph, DataLoader dataLoader) {
+        VersionedGraph.Snapshot snapshot = graph.current();
+        this.sourceGraph = null;
+        this.versionedGraph = graph;
+        this.state = new State(snapshot.getGraph(), snapshot.getVersion(), snapshot);
+        this.dataLoader = dataLoader;
+    }
+    
+    /**
+     * Copy constructor: same graph and configuration.
+     * A copy following a Graph builds its own CompactGraph on every change, so it gets its own
+     * tree cache with the same budget; sharing one would let each planner evict the other's trees.
+     */
+    public RoutePlanner(RoutePlanner other) {
+        this.sourceGraph = other.sourceGraph;
+        this.versionedGraph = other.versionedGraph;
+        this.state = other.state;
+        this.dataLoader = other.dataLoader;
+        this.maxExactStops = other.maxExactStops;
+        this.solverPool = other.solverPool;
+        this.localSearchMillis = other.localSearchMillis;
+        ShortestPathTreeCache cache = other.treeCache;
+        this.treeCache = cache != null && sourceGraph != null ? new ShortestPathTreeCache(cache.getMaxBytes()) : cache;
+        this.searchMode = other.searchMode;
+        this.metrics = other.metrics;
+    }
+    
+    /**
+     * Get the state a query should pin, bringing it up to date first if the source graph has changed.
+     * Road updates are applied incrementally (see applyUpdates); only if cities were added to a Graph,
+     * or too many updates happened to replay, is the graph rebuilt and every derived structure dropped.
+     * If another thread is already updating the state, the previous state is returned without waiting.
+     */
+    private State currentState() {
+        State pinned = state;
+        boolean stale = versionedGraph != null ? versionedGraph.current() != pinned.snapshot
+                : sourceGraph != null && sourceGraph.getVersion() != pinned.sourceVersion;
+        if (!stale || !updateLock.tryLock()) {
+            return pinned;
+        }
+        try {
+            if (versionedGraph != null) {
+                catchUp(versionedGraph.current());
+            } else {
+                catchUp();
+            }
+            return state;
+        } finally {
+            updateLock.unlock();
+        }
+    }
+    
+    // Follow the versioned graph, repairing derived structures one snapshot at a time
+    private void catchUp(VersionedGraph.Snapshot latest) {
+        State current = state;
+        for (VersionedGraph.Snapshot snapshot = current.snapshot; snapshot != latest; ) {
+            snapshot = snapshot.getNext();
+            current = repaired(current, snapshot.getGraph(), snapshot.getUpdate(), snapshot);
+        }
+        state = current;
+    }
+    
+    // Follow the Graph through its journal, or copy it again if the journal cannot be replayed.
+    // Only the copying holds the graph's lock; writers are not blocked while structures are repaired.
+    private void catchUp() {
+        State current = state;
+        long version;
+        List<RoadUpdate> updates;
+        CompactGraph rebuilt = null;
+        synchronized (sourceGraph) {
+            version = sourceGraph.getVersion();
+            if (version == current.sourceVersion) {
+                return;
+            }
+            updates = sourceGraph.getUpdatesSince(current.sourceVersion);
+            if (updates == null || sourceGraph.getNodeCount() != current.graph.nodeCount()) {
+                rebuilt = CompactGraph.fromGraph(sourceGraph);
+            }
+        }
+        if (rebuilt == null) {
+            current = applied(current, updates);
+            state = new State(current.graph, current.distanceTable, current.landmarks, null, version, null);
+        } else {
+            // Derived structures are dropped with the old graph
+            ShortestPathTreeCache cache = treeCache;
+            if (cache != null) {
+                cache.attach(rebuilt);
+            }
+            state = new State(rebuilt, version, null);
+        }
+    }
+    
+    /**
+     * Apply road changes to the graph and repair derived structures incrementally: only the
+     * cached trees, distance-table rows and landmark distances of sources whose shortest paths
+     * may use a changed road are touched (trees are dropped, rows and landmarks repaired, see
+     * IncrementalDijkstra). A contraction hierarchy cannot be repaired and is dropped, so CH
+     * queries fall back to searching until a new hierarchy is set. Queries keep running on the
+     * previous graph until the repaired state is published.
+     * Planners built on a Graph or VersionedGraph pick up its changes automatically; this is for
+     * planners built on a CompactGraph.
+     * 
+     * @param updates road updates between cities already in the map; old distances are ignored
+     */
+    public void applyUpdates(List<RoadUpdate> updates) {
+        if (sourceGraph != null || versionedGraph != null) {
+            throw new IllegalStateException("This planner follows its graph; update that graph instead");
+        }
+        updateLock.lock();
+        try {
+            state = applied(state, updates);
+        } finally {
+            updateLock.unlock();
+        }
+    }
+    
+    private State applied(State current, List<RoadUpdate> updates) {
+        for (RoadUpdate update : updates) {
+            CompactGraph graph = current.graph;
+            int a = graph.id(update.getCityA());
+            int b = graph.id(update.getCityB());
+            if (a == -1 || b == -1) {
+                throw new IllegalArgumentException("The road " + update.getCityA() + " - " + update.getCityB() + " is not between cities in the map");
+            }
+            // Take the old distance from the graph itself, which is what the repairs rely on
+            RoadUpdate actual = new RoadUpdate(update.getCityA(), update.getCityB(), graph.weight(a, b), update.getNewDistance());
+            if (actual.getOldDistance() != actual.getNewDistance()) {
+                current = repaired(current, actual.applyTo(graph), actual, null);
+            }
+        }
+        return current;
+    }
+    
+    /**
+     * Move a state to the graph after one road update
+     * 
+     * @param current state on the graph before the update
+     * @param next graph after the update
+     * @param actual update, with the distance the road had before
+     * @param snapshot versioned snapshot of next, if any
+     * @return state on next with repaired derived structures
+     */
+    private State repaired(State current, CompactGraph next, RoadUpdate actual, VersionedGraph.Snapshot snapshot) {
+        ShortestPathTreeCache cache = treeCache;
+        if (cache != null) {
+            cache.update(current.graph, next, actual);
+        }
+        DistanceTable table = current.distanceTable == null ? null : current.distanceTable.repair(next, actual, solverPool);
+        LandmarkIndex index = current.landmarks == null ? null : current.landmarks.update(next, actual);
+        long version = snapshot == null ? current.sourceVersion : snapshot.getVersion();
+        return new State(next, table, index, null, version, snapshot);
+    }
+    
     /**
      * Find the optimal route from start to end city, visiting all specified attractions
      * 
@@ -27,6 +249,22 @@ public class RoutePlanner {
      * @return optimal route
      */
     public Route findOptimalRoute(String startCity, String endCity, List<String> attractions) {
+        PlannerMetrics metrics = this.metrics;
+        long start = System.nanoTime();
+        try {
+            Route route = plan(metrics, startCity, endCity, attractions);
+            metrics.recordQuery(System.nanoTime() - start);
+            return route;
+        } catch (RuntimeException e) {
+            metrics.recordFailure();
+            throw e;
+        }
+    }
+    
+    private Route plan(PlannerMetrics metrics, String startCity, String endCity, List<String> attractions) {
+        State state = currentState();
+        CompactGraph graph = state.graph;
+        
         // Validate input
         if (!graph.hasNode(startCity)) {
             throw new IllegalArgumentException("The starting city " + startCity + " is not in the map");
@@ -37,7 +275,7 @@ public class RoutePlanner {
         
         // If no attractions to visit, just find the shortest path
         if (attractions == null || attractions.isEmpty() || (attractions.size() == 1 && attractions.get(0).isEmpty())) {
-            return findShortestPath(startCity, endCity);
+            return findShortestPath(state, startCity, endCity);
         }
         
         // Convert attractions to corresponding cities
@@ -63,83 +301,68 @@ public class RoutePlanner {
         List<String> citiesToVisit = new ArrayList<>(allCities);
         
         // Build distance matrix between cities
+        // Row i is one search from city i to every later city; the graph is undirected,
+        // so the lower half is the mirror image and the last city needs no search at all
+        long matrixStart = System.nanoTime();
         int n = citiesToVisit.size();
+        int[] ids = new int[n];
+        for (int i = 0; i < n; i++) {
+            ids[i] = graph.id(citiesToVisit.get(i));
+        }
+        Leg[][] legs = searchAllLegs(state, ids);
         int[][] distances = new int[n][n];
         for (int i = 0; i < n; i++) {
-            for (int j = 0; j < n; j++) {
-                if (i == j) {
-                    distances[i][j] = 0;
-                } else {
-                    Route shortestPath = findShortestPath(citiesToVisit.get(i), citiesToVisit.get(j));
-                    distances[i][j] = shortestPath.getTotalDistance();
+            for (int j = i + 1; j < n; j++) {
+                if (legs[i][j] == null) {
+                    throw new IllegalStateException("There is no path from " + citiesToVisit.get(i) + " to " + citiesToVisit.get(j));
                 }
+                distances[i][j] = legs[i][j].distance;
+                distances[j][i] = legs[i][j].distance;
             }
         }
-        
-        // Use dynamic programming to solve a variant of the TSP problem
-        // Since we have fixed start and end points, this is a path problem rather than a cycle problem
+        metrics.recordMatrixBuild(System.nanoTime() - matrixStart);
         
         // Find indices of start and end in citiesToVisit
         int startIndex = citiesToVisit.indexOf(startCity);
         int endIndex = citiesToVisit.indexOf(endCity);
         
-        // Use greedy algorithm to find an approximate optimal solution
-        List<Integer> path = new ArrayList<>();
-        path.add(startIndex);
-        
-        // Mark visited cities
-        boolean[] visited = new boolean[n];
-        visited[startIndex] = true;
-        
-        // Keep selecting the nearest unvisited city
-        int currentIndex = startIndex;
-        while (path.size() < n - 1) {  // All cities except the end
-            int nearestIndex = -1;
-            int minDistance = Integer.MAX_VALUE;
-            
-            for (int i = 0; i < n; i++) {
-                if (!visited[i] && i != endIndex && distances[currentIndex][i] < minDistance) {
-                    nearestIndex = i;
-                    minDistance = distances[currentIndex][i];
-                }
-            }
-            
-            if (nearestIndex != -1) {
-                path.add(nearestIndex);
-                visited[nearestIndex] = true;
-                currentIndex = nearestIndex;
-            } else {
-                break;
-            }
+        // Use dynamic programming to solve a variant of the TSP problem
+        // Since we have fixed start and end points, this is a path problem rather than a cycle problem
+        int stops = n - (startIndex == endIndex ? 1 : 2);
+        long orderingStart = System.nanoTime();
+        int[] path;
+        if (stops <= maxExactStops) {
+            path = new HeldKarpSolver(solverPool).solve(distances, startIndex, endIndex);
+        } else {
+            // Too many stops for the exact tables, improve a greedy ordering within the time budget
+            path = new LocalSearchSolver(solverPool, localSearchMillis).solve(distances, startIndex, endIndex);
         }
-        
-        // Add end point
-        path.add(endIndex);
+        metrics.recordOrdering(System.nanoTime() - orderingStart);
         
         // Build final route
         Route finalRoute = new Route();
         int totalDistance = 0;
         
-        // Build route segment by segment
-        for (int i = 0; i < path.size() - 1; i++) {
-            int fromIndex = path.get(i);
-            int toIndex = path.get(i + 1);
-            String fromCity = citiesToVisit.get(fromIndex);
-            String toCity = citiesToVisit.get(toIndex);
+        // Build route segment by segment, reusing the paths found for the matrix
+        finalRoute.addCity(citiesToVisit.get(path[0]));
+        for (int i = 0; i < path.length - 1; i++) {
+            int fromIndex = path[i];
+            int toIndex = path[i + 1];
+            if (fromIndex == toIndex) {
+                continue;
+            }
             
-            Route segment = findShortestPath(fromCity, toCity);
+            // Only the upper half holds paths; walk it backwards for the other direction
+            int[] segment = fromIndex < toIndex ? legs[fromIndex][toIndex].path : legs[toIndex][fromIndex].path;
+            int segmentLength = segment.length;
             
-            // First segment is added completely
-            if (i == 0) {
-                finalRoute.getCities().addAll(segment.getCities());
-            } else {
-                // For subsequent segments, skip the first city (already at end of previous segment)
-                for (int j = 1; j < segment.getCities().size(); j++) {
-                    finalRoute.getCities().add(segment.getCities().get(j));
-                }
+            // Skip the first city (already at end of previous segment)
+            for (int j = 1; j < segmentLength; j++) {
+                int node = fromIndex < toIndex ? segment[j] : segment[segmentLength - 1 - j];
+                finalRoute.addCity(graph.name(node));
             }
             
-            totalDistance += segment.getTotalDistance();
+            totalDistance += distances[fromIndex][toIndex];
         }
         
         finalRoute.setTotalDistance(totalDistance);
@@ -149,11 +372,14 @@ public class RoutePlanner {
     /**
      * Use Dijkstra's algorithm to find the shortest path between two cities
      * 
+     * @param state state pinned for this query
      * @param start starting city
      * @param end destination city
      * @return Route object containing path and distance
      */
-    private Route findShortestPath(String start, String end) {
+    private Route findShortestPath(State state, String start, String end) {
+        CompactGraph graph = state.graph;
+        
         // Validate input
         if (!graph.hasNode(start)) {
             throw new IllegalArgumentException("The starting city " + start + " is not in the map");
@@ -170,94 +396,658 @@ public class RoutePlanner {
             return route;
         }
         
-        // Priority queue for Dijkstra's algorithm
-        PriorityQueue<Node> priorityQueue = new PriorityQueue<>(Comparator.comparingInt(Node::getDistance));
+        int source = graph.id(start);
+        int target = graph.id(end);
         
-        // Distance and predecessor tables
-        Map<String, Integer> distances = new HashMap<>();
-        Map<String, String> predecessors = new HashMap<>();
+        // Precomputed structures produce a leg directly, in the order searchAllLegs uses
+        Leg leg;
+        ShortestPathTree tree;
+        if (state.distanceTable != null) {
+            leg = tableLeg(state.distanceTable, source, target);
+        } else if (usesHierarchy(state)) {
+            leg = hierarchyLeg(state.contractionHierarchy, source, target);
+        } else if ((tree = cachedTreeIfPresent(graph, source)) != null) {
+            leg = treeLeg(tree, target);
+        } else {
+            return searchRoute(state, start, end, source, target);
+        }
         
-        // Initialize all cities' distances to infinity
-        for (String city : graph.getNodes()) {
-            distances.put(city, Integer.MAX_VALUE);
+        // If no path to destination
+        if (leg == null) {
+            throw new IllegalStateException("There is no path from " + start + " to " + end);
         }
         
-        // Start distance is 0
-        distances.put(start, 0);
-        priorityQueue.add(new Node(start, 0));
+        // Create Route object
+        Route route = new Route();
+        for (int node : leg.path) {
+            route.addCity(graph.name(node));
+        }
+        route.setTotalDistance(leg.distance);
         
-        // Main loop of Dijkstra's algorithm
-        while (!priorityQueue.isEmpty()) {
-            Node current = priorityQueue.poll();
-            String currentCity = current.getCity();
-            int currentDistance = current.getDistance();
+        return route;
+    }
+    
+    /**
+     * Run the configured point-to-point search in a pooled workspace.
+     * Nothing is allocated besides the returned route.
+     * 
+     * @param state state pinned for this query
+     * @param start starting city
+     * @param end destination city
+     * @param source id of the starting city
+     * @param target id of the destination city
+     * @return Route object containing path and distance
+     */
+    private Route searchRoute(State state, String start, String end, int source, int target) {
+        CompactGraph graph = state.graph;
+        try (SearchWorkspace workspace = SearchWorkspace.begin(graph.nodeCount())) {
+            int distance;
+            if (searchMode == SearchMode.ALT && state.landmarks != null) {
+                distance = altSearch(graph, workspace, state.landmarks, source, target);
+            } else if (searchMode == SearchMode.BIDIRECTIONAL) {
+                distance = bidirectionalSearch(graph, workspace, source, target);
+            } else {
+                workspace.mark(target);
+                dijkstra(graph, workspace, source, 1);
+                distance = workspace.distance(0, target);
+                if (distance == Integer.MAX_VALUE) {
+                    distance = -1;
+                } else {
+                    workspace.tracePath(0, target);
+                }
+            }
             
-            // If current distance is greater than known shortest distance, skip
-            if (currentDistance > distances.get(currentCity)) {
-                continue;
+            // If no path to destination
+            if (distance == -1) {
+                throw new IllegalStateException("There is no path from " + start + " to " + end);
             }
             
-            // If destination is reached, end search
-            if (currentCity.equals(end)) {
+            // Create Route object from the path buffer
+            Route route = new Route();
+            int[] path = workspace.getPath();
+            for (int i = 0; i < workspace.getPathLength(); i++) {
+                route.addCity(graph.name(path[i]));
+            }
+            route.setTotalDistance(distance);
+            
+            return route;
+        }
+    }
+    
+    /**
+     * Find the shortest paths between every pair of the given nodes.
+     * One search per node except the last, run in parallel on the solver pool.
+     * With a tree cache, each row comes from the complete (cached) tree of its node.
+     * 
+     * @param state state pinned for this query
+     * @param ids node ids
+     * @return legs[i][j] for i < j, or null where no path exists
+     */
+    private Leg[][] searchAllLegs(State state, int[] ids) {
+        CompactGraph graph = state.graph;
+        int n = ids.length;
+        Leg[][] legs = new Leg[n][];
+        
+        // Precomputed tables answer every pair without searching
+        if (state.distanceTable != null) {
+            for (int i = 0; i < n; i++) {
+                legs[i] = new Leg[n];
+                for (int j = i + 1; j < n; j++) {
+                    legs[i][j] = tableLeg(state.distanceTable, ids[i], ids[j]);
+                }
+            }
+            return legs;
+        }
+        
+        // Hierarchy queries are cheap enough to answer every pair separately
+        if (usesHierarchy(state)) {
+            for (int i = 0; i < n; i++) {
+                legs[i] = new Leg[n];
+                for (int j = i + 1; j < n; j++) {
+                    legs[i][j] = hierarchyLeg(state.contractionHierarchy, ids[i], ids[j]);
+                }
+            }
+            return legs;
+        }
+        
+        List<Callable<Void>> rows = new ArrayList<>();
+        for (int i = 0; i < n - 1; i++) {
+            final int row = i;
+            rows.add(() -> {
+                legs[row] = new Leg[n];
+                // One read of the field, so a concurrent setTreeCache cannot change the cache mid-row
+                ShortestPathTreeCache cache = treeCache;
+                if (cache != null) {
+                    ShortestPathTree tree = cachedTree(cache, graph, ids[row]);
+                    for (int j = row + 1; j < n; j++) {
+                        legs[row][j] = treeLeg(tree, ids[j]);
+                    }
+                } else {
+                    int[] targets = Arrays.copyOfRange(ids, row + 1, n);
+                    Leg[] found = searchLegs(graph, ids[row], targets);
+                    System.arraycopy(found, 0, legs[row], row + 1, found.length);
+                }
+                return null;
+            });
+        }
+        legs[n - 1] = new Leg[n];
+        
+        for (Future<Void> result : solverPool.invokeAll(rows)) {
+            try {
+                result.get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException("Route search was interrupted", e);
+            } catch (ExecutionException e) {
+                throw new IllegalStateException("Route search failed", e.getCause());
+            }
+        }
+        return legs;
+    }
+    
+    /**
+     * Look up a leg in the precomputed distance table
+     * 
+     * @param distanceTable table of the pinned state
+     * @param source source node id
+     * @param target target node id
+     * @return shortest leg, or null if unreachable
+     */
+    private static Leg tableLeg(DistanceTable distanceTable, int source, int target) {
+        int[] path = distanceTable.path(source, target);
+        return path == null ? null : new Leg(distanceTable.distance(source, target), path);
+    }
+    
+    private boolean usesHierarchy(State state) {
+        return searchMode == SearchMode.CH && state.contractionHierarchy != null;
+    }
+    
+    /**
+     * Answer a leg from the contraction hierarchy
+     * 
+     * @param contractionHierarchy hierarchy of the pinned state
+     * @param source source node id
+     * @param target target node id
+     * @return shortest leg, or null if unreachable
+     */
+    private Leg hierarchyLeg(ContractionHierarchy contractionHierarchy, int source, int target) {
+        ContractionHierarchy.Result result = contractionHierarchy.query(source, target);
+        metrics.recordSearch(result.getSettledCount(), result.getRelaxedCount(), result.getPushCount());
+        return result.isReachable() ? new Leg(result.getDistance(), result.getPath()) : null;
+    }
+    
+    /**
+     * Get the complete shortest-path tree of a source from the cache, computing it on a miss
+     * 
+     * @param cache tree cache read once by the caller
+     * @param graph graph pinned for this query
+     * @param source source node id
+     * @return shortest-path tree
+     */
+    private ShortestPathTree cachedTree(ShortestPathTreeCache cache, CompactGraph graph, int source) {
+        ShortestPathTree tree = cache.get(graph, source);
+        metrics.recordTreeCacheLookup(tree != null);
+        if (tree == null) {
+            tree = ShortestPathTree.compute(graph, source, metrics);
+            cache.put(graph, tree);
+        }
+        return tree;
+    }
+    
+    /**
+     * Get the complete shortest-path tree of a source if it is cached
+     * 
+     * @param graph graph pinned for this query
+     * @param source source node id
+     * @return shortest-path tree, or null without a cache or on a miss
+     */
+    private ShortestPathTree cachedTreeIfPresent(CompactGraph graph, int source) {
+        ShortestPathTreeCache cache = treeCache;
+        if (cache == null) {
+            return null;
+        }
+        ShortestPathTree tree = cache.get(graph, source);
+        metrics.recordTreeCacheLookup(tree != null);
+        return tree;
+    }
+    
+    /**
+     * Read a leg out of a shortest-path tree
+     * 
+     * @param tree tree rooted at the leg's source
+     * @param target target node id
+     * @return shortest leg, or null if unreachable
+     */
+    private static Leg treeLeg(ShortestPathTree tree, int target) {
+        int[] path = tree.path(target);
+        return path == null ? null : new Leg(tree.distance(target), path);
+    }
+    
+    /**
+     * Single-source Dijkstra that stops once every target has been settled
+     * 
+     * @param graph graph to search
+     * @param source source node id
+     * @param targets target node ids
+     * @return shortest leg to each target, or null where a target is unreachable
+     */
+    private Leg[] searchLegs(CompactGraph graph, int source, int[] targets) {
+        try (SearchWorkspace workspace = SearchWorkspace.begin(graph.nodeCount())) {
+            int remaining = 0;
+            for (int target : targets) {
+                if (workspace.mark(target)) {
+                    remaining++;
+                }
+            }
+            dijkstra(graph, workspace, source, remaining);
+            
+            // Reconstruct the path to each target from the predecessor tree
+            Leg[] legs = new Leg[targets.length];
+            for (int k = 0; k < targets.length; k++) {
+                int target = targets[k];
+                if (workspace.distance(0, target) == Integer.MAX_VALUE) {
+                    continue;
+                }
+                workspace.tracePath(0, target);
+                legs[k] = new Leg(workspace.distance(0, target), Arrays.copyOf(workspace.getPath(), workspace.getPathLength()));
+            }
+            return legs;
+        }
+    }
+    
+    /**
+     * Dijkstra's algorithm on the forward side of a workspace
+     * 
+     * @param graph graph to search
+     * @param workspace workspace started for this query, with the targets marked
+     * @param source source node id
+     * @param targetCount number of marked targets; the search stops once all are settled
+     */
+    private void dijkstra(CompactGraph graph, SearchWorkspace workspace, int source, int targetCount) {
+        IndexedMinHeap heap = workspace.heap(0);
+        int remaining = targetCount;
+        workspace.reach(0, source, 0, -1);
+        heap.push(source, 0);
+        
+        // Main loop of Dijkstra's algorithm
+        int settled = 0;
+        int relaxed = 0;
+        int pushes = 1;
+        while (!heap.isEmpty()) {
+            int u = heap.poll();
+            int currentDistance = workspace.distance(0, u);
+            settled++;
+            
+            // If every target is reached, end search
+            if (workspace.isMarked(u) && --remaining == 0) {
                 break;
             }
             
             // Check all neighbors
-            for (String neighbor : graph.getNeighbors(currentCity)) {
-                int edgeDistance = graph.getDistance(currentCity, neighbor);
-                int newDistance = currentDistance + edgeDistance;
+            int[] targetIds = graph.targets(u);
+            int[] weights = graph.weights(u);
+            relaxed += graph.end(u) - graph.begin(u);
+            for (int e = graph.begin(u), edgeEnd = graph.end(u); e < edgeEnd; e++) {
+                int v = targetIds[e];
+                int newDistance = currentDistance + weights[e];
                 
                 // If a shorter path is found, update
-                if (newDistance < distances.get(neighbor)) {
-                    distances.put(neighbor, newDistance);
-                    predecessors.put(neighbor, currentCity);
-                    priorityQueue.add(new Node(neighbor, newDistance));
+                if (newDistance < workspace.distance(0, v)) {
+                    workspace.reach(0, v, newDistance, u);
+                    heap.push(v, newDistance);
+                    pushes++;
                 }
             }
         }
+        lastSettledCount = settled;
+        metrics.recordSearch(settled, relaxed, pushes);
+    }
+    
+    /**
+     * Bidirectional Dijkstra. The graph is undirected, so the backward search from the
+     * target uses the same adjacency. Each step expands the side with the smaller queue,
+     * and the search stops once the two queue minima add up to at least the best path seen.
+     * 
+     * @param graph graph to search
+     * @param workspace workspace started for this query; receives the path
+     * @param source source node id
+     * @param target target node id
+     * @return shortest distance, or -1 if the target is unreachable
+     */
+    private int bidirectionalSearch(CompactGraph graph, SearchWorkspace workspace, int source, int target) {
+        workspace.reach(0, source, 0, -1);
+        workspace.heap(0).push(source, 0);
+        workspace.reach(1, target, 0, -1);
+        workspace.heap(1).push(target, 0);
         
-        // If no path to destination
-        if (!predecessors.containsKey(end) && !start.equals(end)) {
-            throw new IllegalStateException("There is no path from " + start + " to " + end);
+        // Best path found so far runs source ... meetFrom - meetTo ... target
+        long best = Long.MAX_VALUE;
+        int meetFrom = -1;
+        int meetTo = -1;
+        int settled = 0;
+        int relaxed = 0;
+        int pushes = 2;
+        while (!workspace.heap(0).isEmpty() && !workspace.heap(1).isEmpty()) {
+            if ((long) workspace.heap(0).minKey() + workspace.heap(1).minKey() >= best) {
+                break;
+            }
+            
+            // Expand the smaller frontier
+            int side = workspace.heap(0).size() <= workspace.heap(1).size() ? 0 : 1;
+            int u = workspace.heap(side).poll();
+            int distanceU = workspace.distance(side, u);
+            settled++;
+            
+            int[] targetIds = graph.targets(u);
+            int[] weights = graph.weights(u);
+            relaxed += graph.end(u) - graph.begin(u);
+            for (int e = graph.begin(u), edgeEnd = graph.end(u); e < edgeEnd; e++) {
+                int v = targetIds[e];
+                int newDistance = distanceU + weights[e];
+                if (newDistance < workspace.distance(side, v)) {
+                    workspace.reach(side, v, newDistance, u);
+                    workspace.heap(side).push(v, newDistance);
+                    pushes++;
+                }
+                // The edge joins the two searches
+                int otherDistance = workspace.distance(1 - side, v);
+                if (otherDistance != Integer.MAX_VALUE && (long) newDistance + otherDistance < best) {
+                    best = (long) newDistance + otherDistance;
+                    meetFrom = side == 0 ? u : v;
+                    meetTo = side == 0 ? v : u;
+                }
+            }
         }
+        lastSettledCount = settled;
+        metrics.recordSearch(settled, relaxed, pushes);
         
-        // Reconstruct path
-        List<String> path = new ArrayList<>();
-        String current = end;
+        if (source == target) {
+            workspace.tracePath(0, source);
+            return 0;
+        }
+        if (meetFrom == -1) {
+            return -1;
+        }
         
-        while (current != null) {
-            path.add(0, current);
-            current = predecessors.get(current);
+        // Forward half up to meetFrom, then the backward tree from meetTo to the target
+        workspace.tracePath(0, meetFrom);
+        workspace.appendBackwardPath(meetTo);
+        return (int) best;
+    }
+    
+    /**
+     * A* search with landmark lower bounds (ALT). The bounds are consistent,
+     * so every node is settled at most once and the result equals Dijkstra's.
+     * 
+     * @param graph graph to search
+     * @param workspace workspace started for this query; receives the path
+     * @param landmarks landmark index built on the same graph
+     * @param source source node id
+     * @param target target node id
+     * @return shortest distance, or -1 if the target is unreachable
+     */
+    private int altSearch(CompactGraph graph, SearchWorkspace workspace, LandmarkIndex landmarks, int source, int target) {
+        // Heap is keyed by distance so far plus the lower bound to the target
+        IndexedMinHeap heap = workspace.heap(0);
+        int sourceBound = landmarks.lowerBound(source, target);
+        if (sourceBound == Integer.MAX_VALUE) {
+            lastSettledCount = 0;
+            return -1;
         }
+        workspace.reach(0, source, 0, -1);
+        heap.push(source, sourceBound);
         
-        // Create Route object
-        Route route = new Route();
-        route.getCities().addAll(path);
-        route.setTotalDistance(distances.get(end));
+        int settled = 0;
+        int relaxed = 0;
+        int pushes = 1;
+        while (!heap.isEmpty()) {
+            int u = heap.poll();
+            workspace.settle(0, u);
+            settled++;
+            
+            if (u == target) {
+                break;
+            }
+            
+            int distanceU = workspace.distance(0, u);
+            int[] targetIds = graph.targets(u);
+            int[] weights = graph.weights(u);
+            relaxed += graph.end(u) - graph.begin(u);
+            for (int e = graph.begin(u), edgeEnd = graph.end(u); e < edgeEnd; e++) {
+                int v = targetIds[e];
+                int newDistance = distanceU + weights[e];
+                if (newDistance < workspace.distance(0, v) && !workspace.isSettled(0, v)) {
+                    int bound = landmarks.lowerBound(v, target);
+                    if (bound == Integer.MAX_VALUE) {
+                        continue;
+                    }
+                    workspace.reach(0, v, newDistance, u);
+                    // Both halves fit in an int but their sum may not; keys that large order last anyway
+                    heap.push(v, (int) Math.min(Integer.MAX_VALUE, (long) newDistance + bound));
+                    pushes++;
+                }
+            }
+        }
+        lastSettledCount = settled;
+        metrics.recordSearch(settled, relaxed, pushes);
         
-        return route;
+        if (!workspace.isSettled(0, target)) {
+            return -1;
+        }
+        workspace.tracePath(0, target);
+        return workspace.distance(0, target);
     }
     
     public void setDataLoader(DataLoader dataLoader) {
         this.dataLoader = dataLoader;
     }
     
-    // Internal class: Node for Dijkstra's algorithm
-    private static class Node {
-        private String city;
-        private int distance;
+    /**
+     * Answer shortest-path queries from a precomputed all-pairs table instead of searching
+     * @param distanceTable table opened for this planner's graph, or null to search again
+     */
+    public void setDistanceTable(DistanceTable distanceTable) {
+        updateLock.lock();
+        try {
+            State current = upToDate();
+            if (distanceTable != null && distanceTable.getNodeCount() != current.graph.nodeCount()) {
+                throw new IllegalArgumentException("The distance table does not match the map");
+            }
+            state = new State(current.graph, distanceTable, current.landmarks, current.contractionHierarchy,
+                    current.sourceVersion, current.snapshot);
+        } finally {
+            updateLock.unlock();
+        }
+    }
+    
+    /**
+     * Keep complete shortest-path trees of recent sources, so repeated sources skip the search.
+     * Matrix queries fill the cache; point queries use the trees it already has.
+     * @param treeCache cache to use, or null to search every time
+     */
+    public void setTreeCache(ShortestPathTreeCache treeCache) {
+        if (treeCache != null) {
+            treeCache.attach(currentState().graph);
+        }
+        this.treeCache = treeCache;
+    }
+    
+    public ShortestPathTreeCache getTreeCache() {
+        return treeCache;
+    }
+    
+    public DataLoader getDataLoader() {
+        return dataLoader;
+    }
+    
+    /**
+     * Choose the algorithm for single shortest-path queries
+     * @param searchMode search mode; ALT needs landmarks from setLandmarks or buildLandmarks
+     */
+    public void setSearchMode(SearchMode searchMode) {
+        this.searchMode = searchMode;
+    }
+    
+    public SearchMode getSearchMode() {
+        return searchMode;
+    }
+    
+    /**
+     * Use a landmark index for ALT search
+     * @param landmarks index built on this planner's graph, or null to drop it
+     */
+    public void setLandmarks(LandmarkIndex landmarks) {
+        updateLock.lock();
+        try {
+            State current = upToDate();
+            if (landmarks != null && landmarks.getGraph() != current.graph) {
+                throw new IllegalArgumentException("The landmarks were built for a different map");
+            }
+            state = new State(current.graph, current.distanceTable, landmarks, current.contractionHierarchy,
+                    current.sourceVersion, current.snapshot);
+        } finally {
+            updateLock.unlock();
+        }
+    }
+    
+    /**
+     * Choose landmarks on the current graph and switch to ALT search
+     * @param count largest number of landmarks, see LandmarkIndex.build
+     */
+    public void buildLandmarks(int count) {
+        setLandmarks(LandmarkIndex.build(currentState().graph, count));
+        setSearchMode(SearchMode.ALT);
+    }
+    
+    /**
+     * Use a contraction hierarchy for shortest-path queries and switch to CH search
+     * @param contractionHierarchy hierarchy built or loaded for this planner's graph
+     */
+    public void setContractionHierarchy(ContractionHierarchy contractionHierarchy) {
+        updateLock.lock();
+        try {
+            State current = upToDate();
+            if (contractionHierarchy.getGraph() != current.graph) {
+                throw new IllegalArgumentException("The contraction hierarchy was built for a different map");
+            }
+            state = new State(current.graph, current.distanceTable, current.landmarks, contractionHierarchy,
+                    current.sourceVersion, current.snapshot);
+        } finally {
+            updateLock.unlock();
+        }
+        setSearchMode(SearchMode.CH);
+    }
+    
+    /**
+     * Get the number of nodes settled by the most recent point-to-point search
+     * @return settled node count
+     */
+    public int getLastSettledCount() {
+        return lastSettledCount;
+    }
+    
+    /**
+     * Get the counters of this planner's queries; copies made with the copy constructor share them
+     * @return metrics
+     */
+    public PlannerMetrics getMetrics() {
+        return metrics;
+    }
+    
+    /**
+     * Record into other metrics, e.g. to add up several planners
+     * @param metrics metrics to record into
+     */
+    public void setMetrics(PlannerMetrics metrics) {
+        if (metrics == null) {
+            throw new IllegalArgumentException("Metrics must not be null");
+        }
+        this.metrics = metrics;
+    }
+    
+    /**
+     * Set the largest number of intermediate cities solved exactly; above it a heuristic is used
+     * @param maxExactStops stop limit, at most HeldKarpSolver.MAX_STOPS
+     */
+    public void setMaxExactStops(int maxExactStops) {
+        if (maxExactStops < 0 || maxExactStops > HeldKarpSolver.MAX_STOPS) {
+            throw new IllegalArgumentException("The exact stop limit must be between 0 and " + HeldKarpSolver.MAX_STOPS);
+        }
+        this.maxExactStops = maxExactStops;
+    }
+    
+    /**
+     * Set the time the local search may spend on a route with more stops than the exact limit
+     * @param localSearchMillis time budget in milliseconds
+     */
+    public void setLocalSearchMillis(long localSearchMillis) {
+        if (localSearchMillis < 0) {
+            throw new IllegalArgumentException("The local search time budget must not be negative");
+        }
+        this.localSearchMillis = localSearchMillis;
+    }
+    
+    /**
+     * Set the pool the exact solver runs its subset layers on, and the local search its workers
+     * @param solverPool fork/join pool
+     */
+    public void setSolverPool(ForkJoinPool solverPool) {
+        this.solverPool = solverPool;
+    }
+    
+    /**
+     * Get the graph queries currently run on
+     * @return latest compact graph
+     */
+    public CompactGraph getGraph() {
+        return currentState().graph;
+    }
+    
+    // Bring the state up to date while holding the update lock
+    private State upToDate() {
+        if (versionedGraph != null) {
+            catchUp(versionedGraph.current());
+        } else if (sourceGraph != null) {
+            catchUp();
+        }
+        return state;
+    }
+    
+    // Graph and the structures derived from it, replaced as a whole so that a query
+    // pins one consistent version of everything it reads
+    private static class State {
+        private final CompactGraph graph;
+        private final DistanceTable distanceTable;
+        private final LandmarkIndex landmarks;
+        private final ContractionHierarchy contractionHierarchy;
+        // Version of the Graph or VersionedGraph the graph was taken from
+        private final long sourceVersion;
+        // Snapshot the graph belongs to, for planners that follow a VersionedGraph
+        private final VersionedGraph.Snapshot snapshot;
         
-        public Node(String city, int distance) {
-            this.city = city;
-            this.distance = distance;
+        State(CompactGraph graph, long sourceVersion, VersionedGraph.Snapshot snapshot) {
+            this(graph, null, null, null, sourceVersion, snapshot);
         }
         
-        public String getCity() {
-            return city;
+        State(CompactGraph graph, DistanceTable distanceTable, LandmarkIndex landmarks,
+              ContractionHierarchy contractionHierarchy, long sourceVersion, VersionedGraph.Snapshot snapshot) {
+            this.graph = graph;
+            this.distanceTable = distanceTable;
+            this.landmarks = landmarks;
+            this.contractionHierarchy = contractionHierarchy;
+            this.sourceVersion = sourceVersion;
+            this.snapshot = snapshot;
         }
+    }
+    
+    // Internal class: shortest path between two nodes, as node ids
+    private static class Leg {
+        private final int distance;
+        private final int[] path;
         
-        public int getDistance() {
-            return distance;
+        Leg(int distance, int[] path) {
+            this.distance = distance;
+            this.path = path;
         }
     }
-} 
\ No newline at end of file
+}
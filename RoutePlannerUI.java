@@ -1,6 +1,7 @@
 import javax.swing.*;
 import java.awt.*;
 import java.awt.event.ActionEvent;
+import java.io.IOException;
 import java.util.Arrays;
 import java.util.List;
 
@@ -21,9 +22,22 @@ public class RoutePlannerUI extends JFrame {
     private void initializeData() {
         try {
             dataLoader = new DataLoader();
-            dataLoader.loadAttractions("CW3_Data_Files/attractions.csv");
-            dataLoader.loadRoads("CW3_Data_Files/roads.csv");
-            Graph graph = dataLoader.buildGraph();
+            String snapshot = "CW3_Data_Files/routeplanner.snapshot";
+            CompactGraph graph;
+            if (dataLoader.loadSnapshot(snapshot, "CW3_Data_Files/attractions.csv", "CW3_Data_Files/roads.csv")) {
+                graph = dataLoader.buildCompactGraph();
+            } else {
+                // Parse both files in parallel, then keep a snapshot for the next start
+                LoadingPipeline.Timings timings = LoadingPipeline.loadInParallel(dataLoader, "CW3_Data_Files/attractions.csv", "CW3_Data_Files/roads.csv");
+                System.out.println(timings);
+                graph = timings.getGraph();
+                try {
+                    dataLoader.writeSnapshot(snapshot, graph);
+                } catch (IOException e) {
+                    // Startup still works without a snapshot, it is just slower next time
+                    System.out.println("The snapshot could not be written: " + e.getMessage());
+                }
+            }
             planner = new RoutePlanner(graph, dataLoader);
         } catch (Exception e) {
             JOptionPane.showMessageDialog(this, "Data loading failed: " + e.getMessage(), "Error", JOptionPane.ERROR_MESSAGE);
@@ -0,0 +1,270 @@
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Headless HTTP front end for a RoutePlanner, on the JDK's built-in HTTP server.
+ *
+ * Endpoints (GET, parameters in the query string, JSON responses):
+ *   /route?from=A&to=B                                   shortest path
+ *   /optimal?from=A&to=B&attraction=X&attraction=Y       findOptimalRoute; attractions may also be
+ *                                                        given as attractions=X,Y
+ *   /stats                                               request counters, and the planner's metrics
+ *
+ * Each request runs on its own virtual thread (a cached platform pool before Java 21). At most
+ * maxConcurrent plans are computed at once; a request arriving while all permits are taken is
+ * shed at once with 503 instead of queueing. A plan that takes longer than the timeout is
+ * answered with 504; it keeps its permit until it actually finishes, so slow plans also reduce
+ * the number of new ones admitted.
+ */
+public class RouteServer {
+    private final RoutePlanner planner;
+    private final int maxConcurrent;
+    private final long timeoutMillis;
+    private final Semaphore permits;
+    private ExecutorService executor;
+    private HttpServer server;
+
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private final AtomicInteger peakInFlight = new AtomicInteger();
+    private final LongAdder served = new LongAdder();
+    private final LongAdder rejected = new LongAdder();
+    private final LongAdder timedOut = new LongAdder();
+    private final LongAdder failed = new LongAdder();
+    private final LongAdder totalNanos = new LongAdder();
+
+    /**
+     * @param planner planner to answer from; its queries are thread-safe
+     * @param maxConcurrent number of plans computed at once
+     * @param timeoutMillis time after which a request is answered with 504
+     */
+    public RouteServer(RoutePlanner planner, int maxConcurrent, long timeoutMillis) {
+        if (maxConcurrent < 1) {
+            throw new IllegalArgumentException("The concurrency limit must be at least 1");
+        }
+        if (timeoutMillis < 1) {
+            throw new IllegalArgumentException("The timeout must be positive");
+        }
+        this.planner = planner;
+        this.maxConcurrent = maxConcurrent;
+        this.timeoutMillis = timeoutMillis;
+        this.permits = new Semaphore(maxConcurrent);
+    }
+
+    /**
+     * Start listening
+     * @param address address to bind, e.g. new InetSocketAddress("localhost", 8080)
+     * @return the address actually bound (useful with port 0)
+     */
+    public synchronized InetSocketAddress start(InetSocketAddress address) throws IOException {
+        if (server != null) {
+            throw new IllegalStateException("The server is already running");
+        }
+        server = HttpServer.create(address, 1024);
+        executor = BatchPlanner.virtualThreadExecutor();
+        server.createContext("/route", exchange -> handle(exchange, false));
+        server.createContext("/optimal", exchange -> handle(exchange, true));
+        server.createContext("/stats", this::handleStats);
+        server.setExecutor(executor);
+        server.start();
+        return server.getAddress();
+    }
+
+    /**
+     * Stop listening, giving open exchanges up to a second to finish
+     */
+    public synchronized void stop() {
+        if (server != null) {
+            server.stop(1);
+            executor.shutdownNow();
+            server = null;
+        }
+    }
+
+    private void handle(HttpExchange exchange, boolean optimal) throws IOException {
+        try {
+            if (!exchange.getRequestMethod().equals("GET")) {
+                send(exchange, 405, error("Only GET is supported"));
+                return;
+            }
+            Map<String, List<String>> parameters = parseQuery(exchange.getRequestURI().getRawQuery());
+            String from = first(parameters, "from");
+            String to = first(parameters, "to");
+            if (from == null || to == null) {
+                send(exchange, 400, error("Both from and to are required"));
+                return;
+            }
+            List<String> attractions = optimal ? attractions(parameters) : null;
+
+            // Shed load instead of queueing once every permit is taken
+            if (!permits.tryAcquire()) {
+                rejected.increment();
+                exchange.getResponseHeaders().set("Retry-After", "1");
+                send(exchange, 503, error("The server is busy"));
+                return;
+            }
+            long start = System.nanoTime();
+            int current = inFlight.incrementAndGet();
+            peakInFlight.accumulateAndGet(current, Math::max);
+            Future<Route> plan;
+            try {
+                plan = executor.submit(() -> {
+                    try {
+                        return planner.findOptimalRoute(from, to, attractions);
+                    } finally {
+                        inFlight.decrementAndGet();
+                        permits.release();
+                    }
+                });
+            } catch (RuntimeException e) {
+                inFlight.decrementAndGet();
+                permits.release();
+                throw e;
+            }
+
+            Route route;
+            try {
+                route = plan.get(timeoutMillis, TimeUnit.MILLISECONDS);
+            } catch (TimeoutException e) {
+                timedOut.increment();
+                send(exchange, 504, error("The route could not be planned within " + timeoutMillis + " ms"));
+                return;
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                send(exchange, 503, error("The server is shutting down"));
+                return;
+            } catch (ExecutionException e) {
+                failed.increment();
+                Throwable cause = e.getCause();
+                // Unknown cities and spots are the caller's mistake, a missing path is simply not found
+                int status = cause instanceof IllegalArgumentException ? 400 : cause instanceof IllegalStateException ? 404 : 500;
+                send(exchange, status, error(cause.getMessage() == null ? cause.toString() : cause.getMessage()));
+                return;
+            }
+            served.increment();
+            totalNanos.add(System.nanoTime() - start);
+            send(exchange, 200, routeJson(route));
+        } catch (RuntimeException e) {
+            failed.increment();
+            send(exchange, 500, error(String.valueOf(e)));
+        }
+    }
+
+    private void handleStats(HttpExchange exchange) throws IOException {
+        send(exchange, 200, statsJson());
+    }
+
+    /**
+     * Get the request counters and the planner's metrics as JSON
+     * @return JSON object
+     */
+    public String statsJson() {
+        long count = served.sum();
+        return "{\"maxConcurrent\":" + maxConcurrent
+                + ",\"timeoutMillis\":" + timeoutMillis
+                + ",\"inFlight\":" + inFlight.get()
+                + ",\"peakInFlight\":" + peakInFlight.get()
+                + ",\"served\":" + count
+                + ",\"rejected\":" + rejected.sum()
+                + ",\"timedOut\":" + timedOut.sum()
+                + ",\"failed\":" + failed.sum()
+                + ",\"meanMillis\":" + (count == 0 ? 0 : String.format(Locale.ROOT, "%.3f", totalNanos.sum() / 1e6 / count))
+                + ",\"planner\":" + planner.getMetrics().toJson()
+                + "}";
+    }
+
+    private static List<String> attractions(Map<String, List<String>> parameters) {
+        List<String> attractions = new ArrayList<>();
+        for (String attraction : parameters.getOrDefault("attraction", new ArrayList<>())) {
+            attractions.add(attraction.trim());
+        }
+        for (String list : parameters.getOrDefault("attractions", new ArrayList<>())) {
+            for (String attraction : list.split(",")) {
+                if (!attraction.trim().isEmpty()) {
+                    attractions.add(attraction.trim());
+                }
+            }
+        }
+        return attractions;
+    }
+
+    private static Map<String, List<String>> parseQuery(String query) {
+        Map<String, List<String>> parameters = new LinkedHashMap<>();
+        if (query == null || query.isEmpty()) {
+            return parameters;
+        }
+        for (String pair : query.split("&")) {
+            int equals = pair.indexOf('=');
+            String name = URLDecoder.decode(equals == -1 ? pair : pair.substring(0, equals), StandardCharsets.UTF_8);
+            String value = equals == -1 ? "" : URLDecoder.decode(pair.substring(equals + 1), StandardCharsets.UTF_8);
+            parameters.computeIfAbsent(name, k -> new ArrayList<>()).add(value);
+        }
+        return parameters;
+    }
+
+    private static String first(Map<String, List<String>> parameters, String name) {
+        List<String> values = parameters.get(name);
+        return values == null || values.isEmpty() ? null : values.get(0).trim();
+    }
+
+    private static String routeJson(Route route) {
+        StringBuilder json = new StringBuilder("{\"distance\":").append(route.getTotalDistance()).append(",\"cities\":[");
+        List<String> cities = route.getCities();
+        for (int i = 0; i < cities.size(); i++) {
+            if (i > 0) {
+                json.append(',');
+            }
+            quote(json, cities.get(i));
+        }
+        return json.append("]}").toString();
+    }
+
+    private static String error(String message) {
+        StringBuilder json = new StringBuilder("{\"error\":");
+        quote(json, message);
+        return json.append('}').toString();
+    }
+
+    // Append a JSON string literal
+    static void quote(StringBuilder json, String text) {
+        json.append('"');
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (c == '"' || c == '\\') {
+                json.append('\\').append(c);
+            } else if (c < 0x20) {
+                json.append(String.format("\\u%04x", (int) c));
+            } else {
+                json.append(c);
+            }
+        }
+        json.append('"');
+    }
+
+    private static void send(HttpExchange exchange, int status, String body) throws IOException {
+        byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", "application/json; charset=utf-8");
+        exchange.sendResponseHeaders(status, bytes.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(bytes);
+        }
+    }
+}
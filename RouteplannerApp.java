@@ -3,21 +3,80 @@
 import java.io.BufferedReader;
 import java.io.IOException;
 import java.io.InputStreamReader;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
 
 public class RouteplannerApp {
+    // Binary copy of the loaded data, used instead of the CSV files while it is newer than them
+    private static final String SNAPSHOT_FILE = "routeplanner.snapshot";
+    
     public static void main(String[] args) {
         try {
             // Load data
             System.out.println("Data is being loaded...");
             DataLoader dataLoader = new DataLoader();
-            dataLoader.loadAttractions("attractions.csv");
-            dataLoader.loadRoads("roads.csv");
-            
-            Graph graph = dataLoader.buildGraph();
+            CompactGraph graph;
+            if (dataLoader.loadSnapshot(SNAPSHOT_FILE, "attractions.csv", "roads.csv")) {
+                graph = dataLoader.buildCompactGraph();
+            } else {
+                // Parse both files in parallel, then keep a snapshot for the next start
+                LoadingPipeline.Timings timings = LoadingPipeline.loadInParallel(dataLoader, "attractions.csv", "roads.csv");
+                System.out.println(timings);
+                graph = timings.getGraph();
+                try {
+                    dataLoader.writeSnapshot(SNAPSHOT_FILE, graph);
+                } catch (IOException e) {
+                    // Startup still works without a snapshot, it is just slower next time
+                    System.out.println("The snapshot could not be written: " + e.getMessage());
+                }
+            }
             RoutePlanner planner = new RoutePlanner(graph, dataLoader);
             
+            // Optional precomputed all-pairs table: --distance-table <file>
+            String tableArgument = option(args, "--distance-table");
+            if (tableArgument != null) {
+                Path tableFile = Paths.get(tableArgument);
+                DistanceTable table = null;
+                if (Files.exists(tableFile)) {
+                    try {
+                        table = DistanceTable.open(tableFile, graph);
+                    } catch (IOException e) {
+                        // Stale or damaged: computed for other data, or from an older version
+                        System.out.println("The distance table cannot be used and will be recomputed: " + e.getMessage());
+                    }
+                }
+                if (table == null) {
+                    System.out.println("Precomputing distance table...");
+                    DistanceTable.precompute(graph, tableFile, ForkJoinPool.commonPool());
+                    table = DistanceTable.open(tableFile, graph);
+                }
+                planner.setDistanceTable(table);
+            }
+            
+            // Optional road closures and changes to replay: --updates <file> (see RoadUpdateLog)
+            String updatesArgument = option(args, "--updates");
+            if (updatesArgument != null) {
+                List<RoadUpdate> updates = RoadUpdateLog.read(Paths.get(updatesArgument));
+                planner.applyUpdates(updates);
+                System.out.println(updates.size() + " road updates have been applied");
+            }
+            
+            // Headless mode: --server <port> [--max-concurrent <n>] [--timeout-ms <ms>] [--load-test <clients>]
+            //                [--metrics-seconds <s>]
+            String serverArgument = option(args, "--server");
+            if (serverArgument != null) {
+                serve(planner, dataLoader, args, Integer.parseInt(serverArgument));
+                return;
+            }
+            
             // User interaction
             BufferedReader reader = new BufferedReader(new InputStreamReader(System.in));
             
@@ -66,4 +125,58 @@ public class RouteplannerApp {
             e.printStackTrace();
         }
     }
+    
+    /**
+     * Run the HTTP service until the process is stopped, or run a load test against it
+     * 
+     * @param planner configured planner
+     * @param dataLoader loaded data, for the load test's cities and scenic spots
+     * @param args command-line arguments
+     * @param port port to listen on, 0 for any free port
+     */
+    private static void serve(RoutePlanner planner, DataLoader dataLoader, String[] args, int port) throws IOException {
+        String limitArgument = option(args, "--max-concurrent");
+        String timeoutArgument = option(args, "--timeout-ms");
+        int maxConcurrent = limitArgument == null ? 4 * Runtime.getRuntime().availableProcessors() : Integer.parseInt(limitArgument);
+        long timeoutMillis = timeoutArgument == null ? 5000 : Long.parseLong(timeoutArgument);
+        // Planner metrics are always available over JMX; --metrics-seconds also prints them periodically
+        planner.getMetrics().register("server");
+        String metricsArgument = option(args, "--metrics-seconds");
+        if (metricsArgument != null) {
+            planner.getMetrics().startPeriodicDump(System.out, Long.parseLong(metricsArgument), TimeUnit.SECONDS);
+        }
+        RouteServer server = new RouteServer(planner, maxConcurrent, timeoutMillis);
+        InetSocketAddress address = server.start(new InetSocketAddress("localhost", port));
+        System.out.println("Serving on http://localhost:" + address.getPort() + " (/route, /optimal, /stats)");
+        
+        // --load-test <clients>: drive the server from this process for ten seconds, then stop
+        String loadArgument = option(args, "--load-test");
+        if (loadArgument == null) {
+            return;
+        }
+        List<String> attractions = new ArrayList<>();
+        for (String city : dataLoader.getCities()) {
+            attractions.addAll(dataLoader.getAttractionsForLocation(city));
+        }
+        RouteLoadTest load = new RouteLoadTest(URI.create("http://localhost:" + address.getPort()),
+                dataLoader.getCities(), attractions, 3);
+        try {
+            System.out.println(load.run(Integer.parseInt(loadArgument), 10_000, 1));
+            System.out.println(server.statsJson());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            server.stop();
+        }
+    }
+    
+    // Value following a command-line option, or null if the option is not given
+    private static String option(String[] args, String name) {
+        for (int i = 0; i + 1 < args.length; i++) {
+            if (args[i].equals(name)) {
+                return args[i + 1];
+            }
+        }
+        return null;
+    }
 } 
\ No newline at end of file
@@ -0,0 +1,190 @@
+import java.util.Arrays;
+
+/**
+ * Reusable arrays for shortest-path searches, taken from a shared WorkspacePool by begin and
+ * given back by close, so a query allocates nothing of graph size even on a fresh thread.
+ *
+ * Distances, predecessors and marks are only valid where their stamp equals the current
+ * query's stamp, so starting a query costs O(1) instead of refilling arrays of graph size.
+ * There are two sides so that bidirectional searches can keep forward and backward state.
+ */
+public class SearchWorkspace implements AutoCloseable {
+    private static final WorkspacePool<SearchWorkspace> POOL = new WorkspacePool<>();
+
+    private final int capacity;
+    private final int[][] distances;
+    private final int[][] predecessors;
+    private final int[][] reachedStamps;
+    private final int[][] settledStamps;
+    private final int[] markStamps;
+    private final IndexedMinHeap[] heaps;
+    private int stamp = 0;
+    // Between begin and close; guards against giving the workspace back twice
+    private boolean inUse = false;
+
+    // Output buffer for the path of the last point-to-point search
+    private int[] path = new int[64];
+    private int pathLength = 0;
+
+    private SearchWorkspace(int capacity) {
+        this.capacity = capacity;
+        distances = new int[2][capacity];
+        predecessors = new int[2][capacity];
+        reachedStamps = new int[2][capacity];
+        settledStamps = new int[2][capacity];
+        markStamps = new int[capacity];
+        heaps = new IndexedMinHeap[]{new IndexedMinHeap(capacity), new IndexedMinHeap(capacity)};
+    }
+
+    /**
+     * Take a workspace from the pool, started for a new query. Close it when the query is done.
+     * @param nodeCount number of nodes in the graph to search
+     * @return workspace with no reached nodes and empty heaps
+     */
+    public static SearchWorkspace begin(int nodeCount) {
+        SearchWorkspace workspace = POOL.acquire();
+        // A workspace too small for the graph (which grew) is dropped
+        if (workspace == null || workspace.capacity < nodeCount) {
+            workspace = new SearchWorkspace(nodeCount);
+        }
+        workspace.inUse = true;
+        workspace.nextStamp();
+        return workspace;
+    }
+
+    /**
+     * Give the workspace back to the pool; it must not be used afterwards
+     */
+    @Override
+    public void close() {
+        if (inUse) {
+            inUse = false;
+            POOL.release(this);
+        }
+    }
+
+    private void nextStamp() {
+        stamp++;
+        if (stamp == Integer.MAX_VALUE) {
+            // Stamps wrapped around; clear them once so old values cannot match
+            for (int side = 0; side < 2; side++) {
+                Arrays.fill(reachedStamps[side], 0);
+                Arrays.fill(settledStamps[side], 0);
+            }
+            Arrays.fill(markStamps, 0);
+            stamp = 1;
+        }
+        heaps[0].clear();
+        heaps[1].clear();
+        pathLength = 0;
+    }
+
+    /**
+     * Get the tentative distance of a node
+     * @param side 0 for forward, 1 for backward
+     * @param v node id
+     * @return distance, or Integer.MAX_VALUE if not reached in this query
+     */
+    public int distance(int side, int v) {
+        return reachedStamps[side][v] == stamp ? distances[side][v] : Integer.MAX_VALUE;
+    }
+
+    /**
+     * Get the predecessor of a reached node
+     * @param side 0 for forward, 1 for backward
+     * @param v node id
+     * @return predecessor id, or -1 for the search root
+     */
+    public int predecessor(int side, int v) {
+        return predecessors[side][v];
+    }
+
+    /**
+     * Record a (shorter) distance to a node
+     * @param side 0 for forward, 1 for backward
+     * @param v node id
+     * @param distance new distance
+     * @param predecessor node it was reached from, -1 for the search root
+     */
+    public void reach(int side, int v, int distance, int predecessor) {
+        reachedStamps[side][v] = stamp;
+        distances[side][v] = distance;
+        predecessors[side][v] = predecessor;
+    }
+
+    public boolean isSettled(int side, int v) {
+        return settledStamps[side][v] == stamp;
+    }
+
+    public void settle(int side, int v) {
+        settledStamps[side][v] = stamp;
+    }
+
+    /**
+     * Mark a node for this query only (used for search targets)
+     * @param v node id
+     * @return whether the node was not marked yet
+     */
+    public boolean mark(int v) {
+        if (markStamps[v] == stamp) {
+            return false;
+        }
+        markStamps[v] = stamp;
+        return true;
+    }
+
+    public boolean isMarked(int v) {
+        return markStamps[v] == stamp;
+    }
+
+    public IndexedMinHeap heap(int side) {
+        return heaps[side];
+    }
+
+    /**
+     * Write the tree path from the root of a side to v into the path buffer
+     * @param side 0 for forward, 1 for backward
+     * @param v node id reached on that side
+     */
+    public void tracePath(int side, int v) {
+        pathLength = 0;
+        for (int current = v; current != -1; current = predecessors[side][current]) {
+            appendPath(current);
+        }
+        // Collected from v back to the root, so reverse it
+        for (int i = 0, j = pathLength - 1; i < j; i++, j--) {
+            int swap = path[i];
+            path[i] = path[j];
+            path[j] = swap;
+        }
+    }
+
+    /**
+     * Append the backward tree path from v to the root of side 1 to the path buffer
+     * @param v node id reached by the backward search
+     */
+    public void appendBackwardPath(int v) {
+        for (int current = v; current != -1; current = predecessors[1][current]) {
+            appendPath(current);
+        }
+    }
+
+    private void appendPath(int node) {
+        if (pathLength == path.length) {
+            path = Arrays.copyOf(path, pathLength * 2);
+        }
+        path[pathLength++] = node;
+    }
+
+    /**
+     * Buffer holding the last traced path; only the first getPathLength() entries are valid
+     * @return path buffer (reused by the next query)
+     */
+    public int[] getPath() {
+        return path;
+    }
+
+    public int getPathLength() {
+        return pathLength;
+    }
+}
@@ -0,0 +1,162 @@
+import java.util.Arrays;
+
+/**
+ * Complete shortest-path tree from one source node, as distance and predecessor arrays
+ */
+public class ShortestPathTree {
+    private final int source;
+    private final int[] distances;
+    private final int[] predecessors;
+
+    ShortestPathTree(int source, int[] distances, int[] predecessors) {
+        this.source = source;
+        this.distances = distances;
+        this.predecessors = predecessors;
+    }
+
+    /**
+     * Run Dijkstra from a source until every reachable node is settled
+     *
+     * @param graph graph to search
+     * @param source source node id
+     * @return shortest-path tree
+     */
+    public static ShortestPathTree compute(CompactGraph graph, int source) {
+        return compute(graph, source, null);
+    }
+
+    /**
+     * Run Dijkstra from a source until every reachable node is settled, recording the search work
+     *
+     * @param graph graph to search
+     * @param source source node id
+     * @param metrics metrics to record the nodes settled, edges relaxed and heap pushes in, or null
+     * @return shortest-path tree
+     */
+    public static ShortestPathTree compute(CompactGraph graph, int source, PlannerMetrics metrics) {
+        int n = graph.nodeCount();
+        int[] distances = new int[n];
+        int[] predecessors = new int[n];
+        Arrays.fill(distances, Integer.MAX_VALUE);
+        Arrays.fill(predecessors, -1);
+
+        // The tree arrays are the result, so only the heap comes from a pooled workspace
+        try (SearchWorkspace workspace = SearchWorkspace.begin(n)) {
+            IndexedMinHeap heap = workspace.heap(0);
+            distances[source] = 0;
+            heap.push(source, 0);
+
+            int settled = 0;
+            int relaxed = 0;
+            int pushes = 1;
+            while (!heap.isEmpty()) {
+                int u = heap.poll();
+                int currentDistance = distances[u];
+                settled++;
+
+                int[] targets = graph.targets(u);
+                int[] weights = graph.weights(u);
+                relaxed += graph.end(u) - graph.begin(u);
+                for (int e = graph.begin(u), edgeEnd = graph.end(u); e < edgeEnd; e++) {
+                    int v = targets[e];
+                    int newDistance = currentDistance + weights[e];
+                    if (newDistance < distances[v]) {
+                        distances[v] = newDistance;
+                        predecessors[v] = u;
+                        heap.push(v, newDistance);
+                        pushes++;
+                    }
+                }
+            }
+            if (metrics != null) {
+                metrics.recordSearch(settled, relaxed, pushes);
+            }
+        }
+        return new ShortestPathTree(source, distances, predecessors);
+    }
+
+    public int getSource() {
+        return source;
+    }
+
+    /**
+     * Get the number of nodes the tree covers
+     * @return node count of the graph it was computed on
+     */
+    public int size() {
+        return distances.length;
+    }
+
+    /**
+     * Get the shortest distance to a node
+     * @param target node id
+     * @return distance, or Integer.MAX_VALUE if unreachable
+     */
+    public int distance(int target) {
+        return distances[target];
+    }
+
+    /**
+     * Get the predecessor of a node in the tree
+     * @param target node id
+     * @return predecessor id, or -1 for the source and unreachable nodes
+     */
+    public int predecessor(int target) {
+        return predecessors[target];
+    }
+
+    /**
+     * Get the path from the source to a node
+     * @param target node id
+     * @return node ids from source to target, or null if unreachable
+     */
+    public int[] path(int target) {
+        if (distances[target] == Integer.MAX_VALUE) {
+            return null;
+        }
+        int length = 0;
+        for (int current = target; current != -1; current = predecessors[current]) {
+            length++;
+        }
+        int[] path = new int[length];
+        for (int current = target; current != -1; current = predecessors[current]) {
+            path[--length] = current;
+        }
+        return path;
+    }
+
+    /**
+     * For every node, the first node after the source on its tree path
+     * @return first hop per node, or -1 for the source and unreachable nodes
+     */
+    public int[] firstHops() {
+        int n = distances.length;
+        int[] firstHops = new int[n];
+        Arrays.fill(firstHops, -2);
+        firstHops[source] = -1;
+        int[] chain = new int[n];
+        for (int v = 0; v < n; v++) {
+            if (firstHops[v] != -2) {
+                continue;
+            }
+            if (distances[v] == Integer.MAX_VALUE) {
+                firstHops[v] = -1;
+                continue;
+            }
+
+            // Climb until a node whose first hop is known, then fill in the chain
+            int length = 0;
+            int current = v;
+            while (firstHops[current] == -2 && predecessors[current] != source) {
+                chain[length++] = current;
+                current = predecessors[current];
+            }
+            int hop = firstHops[current] == -2 ? current : firstHops[current];
+            firstHops[current] = hop;
+            while (length > 0) {
+                firstHops[chain[--length]] = hop;
+            }
+        }
+        return firstHops;
+    }
+}
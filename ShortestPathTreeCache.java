@@ -0,0 +1,174 @@
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Thread-safe LRU cache of complete shortest-path trees, keyed by source node.
+ * The cache is bounded by an estimate of the bytes held by the cached trees,
+ * and is tied to one CompactGraph, the first one it is used with or the one given to attach.
+ * Lookups and additions for any other graph miss and are ignored, so queries still running on an
+ * older snapshot do not evict the trees of the current one; update moves the cache to an updated
+ * graph and keeps the trees that are still valid.
+ */
+public class ShortestPathTreeCache {
+    // Estimated bytes per tree besides its two int arrays
+    private static final long TREE_OVERHEAD_BYTES = 64;
+
+    private final long maxBytes;
+    private final LinkedHashMap<Integer, ShortestPathTree> trees = new LinkedHashMap<>(16, 0.75f, true);
+    private CompactGraph graph;
+    private long sizeBytes = 0;
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+
+    /**
+     * @param maxBytes byte budget for the cached trees
+     */
+    public ShortestPathTreeCache(long maxBytes) {
+        if (maxBytes <= 0) {
+            throw new IllegalArgumentException("The cache budget must be positive");
+        }
+        this.maxBytes = maxBytes;
+    }
+
+    /**
+     * Look up the tree of a source
+     * @param graph graph the tree must belong to
+     * @param source source node id
+     * @return cached tree, or null on a miss
+     */
+    public synchronized ShortestPathTree get(CompactGraph graph, int source) {
+        if (this.graph == null) {
+            bind(graph);
+        }
+        ShortestPathTree tree = graph == this.graph ? trees.get(source) : null;
+        if (tree == null) {
+            misses.increment();
+        } else {
+            hits.increment();
+        }
+        return tree;
+    }
+
+    /**
+     * Add a tree, evicting the least recently used trees until it fits
+     * @param graph graph the tree was computed on; trees of other graphs than the cache's are not kept
+     * @param tree shortest-path tree
+     */
+    public synchronized void put(CompactGraph graph, ShortestPathTree tree) {
+        if (this.graph == null) {
+            bind(graph);
+        }
+        long treeBytes = sizeOf(tree);
+        if (graph != this.graph || treeBytes > maxBytes) {
+            return;
+        }
+        ShortestPathTree previous = trees.put(tree.getSource(), tree);
+        if (previous != null) {
+            sizeBytes -= sizeOf(previous);
+        }
+        sizeBytes += treeBytes;
+
+        Iterator<Map.Entry<Integer, ShortestPathTree>> eldest = trees.entrySet().iterator();
+        while (sizeBytes > maxBytes && eldest.hasNext()) {
+            ShortestPathTree evicted = eldest.next().getValue();
+            eldest.remove();
+            sizeBytes -= sizeOf(evicted);
+            evictions.increment();
+        }
+    }
+
+    /**
+     * Move the cache to an updated graph, dropping only the trees the road update may change;
+     * they are computed again when next needed. If the cache does not hold trees of the
+     * previous graph, it is simply cleared; if it was already moved to next (by another planner
+     * following the same VersionedGraph), it is left as it is.
+     *
+     * @param previous graph the update was applied to
+     * @param next graph after the update (same nodes)
+     * @param update road update, with the distance it had in previous
+     * @return number of trees dropped
+     */
+    public synchronized int update(CompactGraph previous, CompactGraph next, RoadUpdate update) {
+        if (next == graph) {
+            return 0;
+        }
+        if (previous != graph || previous.nodeCount() != next.nodeCount()) {
+            int dropped = trees.size();
+            bind(next);
+            return dropped;
+        }
+        int dropped = 0;
+        Iterator<ShortestPathTree> iterator = trees.values().iterator();
+        while (iterator.hasNext()) {
+            ShortestPathTree tree = iterator.next();
+            if (update.affects(tree.distance(next.id(update.getCityA())), tree.distance(next.id(update.getCityB())))) {
+                iterator.remove();
+                sizeBytes -= sizeOf(tree);
+                dropped++;
+            }
+        }
+        graph = next;
+        return dropped;
+    }
+
+    /**
+     * Tie the cache to a graph, dropping its trees if they belong to another one
+     * @param graph graph to cache trees of
+     */
+    public synchronized void attach(CompactGraph graph) {
+        if (graph != this.graph) {
+            bind(graph);
+        }
+    }
+
+    /**
+     * Drop every cached tree
+     */
+    public synchronized void invalidate() {
+        trees.clear();
+        sizeBytes = 0;
+    }
+
+    private void bind(CompactGraph graph) {
+        invalidate();
+        this.graph = graph;
+    }
+
+    private static long sizeOf(ShortestPathTree tree) {
+        return TREE_OVERHEAD_BYTES + 2L * Integer.BYTES * tree.size();
+    }
+
+    public long getHits() {
+        return hits.sum();
+    }
+
+    public long getMisses() {
+        return misses.sum();
+    }
+
+    public long getEvictions() {
+        return evictions.sum();
+    }
+
+    public synchronized int getTreeCount() {
+        return trees.size();
+    }
+
+    public synchronized long getSizeBytes() {
+        return sizeBytes;
+    }
+
+    public long getMaxBytes() {
+        return maxBytes;
+    }
+
+    @Override
+    public String toString() {
+        return "ShortestPathTreeCache: " + getTreeCount() + " trees, " + getSizeBytes() + "/" + maxBytes
+                + " bytes, hits " + getHits() + ", misses " + getMisses() + ", evictions " + getEvictions();
+    }
+}
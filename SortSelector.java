@@ -0,0 +1,100 @@
+/**
+ * Picks a sort for a String[] from a cheap sample of the input, and runs it.
+ *
+ * Adjacent pairs are sampled in short windows spread over the array. If almost all are in order
+ * (or almost all reversed) the input is long runs, which AdaptiveMergeSort sorts in about linear
+ * time; otherwise the input is treated as random and sorted with the fastest general sort for its
+ * size: insertion sort when tiny, ParallelMergeSort with spare cores and enough elements to split,
+ * and the three-way radix quicksort otherwise.
+ */
+public class SortSelector {
+    // Sorts the selector chooses from
+    public enum Algorithm {
+        INSERTION_SORT("Insertion Sort"),
+        ADAPTIVE_MERGE_SORT("Adaptive Merge Sort"),
+        PARALLEL_MERGE_SORT("Parallel Merge Sort"),
+        RADIX_QUICKSORT("3-Way Radix Quicksort");
+
+        private final String displayName;
+
+        Algorithm(String displayName) {
+            this.displayName = displayName;
+        }
+
+        @Override
+        public String toString() {
+            return displayName;
+        }
+    }
+
+    // Inputs this small are insertion sorted whatever their order
+    static final int INSERTION_SORT_SIZE = 32;
+    // Sampled windows, and adjacent pairs compared in each
+    static final int SAMPLE_WINDOWS = 64;
+    static final int WINDOW_PAIRS = 8;
+    // Fraction of sampled pairs in (or against) order from which the input counts as presorted
+    static final double PRESORTED_FRACTION = 0.9;
+
+    private SortSelector() {
+    }
+
+    /**
+     * Choose a sort for an array
+     * @param a array to be sorted
+     * @return chosen algorithm
+     */
+    public static Algorithm select(String[] a) {
+        int n = a.length;
+        if (n <= INSERTION_SORT_SIZE) {
+            return Algorithm.INSERTION_SORT;
+        }
+        int ascending = 0;
+        int descending = 0;
+        int pairs = 0;
+        // Windows are evenly spaced, the last one ending at the end of the array, where appended tails are
+        for (int w = 0; w < SAMPLE_WINDOWS; w++) {
+            int start = (int) ((long) (n - WINDOW_PAIRS - 1) * w / (SAMPLE_WINDOWS - 1));
+            for (int i = start; i < start + WINDOW_PAIRS && i + 1 < n; i++) {
+                int order = a[i].compareTo(a[i + 1]);
+                if (order <= 0) {
+                    ascending++;
+                }
+                if (order >= 0) {
+                    descending++;
+                }
+                pairs++;
+            }
+        }
+        if (ascending >= PRESORTED_FRACTION * pairs || descending >= PRESORTED_FRACTION * pairs) {
+            return Algorithm.ADAPTIVE_MERGE_SORT;
+        }
+        if (Runtime.getRuntime().availableProcessors() > 1 && n > 2 * ParallelMergeSort.SEQUENTIAL_THRESHOLD) {
+            return Algorithm.PARALLEL_MERGE_SORT;
+        }
+        return Algorithm.RADIX_QUICKSORT;
+    }
+
+    /**
+     * Sort an array with the algorithm select chooses
+     * @param a array to sort
+     * @return algorithm used
+     */
+    public static Algorithm sort(String[] a) {
+        Algorithm algorithm = select(a);
+        switch (algorithm) {
+            case INSERTION_SORT:
+                ParallelMergeSort.insertionSort(a, 0, a.length);
+                break;
+            case ADAPTIVE_MERGE_SORT:
+                AdaptiveMergeSort.sort(a);
+                break;
+            case PARALLEL_MERGE_SORT:
+                ParallelMergeSort.sort(a);
+                break;
+            default:
+                StringSorts.threeWayRadixQuickSort(a);
+                break;
+        }
+        return algorithm;
+    }
+}
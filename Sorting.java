@@ -1,54 +1,325 @@
 import java.io.*;
 import java.util.*;
+import java.util.function.Function;
 
+/**
+ * Sorting algorithms for place names, and a benchmark of them:
+ *
+ * java Sorting [--files a.csv,b.csv] [--datasets random,sorted,reverse,few-unique,shared-prefix,nearly-sorted]
+ *     [--sizes 1000,10000,100000] [--algorithms insertion,quick,...] [--warmup 3] [--iterations 10]
+ *     [--iteration-ms 200] [--seed 42] [--csv results.csv] [--json results.json]
+ *
+ * Each algorithm's output is first checked against Arrays.sort, in a run that also counts comparisons
+ * where the algorithm supports it; correct ones are then measured
+ * with Benchmark (warmup, then measured iterations with mean, spread, median, 90th percentile and
+ * allocation per sort). Timings include copying the input, which every algorithm needs to leave
+ * the input unchanged for the next run.
+ */
 public class Sorting {
-    public static void main(String[] args) throws IOException {
-        String[] filenames = {
-                "CW3_Data_Files/1000places_random.csv",
-                "CW3_Data_Files/1000places_sorted.csv",
-                "CW3_Data_Files/10000places_random.csv",
-                "CW3_Data_Files/10000places_sorted.csv"
+    // Larger inputs would take minutes with the quadratic insertion sort
+    private static final int MAX_INSERTION_SORT_SIZE = 20000;
+    // Comparisons made by the list sorts below, reported by the benchmark. They are only counted
+    // while counting is set, in the unmeasured verification run, so timed runs do not pay for it
+    private static boolean counting = false;
+    private static long comparisons = 0;
 
-        };
+    // Place files benchmarked by default, where present
+    private static final String[] DATA_FILES = {
+            "CW3_Data_Files/1000places_random.csv",
+            "CW3_Data_Files/1000places_sorted.csv",
+            "CW3_Data_Files/10000places_random.csv",
+            "CW3_Data_Files/10000places_sorted.csv"
+    };
+    // Kinds of generated input
+    private static final String[] DATASETS = {"random", "sorted", "reverse", "few-unique", "shared-prefix", "nearly-sorted"};
 
-        String[] algorithms = {"Insertion Sort", "Quick Sort", "Merge Sort"};
+    // Sorts by benchmark name; each sorts a copy of its input and returns it, leaving its comparisons
+    // in the comparisons field if it counts them and counting is set
+    private static final Map<String, Function<String[], List<String>>> SORTS = new LinkedHashMap<>();
 
-        long[][] times = new long[filenames.length][algorithms.length];
+    static {
+        SORTS.put("insertion", input -> {
+            List<String> list = new ArrayList<>(Arrays.asList(input));
+            comparisons = 0;
+            insertionSort(list);
+            return list;
+        });
+        SORTS.put("quick", input -> {
+            List<String> list = new ArrayList<>(Arrays.asList(input));
+            comparisons = 0;
+            quickSort(list);
+            return list;
+        });
+        SORTS.put("merge", input -> {
+            List<String> list = new ArrayList<>(Arrays.asList(input));
+            comparisons = 0;
+            mergeSort(list);
+            return list;
+        });
+        SORTS.put("parallel-merge", input -> {
+            String[] array = input.clone();
+            ParallelMergeSort.sort(array);
+            return Arrays.asList(array);
+        });
+        SORTS.put("msd-radix", input -> {
+            String[] array = input.clone();
+            StringSorts.msdRadixSort(array);
+            return Arrays.asList(array);
+        });
+        SORTS.put("radix-quick", input -> {
+            String[] array = input.clone();
+            StringSorts.threeWayRadixQuickSort(array);
+            return Arrays.asList(array);
+        });
+        SORTS.put("adaptive-merge", input -> {
+            String[] array = input.clone();
+            if (counting) {
+                comparisons = AdaptiveMergeSort.sortCounting(array);
+            } else {
+                AdaptiveMergeSort.sort(array);
+            }
+            return Arrays.asList(array);
+        });
+        // Builds the keys and gathers the lines, so no copy is needed
+        SORTS.put("utf8-key", input -> Arrays.asList(KeySort.sort(input)));
+        SORTS.put("auto", input -> {
+            String[] array = input.clone();
+            SortSelector.sort(array);
+            return Arrays.asList(array);
+        });
+    }
 
-        for (int i = 0; i < filenames.length; i++) {
-            List<String> originalData = readDataFromFile(filenames[i]);
+    public static void main(String[] args) throws Exception {
+        if (args.length > 0 && args[0].equals("--external")) {
+            externalSort(args);
+            return;
+        }
+        if (args.length > 0 && args[0].equals("--keys")) {
+            keySort(args);
+            return;
+        }
+        // Benchmark: every chosen algorithm on every file and generated input
+        List<String> files = list(option(args, "--files", String.join(",", DATA_FILES)));
+        List<String> datasets = list(option(args, "--datasets", String.join(",", DATASETS)));
+        List<String> sizes = list(option(args, "--sizes", "1000,10000,100000"));
+        List<String> algorithms = list(option(args, "--algorithms", String.join(",", SORTS.keySet())));
+        long seed = Long.parseLong(option(args, "--seed", "42"));
+        Benchmark benchmark = new Benchmark(Integer.parseInt(option(args, "--warmup", "3")),
+                Integer.parseInt(option(args, "--iterations", "10")), Long.parseLong(option(args, "--iteration-ms", "200")));
+        for (String algorithm : algorithms) {
+            if (!SORTS.containsKey(algorithm)) {
+                throw new IllegalArgumentException("Unknown algorithm " + algorithm + ", expected one of " + SORTS.keySet());
+            }
+        }
 
-            // Insertion Sort
-            List<String> dataCopy = new ArrayList<>(originalData);
+        for (String filename : files) {
+            if (new File(filename).exists()) {
+                benchmark(benchmark, algorithms, filename, readDataFromFile(filename).toArray(new String[0]));
+            } else {
+                System.out.println(filename + " not found, skipped");
+            }
+        }
+        for (String dataset : datasets) {
+            for (String size : sizes) {
+                benchmark(benchmark, algorithms, dataset, generateInput(dataset, Integer.parseInt(size), seed));
+            }
+        }
 
-            long start = System.nanoTime();
-            insertionSort(dataCopy);
-            long end = System.nanoTime();
-            times[i][0] = end - start;
+        String csv = option(args, "--csv", null);
+        if (csv != null) {
+            Benchmark.writeCsv(new File(csv).toPath(), benchmark.getResults());
+        }
+        String json = option(args, "--json", null);
+        if (json != null) {
+            Benchmark.writeJson(new File(json).toPath(), benchmark.getResults());
+        }
+    }
 
-            // Quick Sort
-            dataCopy = new ArrayList<>(originalData);
-            start = System.nanoTime();
-            quickSort(dataCopy);
-            end = System.nanoTime();
-            times[i][1] = end - start;
+    // Check each algorithm's output on one input against Arrays.sort, then measure the ones that are correct
+    private static void benchmark(Benchmark benchmark, List<String> algorithms, String dataset, String[] input) throws Exception {
+        List<String> expected = new ArrayList<>(Arrays.asList(input));
+        Collections.sort(expected);
+        for (String algorithm : algorithms) {
+            String name = algorithm + " on " + dataset + " (" + input.length + ")";
+            if (algorithm.equals("insertion") && input.length > MAX_INSERTION_SORT_SIZE) {
+                System.out.println(name + ": skipped, too large for insertion sort");
+                continue;
+            }
+            Function<String[], List<String>> sort = SORTS.get(algorithm);
+            comparisons = -1;
+            counting = true;
+            List<String> sorted;
+            try {
+                sorted = sort.apply(input);
+            } finally {
+                counting = false;
+            }
+            if (!sorted.equals(expected)) {
+                System.out.println(name + ": output is not correctly sorted, not measured");
+                continue;
+            }
+            Map<String, String> parameters = new LinkedHashMap<>();
+            parameters.put("dataset", dataset);
+            parameters.put("size", String.valueOf(input.length));
+            if (comparisons >= 0) {
+                parameters.put("comparisons", String.valueOf(comparisons));
+            }
+            if (algorithm.equals("auto")) {
+                parameters.put("chose", SortSelector.select(input).name().toLowerCase(Locale.ROOT));
+            }
+            System.out.println(benchmark.run(algorithm, parameters, i -> sort.apply(input)));
+        }
+    }
 
-            // Merge Sort
-            dataCopy = new ArrayList<>(originalData);
-            start = System.nanoTime();
-            mergeSort(dataCopy);
-            end = System.nanoTime();
-            times[i][2] = end - start;
+    /**
+     * Generate a benchmark input of place names
+     * @param dataset one of DATASETS: the order and kind of names
+     * @param size number of names
+     * @param seed random seed
+     * @return names
+     */
+    public static String[] generateInput(String dataset, int size, long seed) {
+        List<String> places;
+        switch (dataset) {
+            case "random":
+                places = generatePlaces(size, seed);
+                break;
+            case "sorted":
+                places = generatePlaces(size, seed);
+                Collections.sort(places);
+                break;
+            case "reverse":
+                places = generatePlaces(size, seed);
+                places.sort(Collections.reverseOrder());
+                break;
+            case "few-unique":
+                // Ten names repeated in random order
+                List<String> names = generatePlaces(10, seed);
+                Random random = new Random(seed);
+                places = new ArrayList<>(size);
+                for (int i = 0; i < size; i++) {
+                    places.add(names.get(random.nextInt(names.size())));
+                }
+                break;
+            case "shared-prefix":
+                // Long equal prefixes, which every comparison has to scan
+                places = new ArrayList<>(size);
+                for (String place : generatePlaces(size, seed)) {
+                    places.add("Saint-Jean-Baptiste-de-la-Vallee " + place);
+                }
+                break;
+            case "nearly-sorted":
+                // Like a place feed: a sorted list with a small unsorted tail appended
+                places = generatePlaces(size - size / 100, seed);
+                Collections.sort(places);
+                places.addAll(generatePlaces(size / 100, seed + 1));
+                break;
+            default:
+                throw new IllegalArgumentException("Unknown dataset " + dataset + ", expected one of " + Arrays.toString(DATASETS));
         }
+        return places.toArray(new String[0]);
+    }
+
+    private static List<String> list(String value) {
+        List<String> items = new ArrayList<>();
+        for (String item : value.split(",")) {
+            if (!item.trim().isEmpty()) {
+                items.add(item.trim());
+            }
+        }
+        return items;
+    }
+
+    // Value following a command-line option, or the default if the option is not given
+    private static String option(String[] args, String name, String defaultValue) {
+        for (int i = 0; i + 1 < args.length; i++) {
+            if (args[i].equals(name)) {
+                return args[i + 1];
+            }
+        }
+        return defaultValue;
+    }
+
+    /**
+     * Sort a place file too large for the heap:
+     * java Sorting --external input output [--memory-mb 256] [--temp directory]
+     * @param args command-line arguments
+     */
+    private static void externalSort(String[] args) throws IOException {
+        if (args.length < 3) {
+            throw new IllegalArgumentException("Usage: java Sorting --external input output [--memory-mb 256] [--temp directory]");
+        }
+        long memoryMegabytes = 256;
+        String temp = System.getProperty("java.io.tmpdir");
+        for (int i = 3; i + 1 < args.length; i += 2) {
+            if (args[i].equals("--memory-mb")) {
+                memoryMegabytes = Long.parseLong(args[i + 1]);
+            } else if (args[i].equals("--temp")) {
+                temp = args[i + 1];
+            } else {
+                throw new IllegalArgumentException("Unknown option " + args[i]);
+            }
+        }
+        new ExternalSorter(memoryMegabytes << 20, new File(temp).toPath()).sort(new File(args[1]).toPath(), new File(args[2]).toPath());
+    }
+
+    /**
+     * Sort a place file in the collation order of a locale, or in code point order if none is given:
+     * java Sorting --keys input output [--locale fr-FR]
+     * @param args command-line arguments
+     */
+    private static void keySort(String[] args) throws IOException {
+        if (args.length != 3 && !(args.length == 5 && args[3].equals("--locale"))) {
+            throw new IllegalArgumentException("Usage: java Sorting --keys input output [--locale fr-FR]");
+        }
+        String[] lines = readDataFromFile(args[1]).toArray(new String[0]);
+        long start = System.nanoTime();
+        String[] sorted = args.length == 5 ? KeySort.sort(lines, Locale.forLanguageTag(args[4])) : KeySort.sort(lines);
+        long end = System.nanoTime();
+        // Same encoding as readDataFromFile reads with
+        try (BufferedWriter writer = new BufferedWriter(new FileWriter(args[2]))) {
+            for (String line : sorted) {
+                writer.write(line);
+                writer.newLine();
+            }
+        }
+        System.out.println("Sorted " + sorted.length + " lines in " + (end - start) + " ns");
+    }
+
+    /**
+     * Generate random place names such as "San Lorivo Springs", with the shared prefixes
+     * and suffixes of real place lists
+     * @param count number of names
+     * @param seed random seed
+     * @return names in random order
+     */
+    public static List<String> generatePlaces(int count, long seed) {
+        String[] prefixes = {"", "", "", "San ", "Saint ", "New ", "North ", "South ", "Port ", "Lake ", "Fort ", "Mount "};
+        String[] syllables = {"ar", "bel", "cor", "dan", "el", "fen", "gar", "hol", "is", "ken", "lor", "mar",
+                "nor", "ol", "pen", "quin", "ros", "sal", "tor", "val", "wes", "yor", "zan", "ivo", "ton", "ley"};
+        String[] suffixes = {"", "", "", " City", " Springs", " Falls", " Heights", " Beach", " Valley"};
+        Random random = new Random(seed);
+        List<String> places = new ArrayList<>(count);
+        StringBuilder name = new StringBuilder();
+        for (int i = 0; i < count; i++) {
+            name.setLength(0);
+            name.append(prefixes[random.nextInt(prefixes.length)]);
+            int start = name.length();
+            for (int k = 2 + random.nextInt(3); k > 0; k--) {
+                name.append(syllables[random.nextInt(syllables.length)]);
+            }
+            name.setCharAt(start, Character.toUpperCase(name.charAt(start)));
+            name.append(suffixes[random.nextInt(suffixes.length)]);
+            places.add(name.toString());
+        }
+        return places;
+    }
 
-        System.out.printf("%-25s %-20s %-20s %-20s%n", "Dataset", "Insertion Sort (ns)", "Quick Sort (ns)", "Merge Sort (ns)");
-        for (int i = 0; i < filenames.length; i++) {
-            System.out.printf("%-25s %-20d %-20d %-20d%n",
-                    filenames[i],
-                    times[i][0],
-                    times[i][1],
-                    times[i][2]);
+    private static int compare(String a, String b) {
+        if (counting) {
+            comparisons++;
         }
+        return a.compareTo(b);
     }
 
     private static List<String> readDataFromFile(String filename) throws IOException {
@@ -68,7 +339,7 @@ public class Sorting {
             list[0...i] is sorted. */
             String currentElement = list.get(i);
             int k;
-            for (k = i - 1; k >= 0 && list.get(k).compareTo(currentElement)>0 ; k--) {
+            for (k = i - 1; k >= 0 && compare(list.get(k), currentElement)>0 ; k--) {
                 list.set(k+1, list.get(k));
             }
 
@@ -104,11 +375,11 @@ public class Sorting {
 
         while (high > low) {
             // Search forward from the left
-            while (low <= high && list.get(low).compareTo(pivot) <= 0)
+            while (low <= high && compare(list.get(low), pivot) <= 0)
                 low++;
 
             // Search backward from right
-            while (low <= high && list.get(high).compareTo(pivot) > 0)
+            while (low <= high && compare(list.get(high), pivot) > 0)
                 high--;
 
             // Swap two elements in the list
@@ -117,11 +388,11 @@ public class Sorting {
             }
         }
 
-        while (high > first && list.get(high).compareTo(pivot) >= 0)
+        while (high > first && compare(list.get(high), pivot) >= 0)
             high--;
 
         // Swap pivot with list[high]
-        if (pivot.compareTo(list.get(high)) > 0) {
+        if (compare(pivot, list.get(high)) > 0) {
             list.set(first, list.get(high));
             list.set(high, pivot);
             return high;
@@ -155,7 +426,7 @@ public class Sorting {
         int current3 = 0; // Current index in temp
 
         while (current1 < list1.size() && current2 < list2.size()) {
-            if (list1.get(current1).compareTo(list2.get(current2)) <= 0)
+            if (compare(list1.get(current1), list2.get(current2)) <= 0)
                 temp.set(current3++, list1.get(current1++));
             else
                 temp.set(current3++, list2.get(current2++));
@@ -0,0 +1,173 @@
+import java.util.Arrays;
+
+/**
+ * Sorts specialised for strings, which look at each character a small number of times instead of
+ * comparing whole strings again and again (names sharing a long prefix such as "Saint ..." are
+ * re-scanned by every compareTo).
+ *
+ * Both sorts give exactly String.compareTo order: characters are compared as unsigned 16-bit
+ * values, and a string sorts before every longer string it is a prefix of.
+ */
+public class StringSorts {
+    // Ranges this small are insertion sorted, comparing from the current position on
+    static final int INSERTION_CUTOFF = 16;
+    // Byte values, plus one bucket for strings that have ended
+    private static final int RADIX = 256;
+
+    private StringSorts() {
+    }
+
+    /**
+     * MSD radix sort. Each char is taken as two byte digits, high byte first, so that the count
+     * arrays stay small; a string that has ended sorts first, as digit -1.
+     *
+     * @param a array to sort
+     */
+    public static void msdRadixSort(String[] a) {
+        if (a.length < 2) {
+            return;
+        }
+        String[] aux = new String[a.length];
+        // One count array per digit position, reused by every bucket at that depth
+        int maxLength = 0;
+        for (String s : a) {
+            maxLength = Math.max(maxLength, s.length());
+        }
+        int[][] counts = new int[2 * maxLength + 1][];
+        msd(a, aux, counts, 0, a.length, 0);
+    }
+
+    // Sort a[lo, hi), whose strings agree on the first d byte digits
+    private static void msd(String[] a, String[] aux, int[][] counts, int lo, int hi, int d) {
+        if (hi - lo <= INSERTION_CUTOFF) {
+            insertionSort(a, lo, hi, d >> 1);
+            return;
+        }
+        if (counts[d] == null) {
+            counts[d] = new int[RADIX + 2];
+        }
+        int[] count = counts[d];
+        Arrays.fill(count, 0);
+
+        // Bucket b + 1 holds digit b - 1, so ended strings come first
+        for (int i = lo; i < hi; i++) {
+            count[digit(a[i], d) + 2]++;
+        }
+        for (int r = 0; r < RADIX + 1; r++) {
+            count[r + 1] += count[r];
+        }
+        for (int i = lo; i < hi; i++) {
+            aux[count[digit(a[i], d) + 1]++] = a[i];
+        }
+        System.arraycopy(aux, 0, a, lo, hi - lo);
+
+        // Digit r now occupies [count[r], count[r + 1]); ended strings (digit -1) are equal and done
+        for (int r = 0; r < RADIX; r++) {
+            int from = lo + count[r];
+            int to = lo + count[r + 1];
+            if (to - from > 1) {
+                msd(a, aux, counts, from, to, d + 1);
+            }
+        }
+    }
+
+    // Byte digit d of a string: the high byte of char d / 2 for even d, its low byte for odd d, -1 past the end
+    private static int digit(String s, int d) {
+        int index = d >> 1;
+        if (index >= s.length()) {
+            return -1;
+        }
+        char c = s.charAt(index);
+        return (d & 1) == 0 ? c >>> 8 : c & 0xFF;
+    }
+
+    /**
+     * Three-way radix quicksort (Bentley and Sedgewick): partition on one character into less,
+     * equal and greater, move to the next character only within the equal part.
+     *
+     * @param a array to sort
+     */
+    public static void threeWayRadixQuickSort(String[] a) {
+        threeWay(a, 0, a.length - 1, 0);
+    }
+
+    // Sort a[lo..hi], whose strings agree on their first d chars
+    private static void threeWay(String[] a, int lo, int hi, int d) {
+        while (hi - lo + 1 > INSERTION_CUTOFF) {
+            // Median of three keeps sorted and reverse-sorted input from degrading
+            int mid = (lo + hi) >>> 1;
+            int pivotIndex = medianOfThree(a, lo, mid, hi, d);
+            swap(a, lo, pivotIndex);
+            int pivot = charAt(a[lo], d);
+
+            int lt = lo;
+            int gt = hi;
+            int i = lo + 1;
+            while (i <= gt) {
+                int c = charAt(a[i], d);
+                if (c < pivot) {
+                    swap(a, lt++, i++);
+                } else if (c > pivot) {
+                    swap(a, i, gt--);
+                } else {
+                    i++;
+                }
+            }
+
+            // a[lo..lt-1] < pivot = a[lt..gt] < a[gt+1..hi]
+            threeWay(a, lo, lt - 1, d);
+            if (pivot >= 0) {
+                threeWay(a, lt, gt, d + 1);
+            }
+            lo = gt + 1;
+        }
+        insertionSort(a, lo, hi + 1, d);
+    }
+
+    private static int medianOfThree(String[] a, int i, int j, int k, int d) {
+        int x = charAt(a[i], d);
+        int y = charAt(a[j], d);
+        int z = charAt(a[k], d);
+        if (x < y) {
+            return y < z ? j : x < z ? k : i;
+        }
+        return x < z ? i : y < z ? k : j;
+    }
+
+    // Char d of a string, or -1 past the end
+    private static int charAt(String s, int d) {
+        return d < s.length() ? s.charAt(d) : -1;
+    }
+
+    // Insertion sort of a[lo, hi), whose strings agree on their first d chars
+    private static void insertionSort(String[] a, int lo, int hi, int d) {
+        for (int i = lo + 1; i < hi; i++) {
+            String current = a[i];
+            int k = i - 1;
+            while (k >= lo && less(current, a[k], d)) {
+                a[k + 1] = a[k];
+                k--;
+            }
+            a[k + 1] = current;
+        }
+    }
+
+    // compareTo(v, w) < 0, skipping the first d chars, which are known to be equal
+    private static boolean less(String v, String w, int d) {
+        int length = Math.min(v.length(), w.length());
+        for (int i = d; i < length; i++) {
+            char x = v.charAt(i);
+            char y = w.charAt(i);
+            if (x != y) {
+                return x < y;
+            }
+        }
+        return v.length() < w.length();
+    }
+
+    private static void swap(String[] a, int i, int j) {
+        String t = a[i];
+        a[i] = a[j];
+        a[j] = t;
+    }
+}
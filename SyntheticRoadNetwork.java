@@ -0,0 +1,309 @@
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.Random;
+
+/**
+ * Seeded generator of road networks for benchmarks. The same shape, size and seed always give
+ * the same network, so results of different runs compare like for like.
+ *
+ * Every network is connected, so any two cities have a route, and cities are named "N0", "N1", ...
+ * with scenic spots "Spot 0", "Spot 1", ... placed on random cities.
+ */
+public class SyntheticRoadNetwork {
+    // Largest distance of a generated road
+    private static final int MAX_DISTANCE = 100;
+    // Average number of roads per city in a random geometric network
+    private static final double GEOMETRIC_DEGREE = 6;
+    // Roads added with each city of a scale-free network
+    private static final int SCALE_FREE_LINKS = 2;
+
+    /**
+     * Kind of network
+     */
+    public enum Shape {
+        // Square grid, like a city street plan: long shortest paths, uniform degree
+        GRID,
+        // Random points joined to the points near them, like a regional road map
+        GEOMETRIC,
+        // Preferential attachment (Barabasi-Albert): a few hubs with very many roads
+        SCALE_FREE;
+
+        /**
+         * Parse a shape name such as "grid" or "scale-free"
+         * @param name shape name, in any case, with - or _
+         * @return shape
+         */
+        public static Shape parse(String name) {
+            return valueOf(name.trim().toUpperCase(Locale.ROOT).replace('-', '_'));
+        }
+    }
+
+    private final Shape shape;
+    private final int nodeCount;
+    private int roadCount = 0;
+    private int[] cityA = new int[1024];
+    private int[] cityB = new int[1024];
+    private int[] distances = new int[1024];
+    private final int[] attractionCities;
+
+    private SyntheticRoadNetwork(Shape shape, int nodeCount, int attractionCount, Random random) {
+        this.shape = shape;
+        this.nodeCount = nodeCount;
+        this.attractionCities = new int[attractionCount];
+        for (int i = 0; i < attractionCount; i++) {
+            attractionCities[i] = random.nextInt(nodeCount);
+        }
+    }
+
+    /**
+     * Generate a network
+     *
+     * @param shape kind of network
+     * @param nodeCount number of cities, at least 2
+     * @param attractionCount number of scenic spots
+     * @param seed random seed
+     * @return generated network
+     */
+    public static SyntheticRoadNetwork generate(Shape shape, int nodeCount, int attractionCount, long seed) {
+        if (nodeCount < 2) {
+            throw new IllegalArgumentException("A network needs at least 2 cities");
+        }
+        Random random = new Random(seed);
+        SyntheticRoadNetwork network = new SyntheticRoadNetwork(shape, nodeCount, attractionCount, random);
+        switch (shape) {
+            case GRID:
+                network.grid(random);
+                break;
+            case GEOMETRIC:
+                network.geometric(random);
+                break;
+            default:
+                network.scaleFree(random);
+                break;
+        }
+        return network;
+    }
+
+    // Row-major grid of about sqrt(n) columns; the last row may be partial
+    private void grid(Random random) {
+        int columns = (int) Math.ceil(Math.sqrt(nodeCount));
+        for (int node = 0; node < nodeCount; node++) {
+            if ((node + 1) % columns != 0 && node + 1 < nodeCount) {
+                addRoad(node, node + 1, 1 + random.nextInt(MAX_DISTANCE));
+            }
+            if (node + columns < nodeCount) {
+                addRoad(node, node + columns, 1 + random.nextInt(MAX_DISTANCE));
+            }
+        }
+    }
+
+    // Points in the unit square, joined when closer than the radius giving the target degree;
+    // the points are bucketed in cells of that radius, so only neighbouring cells are compared
+    private void geometric(Random random) {
+        double[] x = new double[nodeCount];
+        double[] y = new double[nodeCount];
+        for (int i = 0; i < nodeCount; i++) {
+            x[i] = random.nextDouble();
+            y[i] = random.nextDouble();
+        }
+        double radius = Math.sqrt(GEOMETRIC_DEGREE / (Math.PI * nodeCount));
+        int cells = Math.max(1, (int) (1 / radius));
+        int[] cellStart = new int[cells * cells + 1];
+        int[] cellOf = new int[nodeCount];
+        for (int i = 0; i < nodeCount; i++) {
+            cellOf[i] = Math.min(cells - 1, (int) (y[i] * cells)) * cells + Math.min(cells - 1, (int) (x[i] * cells));
+            cellStart[cellOf[i] + 1]++;
+        }
+        for (int c = 0; c < cells * cells; c++) {
+            cellStart[c + 1] += cellStart[c];
+        }
+        int[] byCell = new int[nodeCount];
+        int[] fill = Arrays.copyOf(cellStart, cells * cells);
+        for (int i = 0; i < nodeCount; i++) {
+            byCell[fill[cellOf[i]]++] = i;
+        }
+
+        // Scale distances so that a road across the whole square is about MAX_DISTANCE * sqrt(n) / 10
+        double scale = MAX_DISTANCE * Math.sqrt(nodeCount) / 10;
+        UnionFind components = new UnionFind(nodeCount);
+        for (int i = 0; i < nodeCount; i++) {
+            int row = cellOf[i] / cells;
+            int column = cellOf[i] % cells;
+            for (int r = Math.max(0, row - 1); r <= Math.min(cells - 1, row + 1); r++) {
+                for (int c = Math.max(0, column - 1); c <= Math.min(cells - 1, column + 1); c++) {
+                    int cell = r * cells + c;
+                    for (int k = cellStart[cell]; k < cellStart[cell + 1]; k++) {
+                        int j = byCell[k];
+                        double length = Math.hypot(x[i] - x[j], y[i] - y[j]);
+                        if (j > i && length <= radius) {
+                            addRoad(i, j, 1 + (int) (length * scale));
+                            components.union(i, j);
+                        }
+                    }
+                }
+            }
+        }
+
+        // Join the components along the cell order, so that joining roads stay short
+        for (int k = 1; k < nodeCount; k++) {
+            int i = byCell[k - 1];
+            int j = byCell[k];
+            if (components.union(i, j)) {
+                addRoad(i, j, 1 + (int) (Math.hypot(x[i] - x[j], y[i] - y[j]) * scale));
+            }
+        }
+    }
+
+    // Each new city links to SCALE_FREE_LINKS earlier cities chosen in proportion to their degree
+    private void scaleFree(Random random) {
+        int links = Math.min(SCALE_FREE_LINKS, nodeCount - 1);
+        // Every road end is listed once, so a uniform pick from the list is a degree-weighted pick
+        int[] ends = new int[2 * links * nodeCount + 2];
+        int endCount = 0;
+        addRoad(0, 1, 1 + random.nextInt(MAX_DISTANCE));
+        ends[endCount++] = 0;
+        ends[endCount++] = 1;
+        int[] chosen = new int[links];
+        for (int node = 2; node < nodeCount; node++) {
+            int count = 0;
+            while (count < Math.min(links, node)) {
+                int target = ends[random.nextInt(endCount)];
+                boolean repeated = false;
+                for (int k = 0; k < count; k++) {
+                    repeated |= chosen[k] == target;
+                }
+                if (!repeated) {
+                    chosen[count++] = target;
+                }
+            }
+            for (int k = 0; k < count; k++) {
+                addRoad(node, chosen[k], 1 + random.nextInt(MAX_DISTANCE));
+                ends[endCount++] = node;
+                ends[endCount++] = chosen[k];
+            }
+        }
+    }
+
+    private void addRoad(int a, int b, int distance) {
+        if (roadCount == cityA.length) {
+            cityA = Arrays.copyOf(cityA, roadCount * 2);
+            cityB = Arrays.copyOf(cityB, roadCount * 2);
+            distances = Arrays.copyOf(distances, roadCount * 2);
+        }
+        cityA[roadCount] = a;
+        cityB[roadCount] = b;
+        distances[roadCount] = distance;
+        roadCount++;
+    }
+
+    /**
+     * Get the name of a city
+     * @param node city index
+     * @return city name
+     */
+    public static String cityName(int node) {
+        return "N" + node;
+    }
+
+    /**
+     * Get the name of a scenic spot
+     * @param index spot index
+     * @return spot name
+     */
+    public static String attractionName(int index) {
+        return "Spot " + index;
+    }
+
+    /**
+     * Build the network directly as a compact graph
+     * @return compact graph
+     */
+    public CompactGraph toCompactGraph() {
+        CompactGraph.Builder builder = new CompactGraph.Builder();
+        for (int node = 0; node < nodeCount; node++) {
+            builder.addNode(cityName(node));
+        }
+        for (int i = 0; i < roadCount; i++) {
+            builder.addEdge(cityA[i], cityB[i], distances[i]);
+        }
+        return builder.build();
+    }
+
+    /**
+     * Write the network in the format of the roads and attractions CSV files
+     * @param roadsFile roads CSV to write
+     * @param attractionsFile attractions CSV to write
+     */
+    public void writeCsv(Path roadsFile, Path attractionsFile) throws IOException {
+        try (BufferedWriter writer = Files.newBufferedWriter(roadsFile, StandardCharsets.UTF_8)) {
+            writer.write("CityA,CityB,Distance\n");
+            for (int i = 0; i < roadCount; i++) {
+                writer.write(cityName(cityA[i]) + "," + cityName(cityB[i]) + "," + distances[i] + "\n");
+            }
+        }
+        try (BufferedWriter writer = Files.newBufferedWriter(attractionsFile, StandardCharsets.UTF_8)) {
+            writer.write("Attraction,Location\n");
+            for (int i = 0; i < attractionCities.length; i++) {
+                writer.write(attractionName(i) + "," + cityName(attractionCities[i]) + "\n");
+            }
+        }
+    }
+
+    public Shape getShape() {
+        return shape;
+    }
+
+    public int getNodeCount() {
+        return nodeCount;
+    }
+
+    public int getRoadCount() {
+        return roadCount;
+    }
+
+    public int getAttractionCount() {
+        return attractionCities.length;
+    }
+
+    @Override
+    public String toString() {
+        return shape + " network with " + nodeCount + " cities, " + roadCount + " roads and "
+                + attractionCities.length + " scenic spots";
+    }
+
+    // Disjoint sets with path halving, to find the components of a geometric network
+    private static class UnionFind {
+        private final int[] parent;
+
+        UnionFind(int size) {
+            parent = new int[size];
+            for (int i = 0; i < size; i++) {
+                parent[i] = i;
+            }
+        }
+
+        int find(int node) {
+            while (parent[node] != node) {
+                parent[node] = parent[parent[node]];
+                node = parent[node];
+            }
+            return node;
+        }
+
+        // Join two sets; returns whether they were separate
+        boolean union(int a, int b) {
+            int rootA = find(a);
+            int rootB = find(b);
+            if (rootA == rootB) {
+                return false;
+            }
+            parent[rootA] = rootB;
+            return true;
+        }
+    }
+}
@@ -0,0 +1,153 @@
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * A road network that changes over time, published as a sequence of immutable snapshots.
+ *
+ * Readers call current() once and use that snapshot for a whole query; they never lock and never
+ * see a half-applied change. Writers are serialized and build each new version with
+ * CompactGraph.withRoad / withoutRoad, which copy only the rows of the two cities involved,
+ * then publish it atomically. Every snapshot links to its successor, so a holder of an old
+ * snapshot can walk forward to see exactly which updates happened since.
+ * The set of cities is fixed; updates change roads between existing cities.
+ */
+public class VersionedGraph {
+    private final AtomicReference<Snapshot> current;
+
+    /**
+     * @param graph initial graph (version 0)
+     */
+    public VersionedGraph(CompactGraph graph) {
+        this.current = new AtomicReference<>(new Snapshot(0, graph, null));
+    }
+
+    /**
+     * Get the latest snapshot
+     * @return snapshot to pin for a query
+     */
+    public Snapshot current() {
+        return current.get();
+    }
+
+    /**
+     * Add a road or change its distance
+     * @param cityA one end
+     * @param cityB other end
+     * @param distance new distance
+     * @return the new snapshot
+     */
+    public Snapshot setRoad(String cityA, String cityB, int distance) {
+        return apply(new RoadUpdate(cityA, cityB, -1, distance));
+    }
+
+    /**
+     * Remove a road
+     * @param cityA one end
+     * @param cityB other end
+     * @return the new snapshot, or the current one if there is no such road
+     */
+    public Snapshot removeRoad(String cityA, String cityB) {
+        return apply(new RoadUpdate(cityA, cityB, -1, -1));
+    }
+
+    /**
+     * Publish a new version with one road update applied. The update's old distance is ignored;
+     * the published update carries the distance the road actually had.
+     *
+     * @param update road update between existing cities
+     * @return the new snapshot, or the current one if the update changes nothing
+     */
+    public synchronized Snapshot apply(RoadUpdate update) {
+        Snapshot latest = current.get();
+        CompactGraph graph = latest.graph;
+        int a = graph.id(update.getCityA());
+        int b = graph.id(update.getCityB());
+        if (a == -1 || b == -1) {
+            throw new IllegalArgumentException("The road " + update.getCityA() + " - " + update.getCityB() + " is not between known cities");
+        }
+        int oldDistance = graph.weight(a, b);
+        if (oldDistance == update.getNewDistance()) {
+            return latest;
+        }
+        RoadUpdate actual = new RoadUpdate(update.getCityA(), update.getCityB(), oldDistance, update.getNewDistance());
+        Snapshot next = new Snapshot(latest.version + 1, actual.applyTo(graph), actual);
+        latest.next = next;
+        current.set(next);
+        return next;
+    }
+
+    /**
+     * Publish one version per update, in order
+     * @param updates road updates between existing cities
+     * @return the latest snapshot
+     */
+    public synchronized Snapshot applyAll(List<RoadUpdate> updates) {
+        for (RoadUpdate update : updates) {
+            apply(update);
+        }
+        return current.get();
+    }
+
+    /**
+     * One immutable version of the graph
+     */
+    public static class Snapshot {
+        private final long version;
+        private final CompactGraph graph;
+        private final RoadUpdate update;
+        // Set once, when the following version is published
+        private volatile Snapshot next;
+
+        Snapshot(long version, CompactGraph graph, RoadUpdate update) {
+            this.version = version;
+            this.graph = graph;
+            this.update = update;
+        }
+
+        public long getVersion() {
+            return version;
+        }
+
+        public CompactGraph getGraph() {
+            return graph;
+        }
+
+        /**
+         * Get the update that produced this version from the previous one
+         * @return update with its actual old distance, or null for version 0
+         */
+        public RoadUpdate getUpdate() {
+            return update;
+        }
+
+        /**
+         * Get the following version
+         * @return next snapshot, or null if this is still the latest
+         */
+        public Snapshot getNext() {
+            return next;
+        }
+
+        /**
+         * Get the updates between this snapshot and a later one
+         * @param later a snapshot published after this one
+         * @return updates in order
+         */
+        public List<RoadUpdate> updatesUntil(Snapshot later) {
+            List<RoadUpdate> updates = new ArrayList<>();
+            for (Snapshot snapshot = this; snapshot != later; snapshot = snapshot.next) {
+                if (snapshot.next == null) {
+                    throw new IllegalArgumentException("Version " + later.version + " does not follow version " + version);
+                }
+                updates.add(snapshot.next.update);
+            }
+            return updates;
+        }
+
+        @Override
+        public String toString() {
+            return "Version " + version + ": " + graph;
+        }
+    }
+}
@@ -0,0 +1,51 @@
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Bounded pool of reusable search workspaces, shared by all threads.
+ *
+ * Queries often run on short-lived threads (a virtual thread per request or per batch entry), so
+ * a workspace per thread would mean allocating arrays of graph size for every query and dropping
+ * them again. A query takes an idle workspace instead and gives it back when it is done. At most
+ * maxIdle workspaces are kept; more are created while more queries run at once, and dropped after.
+ */
+public class WorkspacePool<T> {
+    // Idle workspaces kept by default: about as many as queries can run on the cores at once
+    public static final int DEFAULT_MAX_IDLE = Math.max(4, 2 * Runtime.getRuntime().availableProcessors());
+
+    private final ConcurrentLinkedQueue<T> idle = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger idleCount = new AtomicInteger();
+    private final int maxIdle;
+
+    public WorkspacePool() {
+        this(DEFAULT_MAX_IDLE);
+    }
+
+    public WorkspacePool(int maxIdle) {
+        this.maxIdle = maxIdle;
+    }
+
+    /**
+     * Take an idle workspace
+     * @return workspace, or null if none is idle and the caller should create one
+     */
+    public T acquire() {
+        T workspace = idle.poll();
+        if (workspace != null) {
+            idleCount.decrementAndGet();
+        }
+        return workspace;
+    }
+
+    /**
+     * Give a workspace back once its query is done; it is dropped if enough are idle
+     * @param workspace workspace no longer used by the caller
+     */
+    public void release(T workspace) {
+        if (idleCount.incrementAndGet() <= maxIdle) {
+            idle.offer(workspace);
+        } else {
+            idleCount.decrementAndGet();
+        }
+    }
+}